@@ -54,14 +54,9 @@ public class Automate {
 	}
 	
 	public Set<State> getEndStates() {
-		// Collect all states
-		final Set<State> allStates = new HashSet<State>();
-		allStates.addAll(this.transitionTable.getSourceStates());
-		allStates.addAll(this.transitionTable.getTargetStates());
-		
 		// Collect all end states
 		final Set<State> endStates = new HashSet<State>();
-		for (final State state : allStates) {
+		for (final State state : this.transitionTable.getStates()) {
 			
 			if (this.endStateNames.contains(state.getName())) {
 				endStates.add(state);
@@ -71,6 +66,25 @@ public class Automate {
 		return endStates;
 	}
 	
+	/**
+	 * Creates minimized version of this automate by merging equivalent states. This automate is not modified.
+	 * Automate must be deterministic. See Minimizer for details.
+	 * @return Result which holds minimized automate and number of removed states.
+	 */
+	public MinimizationResult minimize() {
+		return Minimizer.minimize(this);
+	}
+
+	/**
+	 * Creates deeply immutable copy of this automate which can be shared by executions in many threads
+	 * without synchronization. Data computed from the transitions is computed once when freezing.
+	 * This automate is not modified. See FrozenAutomate for details.
+	 * @return Frozen copy of this automate.
+	 */
+	public FrozenAutomate freeze() {
+		return new FrozenAutomate(this);
+	}
+	
 	/**
 	 * Returns transition table of this automate.
 	 * @return Transition table of this automate.
@@ -304,6 +304,17 @@ public class AutomateBuilder {
 			throw new IllegalStateException("Error state has not been set.");
 		}
 		
-		return new Automate(this.startState, this.errorState, this.endStateNames, new TransitionTable(this.transitionTable));
+		// Copy transitions so that changes made to this builder later don't change the built automate
+		final Map<Pair<State, Input>, Set<State>> transitions = new HashMap<Pair<State, Input>, Set<State>>();
+		for (final Map.Entry<Pair<State, Input>, Set<State>> transition : this.transitionTable.entrySet()) {
+			final Pair<State, Input> stateInputPair = new Pair<State, Input>(transition.getKey().getFirst(), transition.getKey().getSecond());
+			transitions.put(stateInputPair, new HashSet<State>(transition.getValue()));
+		}
+		
+		// Compute epsilon closures and predicate decisions so that executions only read them
+		final TransitionTable transitionTable = new TransitionTable(transitions);
+		transitionTable.computeDerivedData();
+		
+		return new Automate(this.startState, this.errorState, this.endStateNames, transitionTable);
 	}
 }
@@ -0,0 +1,222 @@
+package amber.automate;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import amber.input.Input;
+
+/**
+ * Runs a compiled automate over many independent input sequences in parallel and tells which sequences end in an end state.
+ *
+ * Sequences are split into batches which are run on a fork join pool. Each batch runs its sequences one after another
+ * in one session of an ExecutionManager which is restarted for each sequence, so no executions are created per sequence.
+ * Each sequence is run like Execution.updateUntilEnd: it stops when execution reaches its end. Sequence is accepted
+ * if a current state is an end state when it stops. State callbacks are not run.
+ */
+public class BatchClassifier {
+
+	/**
+	 * Default minimum number of sequences in one batch.
+	 */
+	public static final int DEFAULT_MIN_BATCH_SIZE = 1024;
+
+	/**
+	 * End state id of sequences which don't end in an end state.
+	 */
+	public static final int NO_END_STATE = -1;
+
+	protected final CompiledAutomate compiledAutomate;
+	protected final ExecutionConfiguration configuration;
+	protected final ForkJoinPool pool;
+	protected final int minBatchSize;
+
+	/**
+	 * Ids of the end states in ascending order.
+	 */
+	protected final int[] endStateIds;
+
+	/**
+	 * Creates classifier using common fork join pool and default minimum batch size.
+	 * @param compiledAutomate Compiled automate run over the sequences.
+	 * @param configuration Configuration which tells how missing transitions and end states are handled.
+	 */
+	public BatchClassifier(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration) {
+		this(compiledAutomate, configuration, ForkJoinPool.commonPool(), DEFAULT_MIN_BATCH_SIZE);
+	}
+
+	/**
+	 * Creates classifier.
+	 * @param compiledAutomate Compiled automate run over the sequences. Can be nondeterministic.
+	 * @param configuration Configuration which tells how missing transitions and end states are handled.
+	 * @param pool Pool which runs the batches.
+	 * @param minBatchSize Minimum number of sequences in one batch.
+	 */
+	public BatchClassifier(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration, final ForkJoinPool pool, final int minBatchSize) {
+
+		if (minBatchSize < 1) {
+			throw new IllegalArgumentException("Minimum batch size must be positive but was " + minBatchSize + ".");
+		}
+
+		this.compiledAutomate = compiledAutomate;
+		this.configuration = configuration;
+		this.pool = pool;
+		this.minBatchSize = minBatchSize;
+
+		final List<Integer> endStateIds = new ArrayList<Integer>();
+		for (int stateId = 0; stateId < compiledAutomate.getStateCount(); stateId++) {
+
+			if (compiledAutomate.isEndState(stateId)) {
+				endStateIds.add(stateId);
+			}
+		}
+
+		this.endStateIds = new int[endStateIds.size()];
+		for (int i = 0; i < this.endStateIds.length; i++) {
+			this.endStateIds[i] = endStateIds.get(i);
+		}
+	}
+
+	public CompiledAutomate getCompiledAutomate() {
+		return this.compiledAutomate;
+	}
+
+	/**
+	 * Tells which sequences end in an end state.
+	 * @param sequences Input sequences.
+	 * @return Bit set where bit i is set if sequence i ended in an end state.
+	 */
+	public BitSet classifyAll(final Collection<? extends List<? extends Input>> sequences) {
+		final List<? extends List<? extends Input>> sequenceList = toList(sequences);
+		final long[] acceptedWords = new long[(sequenceList.size() + 63) >>> 6];
+
+		this.pool.invoke(new ClassifyTask(sequenceList, 0, sequenceList.size(), acceptedWords, null));
+		return BitSet.valueOf(acceptedWords);
+	}
+
+	/**
+	 * Tells which sequences of given stream end in an end state. Stream is collected to a list before running.
+	 * @param sequences Input sequences.
+	 * @return Bit set where bit i is set if sequence i of the stream ended in an end state.
+	 */
+	public BitSet classifyAll(final Stream<? extends List<? extends Input>> sequences) {
+		return this.classifyAll(sequences.collect(Collectors.toList()));
+	}
+
+	/**
+	 * Tells which end state each sequence ends in. If sequence ends in several end states the smallest id is told.
+	 * @param sequences Input sequences.
+	 * @return Array where element i is the id of the end state sequence i ended in or NO_END_STATE.
+	 */
+	public int[] findEndStates(final Collection<? extends List<? extends Input>> sequences) {
+		final List<? extends List<? extends Input>> sequenceList = toList(sequences);
+		final long[] acceptedWords = new long[(sequenceList.size() + 63) >>> 6];
+		final int[] endStates = new int[sequenceList.size()];
+
+		this.pool.invoke(new ClassifyTask(sequenceList, 0, sequenceList.size(), acceptedWords, endStates));
+		return endStates;
+	}
+
+	/**
+	 * Returns given sequences as a list with fast access by index. Copies them if needed.
+	 */
+	protected static List<? extends List<? extends Input>> toList(final Collection<? extends List<? extends Input>> sequences) {
+
+		if (sequences instanceof List && sequences instanceof RandomAccess) {
+			return (List<? extends List<? extends Input>>)sequences;
+		}
+
+		return new ArrayList<List<? extends Input>>(sequences);
+	}
+
+	/**
+	 * Runs given sequence in given session and returns the smallest end state among the current states it stops in.
+	 */
+	protected int classify(final ExecutionManager manager, final int session, final List<? extends Input> sequence) {
+		final CompiledAutomate compiled = this.compiledAutomate;
+
+		if (manager.restartSession(session)) {
+
+			for (final Input input : sequence) {
+
+				if (!manager.update(session, compiled.getInputId(input))) {
+					break;
+				}
+			}
+		}
+
+		if (manager.isDeterministic()) {
+			final int state = manager.getCurrentStateId(session);
+			return compiled.isEndState(state) ? state : NO_END_STATE;
+		}
+
+		for (final int endState : this.endStateIds) {
+
+			if (manager.isCurrentState(session, endState)) {
+				return endState;
+			}
+		}
+
+		return NO_END_STATE;
+	}
+
+	/**
+	 * Classifies sequences from from to to - 1. Splits are made at multiples of 64 so that each batch writes its own words of the bit set.
+	 */
+	protected class ClassifyTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final List<? extends List<? extends Input>> sequences;
+		protected final int from;
+		protected final int to;
+		protected final long[] acceptedWords;
+
+		/**
+		 * End state ids of the sequences or null if only acceptance is needed.
+		 */
+		protected final int[] endStates;
+
+		protected ClassifyTask(final List<? extends List<? extends Input>> sequences, final int from, final int to, final long[] acceptedWords, final int[] endStates) {
+			this.sequences = sequences;
+			this.from = from;
+			this.to = to;
+			this.acceptedWords = acceptedWords;
+			this.endStates = endStates;
+		}
+
+		@Override
+		protected void compute() {
+			final BatchClassifier classifier = BatchClassifier.this;
+			final int middle = ((this.from + this.to) >>> 1) & ~63;
+
+			if (this.to - this.from >= 2 * classifier.minBatchSize && middle > this.from) {
+				invokeAll(new ClassifyTask(this.sequences, this.from, middle, this.acceptedWords, this.endStates),
+						new ClassifyTask(this.sequences, middle, this.to, this.acceptedWords, this.endStates));
+				return;
+			}
+
+			// One session is reused for all sequences of the batch
+			final ExecutionManager manager = new ExecutionManager(classifier.compiledAutomate, classifier.configuration);
+			final int session = manager.createSession();
+
+			for (int i = this.from; i < this.to; i++) {
+				final int endState = classifier.classify(manager, session, this.sequences.get(i));
+
+				if (endState != NO_END_STATE) {
+					this.acceptedWords[i >>> 6] |= 1L << i;
+				}
+
+				if (this.endStates != null) {
+					this.endStates[i] = endState;
+				}
+			}
+		}
+	}
+}
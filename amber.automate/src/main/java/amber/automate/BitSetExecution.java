@@ -0,0 +1,338 @@
+package amber.automate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import amber.input.Input;
+
+/**
+ * Execution which holds current states as a bit set over the state ids of a compiled automate.
+ * Suited for nondeterministic automates with many current states.
+ *
+ * Each update ORs precomputed target sets of current states into a reused next states set
+ * and finds end states by masking target sets with the end states set.
+ * Current states set is only built when getCurrentStates is called.
+ */
+public class BitSetExecution extends Execution {
+
+	protected final CompiledAutomate compiledAutomate;
+
+	protected final BitSetTransitions transitions;
+
+	/**
+	 * Current states as a bit set.
+	 */
+	protected long[] current;
+
+	/**
+	 * Next states as a bit set. Swapped with current states on each update.
+	 */
+	protected long[] next;
+
+	/**
+	 * End states found during update.
+	 */
+	protected long[] foundEndStates;
+
+	protected boolean started;
+
+	/**
+	 * Create new execution for given compiled automate with given configuration.
+	 * @param compiledAutomate Compiled automate execution is run on.
+	 * @param configuration Configuration for execution.
+	 */
+	public BitSetExecution(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration) {
+		super(compiledAutomate.getAutomate(), configuration);
+		this.compiledAutomate = compiledAutomate;
+		this.transitions = compiledAutomate.getBitSetTransitions();
+
+		this.current = new long[this.transitions.wordCount];
+		this.next = new long[this.transitions.wordCount];
+		this.foundEndStates = new long[this.transitions.wordCount];
+
+		this.reset();
+	}
+
+	public CompiledAutomate getCompiledAutomate() {
+		return this.compiledAutomate;
+	}
+
+	/**
+	 * Returns alphabet of the compiled automate. Symbol ids are the input ids of the compiled automate.
+	 * @return Alphabet of the compiled automate.
+	 */
+	@Override
+	public InputAlphabet getAlphabet() {
+		return this.compiledAutomate.getAlphabet();
+	}
+
+	/**
+	 * Returns current states of execution. Set is built from the bit set when it has changed.
+	 * @return Current states of execution.
+	 */
+	@Override
+	public Set<State> getCurrentStates() {
+
+		if (!this.currentStatesValid) {
+			this.currentStates.clear();
+			this.addStates(this.current, this.currentStates);
+			this.currentStatesValid = true;
+		}
+
+		return this.currentStates;
+	}
+
+	/**
+	 * Tells if state with given id is a current state.
+	 * @param stateId Id of the state.
+	 * @return True if state is a current state.
+	 */
+	public boolean isCurrentState(final int stateId) {
+		return (this.current[stateId >>> 6] & (1L << stateId)) != 0;
+	}
+
+	/**
+	 * Returns number of current states.
+	 * @return Number of current states.
+	 */
+	public int getCurrentStateCount() {
+		int count = 0;
+
+		for (final long word : this.current) {
+			count += Long.bitCount(word);
+		}
+
+		return count;
+	}
+
+	@Override
+	public boolean start() {
+		final CompiledAutomate compiled = this.compiledAutomate;
+		System.arraycopy(this.transitions.startStates, 0, this.current, 0, this.current.length);
+		this.started = true;
+		this.currentStatesValid = false;
+
+		if (compiled.hasCallbacks) {
+			for (final int state : compiled.startStates) {
+
+				if (compiled.onEntryCallbacks[state] != null) {
+					compiled.onEntryCallbacks[state].run();
+				}
+			}
+		}
+
+		this.recordEndStates(this.current);
+
+		return !this.isAtEnd();
+	}
+
+	@Override
+	public void reset() {
+
+		if (this.current != null) {
+			Arrays.fill(this.current, 0L);
+		}
+
+		this.started = false;
+		this.currentStatesValid = false;
+	}
+
+	/**
+	 * Updates execution using given input. Input id is resolved from the compiled automate.
+	 * @param input Input which is used to update execution.
+	 */
+	@Override
+	public boolean update(final Input input) {
+		return this.update(this.compiledAutomate.getInputId(input));
+	}
+
+	/**
+	 * Updates execution using input with given input id.
+	 * @param inputId Id of the input which is used to update execution or CompiledAutomate.UNKNOWN_INPUT.
+	 */
+	@Override
+	public boolean update(final int inputId) {
+
+		// Check that has been started
+		if (!this.started) {
+			throw new IllegalStateException("Current states is empty. This is most likely because start method wasn't called before first update.");
+		}
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final BitSetTransitions transitions = this.transitions;
+		final long[] current = this.current;
+		final long[] next = this.next;
+		final long[] foundEndStates = this.foundEndStates;
+		final int wordCount = transitions.wordCount;
+		final boolean hasCallbacks = compiled.hasCallbacks;
+
+		Arrays.fill(next, 0L);
+		boolean endStatesFound = false;
+
+		for (int word = 0; word < wordCount; word++) {
+			long bits = current[word];
+
+			while (bits != 0) {
+				final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				final int transitionIndex = inputId < 0 ? -1 : state * transitions.inputCount + inputId;
+				final long[] targetSet = transitionIndex < 0 ? null : transitions.targetSets[transitionIndex];
+
+				// If no states where to transit are found stay in current state
+				// or go to error state depending on configuration
+				if (targetSet == null) {
+
+					if (this.configuration.allowToStayInStateOnUpdate) {
+
+						if (hasCallbacks && compiled.onStayCallbacks[state] != null) {
+							compiled.onStayCallbacks[state].run();
+						}
+
+						next[word] |= 1L << state;
+					}
+
+					else {
+						this.moveToErrorState(state, next);
+					}
+
+					continue;
+				}
+
+				// Call on entry callback for each states which is to become current state
+				if (hasCallbacks) {
+					this.runOnEntryCallbacks(targetSet);
+				}
+
+				// Collect end states
+				for (int i = 0; i < wordCount; i++) {
+					final long endBits = targetSet[i] & transitions.endStates[i];
+
+					if (endBits != 0) {
+						foundEndStates[i] |= endBits;
+						endStatesFound = true;
+					}
+				}
+
+				// Transit to all target states if allowed otherwise go to error state
+				if (transitions.targetCounts[transitionIndex] == 1 || this.configuration.allowToTransitToMultipleStates) {
+
+					if (hasCallbacks && compiled.onExitCallbacks[state] != null) {
+						compiled.onExitCallbacks[state].run();
+					}
+
+					for (int i = 0; i < wordCount; i++) {
+						next[i] |= targetSet[i];
+					}
+				}
+
+				else {
+					this.moveToErrorState(state, next);
+				}
+			}
+		}
+
+		// Update current states
+		this.next = current;
+		this.current = next;
+		this.currentStatesValid = false;
+
+		// Update encountered end states
+		if (endStatesFound) {
+			this.recordEndStates(foundEndStates);
+			Arrays.fill(foundEndStates, 0L);
+		}
+
+		return !this.isAtEnd();
+	}
+
+	protected void moveToErrorState(final int state, final long[] next) {
+		final CompiledAutomate compiled = this.compiledAutomate;
+
+		if (compiled.hasCallbacks) {
+
+			if (compiled.onExitCallbacks[state] != null) {
+				compiled.onExitCallbacks[state].run();
+			}
+
+			if (compiled.onEntryCallbacks[compiled.errorState] != null) {
+				compiled.onEntryCallbacks[compiled.errorState].run();
+			}
+		}
+
+		next[compiled.errorState >>> 6] |= 1L << compiled.errorState;
+	}
+
+	protected void runOnEntryCallbacks(final long[] states) {
+		for (int word = 0; word < states.length; word++) {
+			long bits = states[word];
+
+			while (bits != 0) {
+				final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				if (this.compiledAutomate.onEntryCallbacks[state] != null) {
+					this.compiledAutomate.onEntryCallbacks[state].run();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds end states of given set to encountered end states if there are any.
+	 */
+	protected void recordEndStates(final long[] states) {
+		Set<State> endStates = null;
+
+		for (int word = 0; word < states.length; word++) {
+			long bits = states[word] & this.transitions.endStates[word];
+
+			while (bits != 0) {
+				final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				if (endStates == null) {
+					endStates = new HashSet<State>();
+				}
+
+				endStates.add(this.compiledAutomate.getState(state));
+			}
+		}
+
+		if (endStates != null) {
+			this.encounteredEndStates.add(endStates);
+		}
+	}
+
+	protected void addStates(final long[] states, final Set<State> target) {
+		for (int word = 0; word < states.length; word++) {
+			long bits = states[word];
+
+			while (bits != 0) {
+				final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				target.add(this.compiledAutomate.getState(state));
+			}
+		}
+	}
+
+	@Override
+	public boolean isAtEnd() {
+		final int errorState = this.compiledAutomate.errorState;
+
+		// If only error state is left execution is done
+		boolean onlyErrorState = this.started;
+		for (int word = 0; word < this.current.length && onlyErrorState; word++) {
+			final long expected = word == errorState >>> 6 ? 1L << errorState : 0L;
+			onlyErrorState = this.current[word] == expected;
+		}
+
+		if (onlyErrorState) {
+			return true;
+		}
+
+		return this.configuration.exitWhenEndStateIsEncountered && !this.encounteredEndStates.isEmpty();
+	}
+}
@@ -0,0 +1,123 @@
+package amber.automate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transitions of a compiled automate presented as bit sets over state ids.
+ * Bit i of word i / 64 is set if state with id i belongs to the set.
+ *
+ * Equal target sets are shared between transitions. Use CompiledAutomate.getBitSetTransitions to create.
+ */
+public class BitSetTransitions {
+
+	/**
+	 * Number of long words in one state set.
+	 */
+	protected final int wordCount;
+
+	protected final int inputCount;
+
+	/**
+	 * Target state sets indexed with state id * input count + input id. Null if there is no transition.
+	 */
+	protected final long[][] targetSets;
+
+	/**
+	 * Number of target states in each target set.
+	 */
+	protected final int[] targetCounts;
+
+	/**
+	 * Set of all end states.
+	 */
+	protected final long[] endStates;
+
+	/**
+	 * Set of the start state and states reachable from it with epsilon transitions.
+	 */
+	protected final long[] startStates;
+
+	protected BitSetTransitions(final CompiledAutomate compiled) {
+		this.wordCount = (compiled.getStateCount() + 63) >>> 6;
+		this.inputCount = compiled.getInputCount();
+
+		this.targetSets = new long[compiled.getStateCount() * this.inputCount][];
+		this.targetCounts = new int[this.targetSets.length];
+
+		final Map<LongArrayKey, long[]> sharedSets = new HashMap<LongArrayKey, long[]>();
+		for (int state = 0; state < compiled.getStateCount(); state++) {
+			for (int input = 0; input < this.inputCount; input++) {
+				final int[] targetStates = compiled.getTargetStateIds(state, input);
+
+				if (targetStates.length == 0) {
+					continue;
+				}
+
+				final long[] targetSet = this.toSet(targetStates);
+				final LongArrayKey key = new LongArrayKey(targetSet);
+
+				long[] sharedSet = sharedSets.get(key);
+				if (sharedSet == null) {
+					sharedSet = targetSet;
+					sharedSets.put(key, sharedSet);
+				}
+
+				this.targetSets[state * this.inputCount + input] = sharedSet;
+				this.targetCounts[state * this.inputCount + input] = targetStates.length;
+			}
+		}
+
+		this.endStates = new long[this.wordCount];
+		for (int state = 0; state < compiled.getStateCount(); state++) {
+
+			if (compiled.isEndState(state)) {
+				this.endStates[state >>> 6] |= 1L << state;
+			}
+		}
+
+		this.startStates = this.toSet(compiled.getStartStateIds());
+	}
+
+	protected long[] toSet(final int[] states) {
+		final long[] set = new long[this.wordCount];
+
+		for (final int state : states) {
+			set[state >>> 6] |= 1L << state;
+		}
+
+		return set;
+	}
+
+	public int getWordCount() {
+		return this.wordCount;
+	}
+
+	/**
+	 * Key for sharing equal target sets.
+	 */
+	protected static class LongArrayKey {
+
+		protected final long[] words;
+
+		protected LongArrayKey(final long[] words) {
+			this.words = words;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.words);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+
+			if (obj == null || obj.getClass() != this.getClass()) {
+				return false;
+			}
+
+			return Arrays.equals(this.words, ((LongArrayKey)obj).words);
+		}
+	}
+}
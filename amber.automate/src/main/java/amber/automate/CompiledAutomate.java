@@ -0,0 +1,593 @@
+package amber.automate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import amber.common.Callback;
+import amber.common.LongIntHashMap;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+
+/**
+ * Compiled form of an automate. States and inputs are numbered densely
+ * and transitions are stored in a flat int array indexed by state id and input id.
+ * If the array would have more than MAX_DENSE_TRANSITIONS entries transitions are stored sparsely
+ * in a primitive hash map keyed by packed state id and input id instead.
+ * Epsilon transitions are followed at compile time.
+ *
+ * Compiled automate is a snapshot. Changes made to the original automate after compiling are not visible.
+ * Use CompiledExecution to run deterministic compiled automates and BitSetExecution to run nondeterministic ones.
+ */
+public class CompiledAutomate {
+
+	/**
+	 * Value in transition array which means that there is no transition for state input pair.
+	 */
+	public static final int NO_TRANSITION = -1;
+
+	/**
+	 * Value in transition array which means that transition leads to multiple states.
+	 * Target states are then retrieved with getTargetStateIds.
+	 */
+	public static final int MULTIPLE_TRANSITIONS = -2;
+
+	/**
+	 * Input id which is returned for inputs not present in compiled automate.
+	 */
+	public static final int UNKNOWN_INPUT = InputAlphabet.UNKNOWN_SYMBOL;
+
+	/**
+	 * Maximum number of state input pairs for which transitions are stored in a dense array.
+	 */
+	public static final int MAX_DENSE_TRANSITIONS = 1 << 24;
+
+	/**
+	 * Sparse transitions leading to multiple states hold SPARSE_MULTIPLE_BASE - i where i is index to multiple transitions.
+	 */
+	protected static final int SPARSE_MULTIPLE_BASE = -3;
+
+	/**
+	 * Compiles given automate.
+	 * @param automate Automate to be compiled.
+	 * @return Compiled automate.
+	 */
+	public static CompiledAutomate compile(final Automate automate) {
+		return compile(automate, automate.getTransitionTable().getAlphabet());
+	}
+
+	/**
+	 * Compiles given automate storing transitions sparsely regardless of the size of the automate.
+	 * Sparse transitions take less memory when most states have transitions with only a few inputs but lookups are slower.
+	 * @param automate Automate to be compiled.
+	 * @return Compiled automate.
+	 */
+	public static CompiledAutomate compileSparse(final Automate automate) {
+		return compile(automate, automate.getTransitionTable().getAlphabet(), true);
+	}
+
+	/**
+	 * Compiles given automate using input ids of given alphabet. All inputs of the automate must be in the alphabet.
+	 */
+	protected static CompiledAutomate compile(final Automate automate, final InputAlphabet alphabet) {
+		return compile(automate, alphabet, false);
+	}
+
+	/**
+	 * Compiles given automate using input ids of given alphabet. Transitions are stored sparsely if forced or if automate is too big for dense array.
+	 */
+	protected static CompiledAutomate compile(final Automate automate, final InputAlphabet alphabet, final boolean forceSparse) {
+		final TransitionTable transitionTable = automate.getTransitionTable();
+
+		if (transitionTable.hasPredicates()) {
+			throw new IllegalArgumentException("Automate with predicate inputs can't be compiled. Use Execution to dispatch events.");
+		}
+
+		// Collect all states and order them by name so that ids are stable
+		final Set<State> stateSet = new HashSet<State>();
+		stateSet.add(automate.getStartState());
+		stateSet.add(automate.getErrorState());
+		stateSet.addAll(transitionTable.getStates());
+
+		final List<State> states = new ArrayList<State>(stateSet);
+		Collections.sort(states, new Comparator<State>() {
+
+			@Override
+			public int compare(final State first, final State second) {
+				return first.getName().compareTo(second.getName());
+			}
+		});
+
+		final boolean sparse = forceSparse || (long)states.size() * alphabet.size() > MAX_DENSE_TRANSITIONS;
+		return new CompiledAutomate(automate, states, alphabet, sparse);
+	}
+
+	/**
+	 * Compiles given automate. If automate is not deterministic it is first determinized with given configuration.
+	 * Compiled automate must then be executed with a configuration which has the same allow to stay in state on update value.
+	 * Input ids are symbol ids of the alphabet of given automate also when it is determinized.
+	 * @param automate Automate to be compiled.
+	 * @param configuration Configuration which the automate would be executed with.
+	 * @param maxStates Maximum number of states determinized automate may have.
+	 * @return Compiled automate.
+	 */
+	public static CompiledAutomate compile(final Automate automate, final ExecutionConfiguration configuration, final int maxStates) {
+
+		if (Determinizer.isDeterministic(automate)) {
+			return compile(automate);
+		}
+
+		return compile(Determinizer.determinize(automate, configuration, maxStates), automate.getTransitionTable().getAlphabet());
+	}
+
+	/**
+	 * Automate this compiled automate was compiled from.
+	 */
+	protected final Automate automate;
+
+	/**
+	 * States by state id.
+	 */
+	protected final State[] states;
+
+	/**
+	 * Map from states to state ids.
+	 */
+	protected final Map<State, Integer> stateIds;
+
+	/**
+	 * Alphabet which gives the input ids.
+	 */
+	protected final InputAlphabet alphabet;
+
+	/**
+	 * Number of inputs. Used as a row length of the transition array.
+	 */
+	protected final int inputCount;
+
+	/**
+	 * Target state ids indexed with state id * input count + input id.
+	 * Holds NO_TRANSITION or MULTIPLE_TRANSITIONS if there isn't exactly one target state.
+	 * Null if transitions are stored sparsely.
+	 */
+	protected final int[] transitions;
+
+	/**
+	 * Target state ids keyed by packed state id and input id. Transitions leading to multiple states hold
+	 * SPARSE_MULTIPLE_BASE - i where i is index to multiple transitions. Null if transitions are stored in the dense array.
+	 */
+	protected final LongIntHashMap sparseTransitions;
+
+	/**
+	 * Target state ids of transitions which lead to multiple states indexed like transitions
+	 * or in the order they were added if transitions are stored sparsely. Null if automate has no such transitions.
+	 */
+	protected int[][] multipleTransitions;
+
+	/**
+	 * Ids of the start state and states reachable from it with epsilon transitions.
+	 */
+	protected final int[] startStates;
+
+	/**
+	 * True if start state has no epsilon transitions and every transition has at most one target state.
+	 */
+	protected final boolean deterministic;
+
+	/**
+	 * Bit set presentation of transitions. Created when first needed.
+	 */
+	protected BitSetTransitions bitSetTransitions;
+
+	/**
+	 * Skip ahead tables for executions which go to error state and which stay in state when there is no transition.
+	 * Created when first needed. Volatile so that executions sharing this automate read them without locking.
+	 */
+	protected volatile SkipAheadTable skipAheadTable;
+	protected volatile SkipAheadTable stayingSkipAheadTable;
+
+	/**
+	 * Tells for each state id if state is an end state.
+	 */
+	protected final boolean[] endStates;
+
+	/**
+	 * Shared single element end state sets which are added to encountered end states of executions.
+	 */
+	protected final List<Set<State>> endStateSets;
+
+	protected final Callback[] onEntryCallbacks;
+	protected final Callback[] onExitCallbacks;
+	protected final Callback[] onStayCallbacks;
+
+	/**
+	 * True if any of the states has a callback.
+	 */
+	protected final boolean hasCallbacks;
+
+	protected final int startState;
+	protected final int errorState;
+
+	/**
+	 * Creates compiled automate. Use static compile method instead of this.
+	 * @param automate Automate being compiled.
+	 * @param states All states of the automate in id order.
+	 * @param alphabet Alphabet holding all inputs of the automate.
+	 * @param sparse True if transitions are stored sparsely instead of the dense array.
+	 */
+	protected CompiledAutomate(final Automate automate, final List<State> states, final InputAlphabet alphabet, final boolean sparse) {
+		this.automate = automate;
+
+		// Number states
+		this.states = states.toArray(new State[states.size()]);
+		this.stateIds = new HashMap<State, Integer>();
+		for (int i = 0; i < this.states.length; i++) {
+			this.stateIds.put(this.states[i], i);
+		}
+
+		this.alphabet = alphabet;
+		this.inputCount = alphabet.size();
+
+		if (!sparse && (long)this.states.length * this.inputCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Automate has too many states and inputs to be compiled into transition array.");
+		}
+
+		final TransitionTable transitionTable = automate.getTransitionTable();
+		final List<int[]> sparseMultipleTransitions = new ArrayList<int[]>();
+
+		// Fill transition array or map
+		if (sparse) {
+			this.transitions = null;
+			this.sparseTransitions = new LongIntHashMap(transitionTable.getAllTransitions().size(), NO_TRANSITION);
+		}
+
+		else {
+			this.transitions = new int[this.states.length * this.inputCount];
+			this.sparseTransitions = null;
+			Arrays.fill(this.transitions, NO_TRANSITION);
+		}
+
+
+		for (final State state : transitionTable.getSourceStates()) {
+
+			// Range inputs may cover several symbols and symbols may be covered by several inputs
+			final Map<Integer, Set<State>> symbolTargetStates = new HashMap<Integer, Set<State>>();
+			for (final Map.Entry<Input, Set<State>> transition : transitionTable.getTransitionsForState(state).entrySet()) {
+				final Input input = transition.getKey();
+
+				if (input == null || input instanceof EpsilonInput || transition.getValue().isEmpty()) {
+					continue;
+				}
+
+				for (final int symbolId : alphabet.getCoveredSymbolIds(input)) {
+					Set<State> targetStates = symbolTargetStates.get(symbolId);
+
+					if (targetStates == null) {
+						targetStates = new HashSet<State>();
+						symbolTargetStates.put(symbolId, targetStates);
+					}
+
+					targetStates.addAll(transition.getValue());
+				}
+			}
+
+			final int stateId = this.stateIds.get(state);
+			for (final Map.Entry<Integer, Set<State>> symbolTransition : symbolTargetStates.entrySet()) {
+
+				// Follow epsilon transitions of target states
+				final Set<State> targetStates = transitionTable.getEpsilonTranitions(symbolTransition.getValue());
+
+				if (sparse) {
+					final long key = LongIntHashMap.pack(stateId, symbolTransition.getKey());
+
+					if (targetStates.size() == 1) {
+						this.sparseTransitions.put(key, this.stateIds.get(targetStates.iterator().next()));
+					}
+
+					else {
+						this.sparseTransitions.put(key, SPARSE_MULTIPLE_BASE - sparseMultipleTransitions.size());
+						sparseMultipleTransitions.add(this.toStateIds(targetStates));
+					}
+
+					continue;
+				}
+
+				final int transitionIndex = stateId * this.inputCount + symbolTransition.getKey();
+
+				if (targetStates.size() == 1) {
+					this.transitions[transitionIndex] = this.stateIds.get(targetStates.iterator().next());
+					continue;
+				}
+
+				if (this.multipleTransitions == null) {
+					this.multipleTransitions = new int[this.transitions.length][];
+				}
+
+				this.transitions[transitionIndex] = MULTIPLE_TRANSITIONS;
+				this.multipleTransitions[transitionIndex] = this.toStateIds(targetStates);
+			}
+		}
+
+		if (!sparseMultipleTransitions.isEmpty()) {
+			this.multipleTransitions = sparseMultipleTransitions.toArray(new int[sparseMultipleTransitions.size()][]);
+		}
+
+		this.startStates = this.toStateIds(transitionTable.getEpsilonClosure(automate.getStartState()));
+		this.deterministic = this.multipleTransitions == null && this.startStates.length == 1;
+
+		// End states and callbacks
+		final Set<String> endStateNames = automate.getEndStateNames();
+		this.endStates = new boolean[this.states.length];
+		this.endStateSets = new ArrayList<Set<State>>();
+		this.onEntryCallbacks = new Callback[this.states.length];
+		this.onExitCallbacks = new Callback[this.states.length];
+		this.onStayCallbacks = new Callback[this.states.length];
+
+		boolean hasCallbacks = false;
+		for (int i = 0; i < this.states.length; i++) {
+			final State state = this.states[i];
+
+			this.endStates[i] = endStateNames.contains(state.getName());
+			this.endStateSets.add(this.endStates[i] ? Collections.singleton(state) : null);
+
+			this.onEntryCallbacks[i] = state.getOnEntryCallback();
+			this.onExitCallbacks[i] = state.getOnExitCallback();
+			this.onStayCallbacks[i] = state.getOnStayCallback();
+
+			hasCallbacks |= this.onEntryCallbacks[i] != null || this.onExitCallbacks[i] != null || this.onStayCallbacks[i] != null;
+		}
+
+		this.hasCallbacks = hasCallbacks;
+
+		this.startState = this.stateIds.get(automate.getStartState());
+		this.errorState = this.stateIds.get(automate.getErrorState());
+	}
+
+	/**
+	 * Returns sorted ids of given states.
+	 */
+	protected int[] toStateIds(final Set<State> states) {
+		final int[] ids = new int[states.size()];
+
+		int i = 0;
+		for (final State state : states) {
+			ids[i++] = this.stateIds.get(state);
+		}
+
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	/**
+	 * Returns automate this compiled automate was compiled from.
+	 * @return Automate this compiled automate was compiled from.
+	 */
+	public Automate getAutomate() {
+		return this.automate;
+	}
+
+	/**
+	 * Returns number of states in compiled automate.
+	 * @return Number of states in compiled automate.
+	 */
+	public int getStateCount() {
+		return this.states.length;
+	}
+
+	/**
+	 * Returns number of inputs in compiled automate.
+	 * @return Number of inputs in compiled automate.
+	 */
+	public int getInputCount() {
+		return this.inputCount;
+	}
+
+	/**
+	 * Returns state with given state id.
+	 * @param stateId Id of the state.
+	 * @return State with given state id.
+	 */
+	public State getState(final int stateId) {
+		return this.states[stateId];
+	}
+
+	/**
+	 * Returns id of given state. Throws exception if state is not part of compiled automate.
+	 * @param state State which id is retrieved.
+	 * @return Id of given state.
+	 */
+	public int getStateId(final State state) {
+		final Integer stateId = this.stateIds.get(state);
+
+		if (stateId == null) {
+			throw new IllegalArgumentException("No state named " + state.getName() + " in compiled automate.");
+		}
+
+		return stateId;
+	}
+
+	/**
+	 * Returns input with given input id.
+	 * @param inputId Id of the input.
+	 * @return Input with given input id.
+	 */
+	public Input getInput(final int inputId) {
+		return this.alphabet.getInput(inputId);
+	}
+
+	/**
+	 * Returns id of given input or UNKNOWN_INPUT if input is not part of compiled automate.
+	 * Resolve input ids once and use them with CompiledExecution to avoid hashing inputs on every update.
+	 * @param input Input which id is retrieved.
+	 * @return Id of given input or UNKNOWN_INPUT.
+	 */
+	public int getInputId(final Input input) {
+		return this.alphabet.getSymbolId(input);
+	}
+
+	/**
+	 * Returns alphabet which gives the input ids. Input ids are symbol ids of the alphabet.
+	 * @return Alphabet of the compiled automate.
+	 */
+	public InputAlphabet getAlphabet() {
+		return this.alphabet;
+	}
+
+	/**
+	 * Returns target state id of transition from given state with given input.
+	 * Returns NO_TRANSITION if there is no such transition and MULTIPLE_TRANSITIONS if transition leads to multiple states.
+	 * @param stateId Id of the source state.
+	 * @param inputId Id of the input or UNKNOWN_INPUT.
+	 * @return Target state id, NO_TRANSITION or MULTIPLE_TRANSITIONS.
+	 */
+	public int getTransition(final int stateId, final int inputId) {
+
+		if (inputId < 0) {
+			return NO_TRANSITION;
+		}
+
+		if (this.transitions != null) {
+			return this.transitions[stateId * this.inputCount + inputId];
+		}
+
+		final int target = this.sparseTransitions.get(LongIntHashMap.pack(stateId, inputId));
+		return target <= SPARSE_MULTIPLE_BASE ? MULTIPLE_TRANSITIONS : target;
+	}
+
+	/**
+	 * Tells if transitions are stored sparsely in a hash map instead of a dense array.
+	 * @return True if transitions are stored sparsely.
+	 */
+	public boolean isSparse() {
+		return this.transitions == null;
+	}
+
+	/**
+	 * Returns ids of all target states of transition from given state with given input including states reachable with epsilon transitions.
+	 * Returned array must not be modified.
+	 * @param stateId Id of the source state.
+	 * @param inputId Id of the input or UNKNOWN_INPUT.
+	 * @return Sorted target state ids. Empty if there is no transition.
+	 */
+	public int[] getTargetStateIds(final int stateId, final int inputId) {
+		final int target = this.getTransition(stateId, inputId);
+
+		if (target == NO_TRANSITION) {
+			return new int[0];
+		}
+
+		if (target == MULTIPLE_TRANSITIONS) {
+
+			if (this.transitions == null) {
+				return this.multipleTransitions[SPARSE_MULTIPLE_BASE - this.sparseTransitions.get(LongIntHashMap.pack(stateId, inputId))];
+			}
+
+			return this.multipleTransitions[stateId * this.inputCount + inputId];
+		}
+
+		return new int[] { target };
+	}
+
+	/**
+	 * Returns ids of the start state and states reachable from it with epsilon transitions.
+	 * Returned array must not be modified.
+	 * @return Sorted ids of start states.
+	 */
+	public int[] getStartStateIds() {
+		return this.startStates;
+	}
+
+	/**
+	 * Tells if compiled automate is deterministic meaning that start state has no epsilon transitions
+	 * and every transition has at most one target state.
+	 * @return True if compiled automate is deterministic.
+	 */
+	public boolean isDeterministic() {
+		return this.deterministic;
+	}
+
+	/**
+	 * Returns bit set presentation of transitions used by BitSetExecution. Is created on first call.
+	 * @return Bit set presentation of transitions.
+	 */
+	public synchronized BitSetTransitions getBitSetTransitions() {
+
+		if (this.bitSetTransitions == null) {
+
+			if ((long)this.states.length * this.inputCount > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Automate has too many states and inputs to be presented with bit sets.");
+			}
+
+			this.bitSetTransitions = new BitSetTransitions(this);
+		}
+
+		return this.bitSetTransitions;
+	}
+
+	/**
+	 * Returns skip ahead table telling which states stay in themselves with all but a few bytes or characters.
+	 * Is created on first call. Lock is taken only while the table is created so bulk updates of executions in
+	 * different threads don't wait for each other.
+	 * @param allowToStay True if execution stays in state when there is no transition, false if it goes to error state.
+	 * @return Skip ahead table for executions with given setting.
+	 */
+	public SkipAheadTable getSkipAheadTable(final boolean allowToStay) {
+		final SkipAheadTable table = allowToStay ? this.stayingSkipAheadTable : this.skipAheadTable;
+		return table != null ? table : this.createSkipAheadTable(allowToStay);
+	}
+
+	/**
+	 * Creates skip ahead table for given setting unless another thread has created it already.
+	 */
+	protected synchronized SkipAheadTable createSkipAheadTable(final boolean allowToStay) {
+
+		if (allowToStay) {
+
+			if (this.stayingSkipAheadTable == null) {
+				this.stayingSkipAheadTable = new SkipAheadTable(this, true);
+			}
+
+			return this.stayingSkipAheadTable;
+		}
+
+		else {
+
+			if (this.skipAheadTable == null) {
+				this.skipAheadTable = new SkipAheadTable(this, false);
+			}
+
+			return this.skipAheadTable;
+		}
+	}
+
+	/**
+	 * Tells if state with given id is an end state.
+	 * @param stateId Id of the state.
+	 * @return True if state is an end state.
+	 */
+	public boolean isEndState(final int stateId) {
+		return this.endStates[stateId];
+	}
+
+	public int getStartStateId() {
+		return this.startState;
+	}
+
+	public int getErrorStateId() {
+		return this.errorState;
+	}
+
+	/**
+	 * Tells if any state of compiled automate has a callback.
+	 * @return True if any state has a callback.
+	 */
+	public boolean hasCallbacks() {
+		return this.hasCallbacks;
+	}
+}
@@ -0,0 +1,489 @@
+package amber.automate;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+import amber.input.Input;
+
+/**
+ * Execution which runs on a compiled deterministic automate. Current state is held as a single state id
+ * and each update is one load from the transition array of the compiled automate.
+ *
+ * Behaves like Execution. Current states set is only built when getCurrentStates is called.
+ */
+public class CompiledExecution extends Execution {
+
+	/**
+	 * State id used when execution hasn't been started.
+	 */
+	protected static final int NOT_STARTED = -1;
+
+	/**
+	 * Compiled automate execution runs on.
+	 */
+	protected final CompiledAutomate compiledAutomate;
+
+	/**
+	 * Id of the current state or NOT_STARTED.
+	 */
+	protected int currentState;
+
+	/**
+	 * Index after the last input used by the last scan which wrote matches to a buffer.
+	 */
+	protected int scanEnd;
+
+	/**
+	 * Create new execution for given compiled automate with given configuration.
+	 * Throws exception if compiled automate is not deterministic.
+	 * @param compiledAutomate Compiled automate execution is run on.
+	 * @param configuration Configuration for execution.
+	 */
+	public CompiledExecution(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration) {
+		super(compiledAutomate.getAutomate(), configuration);
+
+		if (!compiledAutomate.isDeterministic()) {
+			throw new IllegalArgumentException("Compiled automate is not deterministic. Use BitSetExecution or determinize automate before compiling.");
+		}
+
+		this.compiledAutomate = compiledAutomate;
+		this.reset();
+	}
+
+	public CompiledAutomate getCompiledAutomate() {
+		return this.compiledAutomate;
+	}
+
+	/**
+	 * Returns index after the last input or character used by the last scan which wrote matches to a buffer.
+	 * Scanning can be continued from it when the buffer became full or execution reached the error state before the end.
+	 * @return Index where the last scan with a match buffer stopped.
+	 */
+	public int getScanEnd() {
+		return this.scanEnd;
+	}
+
+	/**
+	 * Returns alphabet of the compiled automate. Symbol ids are the input ids of the compiled automate.
+	 * @return Alphabet of the compiled automate.
+	 */
+	@Override
+	public InputAlphabet getAlphabet() {
+		return this.compiledAutomate.getAlphabet();
+	}
+
+	/**
+	 * Returns id of the current state or -1 if execution hasn't been started.
+	 * @return Id of the current state.
+	 */
+	public int getCurrentStateId() {
+		return this.currentState;
+	}
+
+	/**
+	 * Returns current state of execution or null if execution hasn't been started.
+	 * @return Current state of execution.
+	 */
+	public State getCurrentState() {
+		return this.currentState == NOT_STARTED ? null : this.compiledAutomate.getState(this.currentState);
+	}
+
+	/**
+	 * Returns current states of execution. Set is rebuilt on every call.
+	 * @return Current states of execution.
+	 */
+	@Override
+	public Set<State> getCurrentStates() {
+		this.currentStates.clear();
+
+		if (this.currentState != NOT_STARTED) {
+			this.currentStates.add(this.compiledAutomate.getState(this.currentState));
+		}
+
+		return this.currentStates;
+	}
+
+	@Override
+	public boolean start() {
+		final CompiledAutomate compiled = this.compiledAutomate;
+		this.currentState = compiled.startState;
+
+		if (compiled.onEntryCallbacks[this.currentState] != null) {
+			compiled.onEntryCallbacks[this.currentState].run();
+		}
+
+		if (compiled.endStates[this.currentState]) {
+			this.encounteredEndStates.add(compiled.endStateSets.get(this.currentState));
+		}
+
+		return !this.isAtEnd();
+	}
+
+	@Override
+	public void reset() {
+		this.currentState = NOT_STARTED;
+	}
+
+	/**
+	 * Updates execution using given input. Input id is resolved from the compiled automate.
+	 * @param input Input which is used to update execution.
+	 */
+	@Override
+	public boolean update(final Input input) {
+		return this.update(this.compiledAutomate.getInputId(input));
+	}
+
+	/**
+	 * Updates execution using input with given input id.
+	 * Input ids can be resolved once using CompiledAutomate.getInputId.
+	 * @param inputId Id of the input which is used to update execution or CompiledAutomate.UNKNOWN_INPUT.
+	 */
+	@Override
+	public boolean update(final int inputId) {
+		this.checkStarted();
+
+		final int targetState = this.step(inputId);
+
+		if (targetState != CompiledAutomate.NO_TRANSITION && this.compiledAutomate.endStates[targetState]) {
+			this.encounteredEndStates.add(this.compiledAutomate.endStateSets.get(targetState));
+		}
+
+		return !this.isAtEnd();
+	}
+
+	/**
+	 * Updates execution with remaining bytes of given buffer like Execution.update. In states which are left only with
+	 * a few bytes the next such byte is searched and bytes before it are skipped without walking the transition array.
+	 * @param buffer Buffer holding the bytes. Can be a mapped byte buffer.
+	 * @return False if execution reached its end, true otherwise.
+	 */
+	@Override
+	public boolean update(final ByteBuffer buffer) {
+		this.checkStarted();
+
+		if (this.isAtEnd()) {
+			return super.update(buffer);
+		}
+
+		final SkipAheadTable skipAhead = this.compiledAutomate.getSkipAheadTable(this.configuration.allowToStayInStateOnUpdate);
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+		final int limit = buffer.limit();
+		int position = buffer.position();
+
+		while (position < limit) {
+
+			if (skipAhead.canSkipBytes(this.currentState)) {
+				position = skipAhead.skipBytes(this.currentState, buffer, position, limit);
+
+				if (position == limit) {
+					break;
+				}
+			}
+
+			if (!this.update(alphabet.getByteSymbolId(buffer.get(position++)))) {
+				((Buffer)buffer).position(position);
+				return false;
+			}
+		}
+
+		((Buffer)buffer).position(position);
+		return !this.isAtEnd();
+	}
+
+	/**
+	 * Updates execution with characters text[from] ... text[to - 1] like Execution.update. Characters are skipped
+	 * in states which are left only with a few characters.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @return Result of the last update or true if execution isn't at its end when no characters are used.
+	 */
+	@Override
+	public boolean update(final CharSequence text, final int from, final int to) {
+		checkSlice(text.length(), from, to - from);
+		this.checkStarted();
+
+		if (this.isAtEnd()) {
+			return super.update(text, from, to);
+		}
+
+		final SkipAheadTable skipAhead = this.compiledAutomate.getSkipAheadTable(this.configuration.allowToStayInStateOnUpdate);
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+		boolean result = true;
+
+		for (int i = from; i < to; i++) {
+
+			if (result && skipAhead.canSkipChars(this.currentState)) {
+				i = skipAhead.skipChars(this.currentState, text, i, to);
+
+				if (i == to) {
+					break;
+				}
+			}
+
+			result = this.update(alphabet.getCharSymbolId(text.charAt(i)));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Updates execution with characters text[from] ... text[to - 1] until execution reaches its end like Execution.updateUntilEnd.
+	 * Characters are skipped in states which are left only with a few characters.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @return Index of the character with which execution reached its end or to if end wasn't reached.
+	 */
+	@Override
+	public int updateUntilEnd(final CharSequence text, final int from, final int to) {
+		checkSlice(text.length(), from, to - from);
+		this.checkStarted();
+
+		if (this.isAtEnd()) {
+			return super.updateUntilEnd(text, from, to);
+		}
+
+		final SkipAheadTable skipAhead = this.compiledAutomate.getSkipAheadTable(this.configuration.allowToStayInStateOnUpdate);
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+
+		for (int i = from; i < to; i++) {
+
+			if (skipAhead.canSkipChars(this.currentState)) {
+				i = skipAhead.skipChars(this.currentState, text, i, to);
+
+				if (i == to) {
+					break;
+				}
+			}
+
+			if (!this.update(alphabet.getCharSymbolId(text.charAt(i)))) {
+				return i;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * Scans input ids inputIds[offset] ... inputIds[offset + length - 1] and reports every position where an end state is entered.
+	 * Scanning goes on past matches regardless of exit when end state is encountered setting and stops only at error state
+	 * or when listener asks to stop. Matches are not added to encountered end states so scanning doesn't allocate memory.
+	 * @param inputIds Input ids used to update execution.
+	 * @param offset Index of the first input id used.
+	 * @param length Number of input ids used.
+	 * @param listener Listener which is told about matches.
+	 * @return Index after the last input id used.
+	 */
+	public int scan(final int[] inputIds, final int offset, final int length, final MatchListener listener) {
+		checkSlice(inputIds.length, offset, length);
+		this.checkStarted();
+
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			final int targetState = this.step(inputIds[i]);
+
+			if (targetState != CompiledAutomate.NO_TRANSITION && this.compiledAutomate.endStates[targetState] && !listener.onMatch(i, targetState)) {
+				return i + 1;
+			}
+
+			if (this.currentState == this.compiledAutomate.errorState) {
+				return i + 1;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * Scans characters text[from] ... text[to - 1] like scan with input ids. Each character is used like a TextInput holding only that character.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @param listener Listener which is told about matches.
+	 * @return Index after the last character used.
+	 */
+	public int scan(final CharSequence text, final int from, final int to, final MatchListener listener) {
+		checkSlice(text.length(), from, to - from);
+		this.checkStarted();
+
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+		for (int i = from; i < to; i++) {
+			final int targetState = this.step(alphabet.getCharSymbolId(text.charAt(i)));
+
+			if (targetState != CompiledAutomate.NO_TRANSITION && this.compiledAutomate.endStates[targetState] && !listener.onMatch(i, targetState)) {
+				return i + 1;
+			}
+
+			if (this.currentState == this.compiledAutomate.errorState) {
+				return i + 1;
+			}
+		}
+
+		return to;
+	}
+
+	/**
+	 * Scans input ids like scan with a listener but writes matches to given buffer. Match i is stored as position
+	 * in matches[2 * i] and end state id in matches[2 * i + 1]. If buffer becomes full scanning stops after the input
+	 * of the last match. Scanning also stops at error state. Position where scanning stopped is given by getScanEnd.
+	 * Throws exception if buffer can't hold one match.
+	 * @param inputIds Input ids used to update execution.
+	 * @param offset Index of the first input id used.
+	 * @param length Number of input ids used.
+	 * @param matches Buffer where positions and end state ids of matches are written.
+	 * @return Number of matches written.
+	 */
+	public int scan(final int[] inputIds, final int offset, final int length, final int[] matches) {
+		checkSlice(inputIds.length, offset, length);
+		checkMatchBuffer(matches);
+		this.checkStarted();
+
+		final int maxMatches = matches.length / 2;
+		int matchCount = 0;
+
+		final int end = offset + length;
+		int i = offset;
+		while (i < end && matchCount < maxMatches) {
+			final int targetState = this.step(inputIds[i++]);
+
+			if (targetState != CompiledAutomate.NO_TRANSITION && this.compiledAutomate.endStates[targetState]) {
+				matches[2 * matchCount] = i - 1;
+				matches[2 * matchCount + 1] = targetState;
+				matchCount++;
+			}
+
+			if (this.currentState == this.compiledAutomate.errorState) {
+				break;
+			}
+		}
+
+		this.scanEnd = i;
+		return matchCount;
+	}
+
+	/**
+	 * Scans characters like scan with input ids and a buffer. Position where scanning stopped is given by getScanEnd.
+	 * Throws exception if buffer can't hold one match.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @param matches Buffer where positions and end state ids of matches are written.
+	 * @return Number of matches written.
+	 */
+	public int scan(final CharSequence text, final int from, final int to, final int[] matches) {
+		checkSlice(text.length(), from, to - from);
+		checkMatchBuffer(matches);
+		this.checkStarted();
+
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+		final int maxMatches = matches.length / 2;
+		int matchCount = 0;
+
+		int i = from;
+		while (i < to && matchCount < maxMatches) {
+			final int targetState = this.step(alphabet.getCharSymbolId(text.charAt(i++)));
+
+			if (targetState != CompiledAutomate.NO_TRANSITION && this.compiledAutomate.endStates[targetState]) {
+				matches[2 * matchCount] = i - 1;
+				matches[2 * matchCount + 1] = targetState;
+				matchCount++;
+			}
+
+			if (this.currentState == this.compiledAutomate.errorState) {
+				break;
+			}
+		}
+
+		this.scanEnd = i;
+		return matchCount;
+	}
+
+	/**
+	 * Checks that given match buffer can hold at least one match so that zero matches always means that there were no matches.
+	 */
+	protected static void checkMatchBuffer(final int[] matches) {
+
+		if (matches.length < 2) {
+			throw new IllegalArgumentException("Match buffer must hold at least one match but its length was " + matches.length + ".");
+		}
+	}
+
+	protected void checkStarted() {
+
+		// Check that has been started
+		if (this.currentState == NOT_STARTED) {
+			throw new IllegalStateException("Current states is empty. This is most likely because start method wasn't called before first update.");
+		}
+	}
+
+	/**
+	 * Moves execution with given input id and runs callbacks. End states are not recorded.
+	 * @param inputId Id of the input or CompiledAutomate.UNKNOWN_INPUT.
+	 * @return Id of the state transition lead to or NO_TRANSITION if there was no transition.
+	 */
+	protected int step(final int inputId) {
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final int sourceState = this.currentState;
+		final int[] transitions = compiled.transitions;
+		final int targetState = inputId < 0 || transitions == null ? compiled.getTransition(sourceState, inputId) : transitions[sourceState * compiled.inputCount + inputId];
+
+		// If there is no transition stay in current state or go to error state depending on configuration
+		if (targetState == CompiledAutomate.NO_TRANSITION) {
+
+			if (this.configuration.allowToStayInStateOnUpdate) {
+
+				if (compiled.hasCallbacks && compiled.onStayCallbacks[sourceState] != null) {
+					compiled.onStayCallbacks[sourceState].run();
+				}
+			}
+
+			else {
+
+				if (compiled.hasCallbacks) {
+
+					if (compiled.onExitCallbacks[sourceState] != null) {
+						compiled.onExitCallbacks[sourceState].run();
+					}
+
+					if (compiled.onEntryCallbacks[compiled.errorState] != null) {
+						compiled.onEntryCallbacks[compiled.errorState].run();
+					}
+				}
+
+				this.currentState = compiled.errorState;
+			}
+
+			return CompiledAutomate.NO_TRANSITION;
+		}
+
+		else {
+
+			if (compiled.hasCallbacks) {
+
+				if (compiled.onEntryCallbacks[targetState] != null) {
+					compiled.onEntryCallbacks[targetState].run();
+				}
+
+				if (compiled.onExitCallbacks[sourceState] != null) {
+					compiled.onExitCallbacks[sourceState].run();
+				}
+			}
+
+			this.currentState = targetState;
+		}
+
+		return targetState;
+	}
+
+	@Override
+	public boolean isAtEnd() {
+		// If in error state execution is done
+		if (this.currentState == this.compiledAutomate.errorState) {
+			return true;
+		}
+
+		return this.configuration.exitWhenEndStateIsEncountered && !this.encounteredEndStates.isEmpty();
+	}
+}
@@ -0,0 +1,342 @@
+package amber.automate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import amber.common.Callback;
+import amber.common.CompositeCallback;
+import amber.common.Pair;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+
+/**
+ * Turns nondeterministic automate into equivalent deterministic automate using subset construction.
+ *
+ * Each state of the deterministic automate presents the set of current states Execution would have.
+ * Transitions follow the rules of given execution configuration so the deterministic automate
+ * must be run with a configuration which has the same allow to stay in state on update value.
+ *
+ * States which present a single original state are the original state objects. Other states are named
+ * after their member states and their callbacks run the callbacks of all member states.
+ * State is an end state if any of its member states is an end state.
+ * When staying in state on update is allowed and only some members of a state have a transition, the state is
+ * entered again so members which stay run their on exit and on entry callbacks instead of their on stay callbacks.
+ */
+public class Determinizer {
+
+	/**
+	 * Default maximum number of states the deterministic automate may have.
+	 */
+	public static final int DEFAULT_MAX_STATES = 10000;
+
+	/**
+	 * Tells if given automate is deterministic meaning that it has no epsilon transitions,
+	 * every transition has at most one target state and range inputs of a state don't match same input with different target states.
+	 * Automates with predicate inputs are never considered deterministic since their predicates may overlap.
+	 * @param automate Automate to be checked.
+	 * @return True if automate is deterministic.
+	 */
+	public static boolean isDeterministic(final Automate automate) {
+		final TransitionTable transitionTable = automate.getTransitionTable();
+
+		if (transitionTable.hasPredicates()) {
+			return false;
+		}
+
+		for (final Map.Entry<Pair<State, Input>, Set<State>> transition : transitionTable.getAllTransitions().entrySet()) {
+			final Input input = transition.getKey().getSecond();
+			final Set<State> targetStates = transition.getValue();
+
+			if (input == null || targetStates == null || targetStates.isEmpty()) {
+				continue;
+			}
+
+			if (input instanceof EpsilonInput || targetStates.size() > 1) {
+				return false;
+			}
+		}
+
+		// Overlapping ranges can lead to multiple states with one input
+		final InputAlphabet alphabet = transitionTable.getAlphabet();
+		if (alphabet.hasRanges()) {
+
+			for (final State state : transitionTable.getSourceStates()) {
+				final Map<Integer, State> targetStates = new HashMap<Integer, State>();
+
+				for (final Map.Entry<Input, Set<State>> transition : transitionTable.getTransitionsForState(state).entrySet()) {
+
+					if (transition.getKey() == null || transition.getValue().isEmpty()) {
+						continue;
+					}
+
+					final State targetState = transition.getValue().iterator().next();
+					for (final int symbolId : alphabet.getCoveredSymbolIds(transition.getKey())) {
+						final State previousTargetState = targetStates.put(symbolId, targetState);
+
+						if (previousTargetState != null && !previousTargetState.equals(targetState)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determinizes given automate using default configuration and default maximum number of states.
+	 * @param automate Automate to be determinized.
+	 * @return Deterministic automate.
+	 */
+	public static Automate determinize(final Automate automate) {
+		return determinize(automate, ExecutionConfiguration.getDefaultConfiguration(), DEFAULT_MAX_STATES);
+	}
+
+	/**
+	 * Determinizes given automate. Throws exception if deterministic automate would have more than max states states.
+	 * @param automate Automate to be determinized.
+	 * @param configuration Configuration which the original automate would be executed with.
+	 * @param maxStates Maximum number of states the deterministic automate may have.
+	 * @return Deterministic automate.
+	 */
+	public static Automate determinize(final Automate automate, final ExecutionConfiguration configuration, final int maxStates) {
+		return new Determinizer(automate, configuration, maxStates).determinize();
+	}
+
+	protected final Automate automate;
+	protected final ExecutionConfiguration configuration;
+	protected final int maxStates;
+
+	/**
+	 * True if states without transition are left out of subsets instead of being replaced with the error state.
+	 * Subset becomes the error subset only when all of its states are left out. Used by tokenizer which follows all alternatives.
+	 */
+	protected final boolean dropDeadStates;
+
+	/**
+	 * Alphabet of the original automate. Deterministic automate has transitions for each symbol.
+	 */
+	protected final InputAlphabet alphabet;
+
+	/**
+	 * Map from sets of original states to states of deterministic automate.
+	 */
+	protected final Map<Set<State>, State> subsetStates;
+
+	/**
+	 * Names already used by states of deterministic automate.
+	 */
+	protected final Set<String> usedNames;
+
+	protected Determinizer(final Automate automate, final ExecutionConfiguration configuration, final int maxStates) {
+		this(automate, configuration, maxStates, false);
+	}
+
+	protected Determinizer(final Automate automate, final ExecutionConfiguration configuration, final int maxStates, final boolean dropDeadStates) {
+
+		if (automate.getTransitionTable().hasPredicates()) {
+			throw new IllegalArgumentException("Automate with predicate inputs can't be determinized.");
+		}
+
+		this.automate = automate;
+		this.configuration = configuration;
+		this.maxStates = maxStates;
+		this.dropDeadStates = dropDeadStates;
+
+		this.alphabet = automate.getTransitionTable().getAlphabet();
+
+		this.subsetStates = new HashMap<Set<State>, State>();
+		this.usedNames = new HashSet<String>();
+	}
+
+	protected Automate determinize() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder();
+		final Deque<Set<State>> subsetsToProcess = new ArrayDeque<Set<State>>();
+
+		// Error state and start state
+		final Set<State> errorSubset = Collections.singleton(this.automate.getErrorState());
+		final State errorState = this.getSubsetState(errorSubset, builder, subsetsToProcess);
+
+		final Set<State> startSubset = this.closure(Collections.singleton(this.automate.getStartState()));
+		final State startState = this.getSubsetState(startSubset, builder, subsetsToProcess);
+
+		// Process subsets until no new ones are found
+		while (!subsetsToProcess.isEmpty()) {
+			final Set<State> subset = subsetsToProcess.poll();
+			final State subsetState = this.subsetStates.get(subset);
+
+			for (int symbolId = 0; symbolId < this.alphabet.size(); symbolId++) {
+				final Set<State> nextSubset = this.step(subset, symbolId);
+
+				// Leave out transitions which execution handles the same way without transition.
+				// Staying is the same only if no member transits, members which transit back to themselves must be entered again.
+				if (this.configuration.allowToStayInStateOnUpdate ? !this.hasTransition(subset, symbolId) : nextSubset.equals(errorSubset)) {
+					continue;
+				}
+
+				// Symbols of character and byte classes may need several inputs
+				final State nextSubsetState = this.getSubsetState(nextSubset, builder, subsetsToProcess);
+				for (final Input input : this.alphabet.getClassInputs(symbolId)) {
+					builder.addTransition(subsetState, input, nextSubsetState);
+				}
+			}
+		}
+
+		builder.setStartState(startState);
+		builder.setErrorState(errorState);
+
+		return builder.build();
+	}
+
+	/**
+	 * Computes set of current states after input with given symbol id like Execution does.
+	 * @param subset Current states.
+	 * @param symbolId Symbol id of the input used to update.
+	 * @return Next current states.
+	 */
+	protected Set<State> step(final Set<State> subset, final int symbolId) {
+		final TransitionTable transitionTable = this.automate.getTransitionTable();
+		final Set<State> nextSubset = new HashSet<State>();
+
+		for (final State state : subset) {
+			final Set<State> statesToTransit = transitionTable.getTransitionWithEpsilon(state, symbolId);
+
+			if (statesToTransit.isEmpty()) {
+
+				if (this.configuration.allowToStayInStateOnUpdate || !this.dropDeadStates) {
+					nextSubset.add(this.configuration.allowToStayInStateOnUpdate ? state : this.automate.getErrorState());
+				}
+			}
+
+			else if (statesToTransit.size() == 1 || this.configuration.allowToTransitToMultipleStates) {
+				nextSubset.addAll(statesToTransit);
+			}
+
+			else {
+				nextSubset.add(this.automate.getErrorState());
+			}
+		}
+
+		if (nextSubset.isEmpty()) {
+			nextSubset.add(this.automate.getErrorState());
+		}
+
+		return nextSubset;
+	}
+
+	/**
+	 * Tells if any of given states has a transition with input of given symbol id.
+	 * @param subset Current states.
+	 * @param symbolId Symbol id of the input.
+	 * @return True if some state has a transition.
+	 */
+	protected boolean hasTransition(final Set<State> subset, final int symbolId) {
+		final TransitionTable transitionTable = this.automate.getTransitionTable();
+
+		for (final State state : subset) {
+
+			if (!transitionTable.getTransitionWithEpsilon(state, symbolId).isEmpty()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns given states and all states reachable from them with epsilon transitions.
+	 * @param states States which closure is computed.
+	 * @return Set holding epsilon closure of given states. Must not be modified.
+	 */
+	protected Set<State> closure(final Set<State> states) {
+		return this.automate.getTransitionTable().getEpsilonTranitions(states);
+	}
+
+	/**
+	 * Returns state of deterministic automate for given subset. Creates the state if it doesn't exist yet.
+	 * Throws exception if maximum number of states would be exceeded.
+	 */
+	protected State getSubsetState(final Set<State> subset, final AutomateBuilder builder, final Deque<Set<State>> subsetsToProcess) {
+		State subsetState = this.subsetStates.get(subset);
+
+		if (subsetState != null) {
+			return subsetState;
+		}
+
+		if (this.subsetStates.size() >= this.maxStates) {
+			throw new IllegalStateException("Deterministic automate would have more than " + this.maxStates + " states.");
+		}
+
+		subsetState = this.createSubsetState(subset);
+		this.subsetStates.put(subset, subsetState);
+		this.usedNames.add(subsetState.getName());
+		subsetsToProcess.add(subset);
+
+		builder.addState(subsetState);
+
+		for (final State state : subset) {
+
+			if (this.automate.getEndStateNames().contains(state.getName())) {
+				builder.addEndState(subsetState);
+				break;
+			}
+		}
+
+		return subsetState;
+	}
+
+	protected State createSubsetState(final Set<State> subset) {
+
+		// Single state subsets are presented with the original state
+		if (subset.size() == 1 && !this.usedNames.contains(subset.iterator().next().getName())) {
+			return subset.iterator().next();
+		}
+
+		// Order members by name so that names and callbacks are stable
+		final List<State> members = new ArrayList<State>(subset);
+		Collections.sort(members, new Comparator<State>() {
+
+			@Override
+			public int compare(final State first, final State second) {
+				return first.getName().compareTo(second.getName());
+			}
+		});
+
+		final StringBuilder nameBuilder = new StringBuilder("{");
+		final List<Callback> onEntryCallbacks = new ArrayList<Callback>();
+		final List<Callback> onExitCallbacks = new ArrayList<Callback>();
+		final List<Callback> onStayCallbacks = new ArrayList<Callback>();
+
+		for (final State member : members) {
+
+			if (nameBuilder.length() > 1) {
+				nameBuilder.append(",");
+			}
+
+			nameBuilder.append(member.getName());
+
+			onEntryCallbacks.add(member.getOnEntryCallback());
+			onExitCallbacks.add(member.getOnExitCallback());
+			onStayCallbacks.add(member.getOnStayCallback());
+		}
+
+		nameBuilder.append("}");
+
+		// Make sure name doesn't collide with a name of some original state
+		String name = nameBuilder.toString();
+		while (this.usedNames.contains(name)) {
+			name = name + "'";
+		}
+
+		return State.createState(name, CompositeCallback.combine(onEntryCallbacks), CompositeCallback.combine(onExitCallbacks), CompositeCallback.combine(onStayCallbacks));
+	}
+}
@@ -0,0 +1,26 @@
+package amber.automate;
+
+import amber.input.Input;
+
+/**
+ * Listener which is told about updates made by ExecutionDispatcher. Called in the thread which drains the mailbox
+ * of the execution so calls for one execution are made in order one at a time.
+ */
+public interface DispatchListener {
+
+	/**
+	 * Called after execution was updated with input.
+	 * @param execution Execution which was updated.
+	 * @param input Input execution was updated with.
+	 * @param result Result of the update. False if execution reached its end.
+	 */
+	public void onUpdate(Execution execution, Input input, boolean result);
+
+	/**
+	 * Called if update or onUpdate threw an exception. Following inputs are still used. Must not throw exceptions.
+	 * @param execution Execution which was updated.
+	 * @param input Input execution was updated with.
+	 * @param exception Exception thrown by update.
+	 */
+	public void onFailure(Execution execution, Input input, RuntimeException exception);
+}
@@ -1,12 +1,21 @@
 package amber.automate;
 
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import amber.common.Pair;
 import amber.input.Input;
 
 /**
@@ -16,18 +25,120 @@ import amber.input.Input;
  */
 public class Execution {
 	
+	/**
+	 * Initial size of current states arrays.
+	 */
+	protected static final int INITIAL_CAPACITY = 8;
+	
+	/**
+	 * Number of next current states which are searched linearly for duplicates.
+	 */
+	protected static final int LINEAR_SEARCH_LIMIT = 8;
+	
+	/**
+	 * Maximum number of bytes of a file mapped to memory at once.
+	 */
+	protected static final int MAPPED_WINDOW_SIZE = 1 << 28;
+	
+	/**
+	 * Shared empty array of state ids used when there are no target states.
+	 */
+	protected static final int[] NO_STATE_IDS = new int[0];
+	
+	/**
+	 * Input used for unknown symbol ids. It is not equal to any other input so there are no transitions with it.
+	 */
+	protected static final Input UNKNOWN_INPUT = new Input() {
+		
+		private static final long serialVersionUID = 1L;
+		
+		public Object toJsonObject() {
+			return null;
+		}
+		
+		public Class<?> getJsonObjectClass() {
+			return null;
+		}
+	};
+	
 	/**
 	 * Automate execution runs on.
 	 */
 	protected final Automate automate;
 	
 	/**
-	 * Current states of the execution.
+	 * Current states of the execution. Built from the current states array when it is requested.
 	 */
 	protected final Set<State> currentStates;
 	
+	/**
+	 * Tells if current states set holds the current states.
+	 */
+	protected boolean currentStatesValid;
+	
+	/**
+	 * Current states of the execution are currentStatesArray[0] ... currentStatesArray[currentStatesCount - 1].
+	 */
+	protected State[] currentStatesArray;
+	protected int currentStatesCount;
+	
+	/**
+	 * Next current states built during update. Arrays are swapped after each update so steady state updates don't allocate.
+	 */
+	protected State[] nextStatesArray;
+	protected int nextStatesCount;
+	
+	/**
+	 * Used to check for duplicate next current states when there are too many of them to be searched linearly.
+	 */
+	protected final Set<State> nextStates;
+	
+	/**
+	 * State input pair reused for transition lookups.
+	 */
+	protected final Pair<State, Input> lookupKey;
+	
 	protected final List<Set<State>> encounteredEndStates;
 	
+	/**
+	 * Ids this execution has given to states seen by updates with symbol ids. States are hashed only when they are first seen
+	 * or when current states were set by other updates, steady state updates with symbol ids follow the ids.
+	 */
+	protected final Map<State, Integer> stateIds;
+	
+	/**
+	 * States, end state flags and target state ids by symbol id for each state id. Target ids are looked up when first needed.
+	 * Arrays are created on first update with symbol id so executions which don't use ids don't hold them.
+	 */
+	protected State[] idStates;
+	protected boolean[] idEndStates;
+	protected int[][][] idTargetStates;
+	protected int idCount;
+	
+	/**
+	 * Error state which has id errorStateId or null if it hasn't been given an id.
+	 */
+	protected State idErrorState;
+	protected int errorStateId;
+	
+	/**
+	 * Change count of the transition table when the ids were given.
+	 */
+	protected int idChangeCount;
+	
+	/**
+	 * Ids of the current and next current states. Current state ids are valid only if current states were last set by update with symbol id.
+	 */
+	protected int[] currentStateIds;
+	protected int[] nextStateIds;
+	protected boolean currentStateIdsValid;
+	
+	/**
+	 * Mark of each state id telling during which update it was last added to next current states.
+	 */
+	protected int[] idMarks;
+	protected int updateMark;
+	
 	/**
 	 * Configuration for the execution.
 	 */
@@ -42,8 +153,15 @@ public class Execution {
 		this.automate = automate;
 		
 		this.currentStates = new HashSet<State>();
+		this.currentStatesValid = true;
+		this.currentStatesArray = new State[INITIAL_CAPACITY];
+		this.nextStatesArray = new State[INITIAL_CAPACITY];
+		this.nextStates = new HashSet<State>();
+		this.lookupKey = new Pair<State, Input>(null, null);
 		this.encounteredEndStates = new ArrayList<Set<State>>();
 		
+		this.stateIds = new HashMap<State, Integer>();
+		
 		this.configuration = configuration;
 		
 		this.reset();
@@ -54,6 +172,17 @@ public class Execution {
 	 * @return Current states of execution.
 	 */
 	public Set<State> getCurrentStates() {
+		
+		if (!this.currentStatesValid) {
+			this.currentStates.clear();
+			
+			for (int i = 0; i < this.currentStatesCount; i++) {
+				this.currentStates.add(this.currentStatesArray[i]);
+			}
+			
+			this.currentStatesValid = true;
+		}
+		
 		return this.currentStates;
 	}
 	
@@ -69,15 +198,33 @@ public class Execution {
 		return this.configuration;
 	}
 	
+	/**
+	 * Returns alphabet which gives the symbol ids accepted by update(int).
+	 * @return Alphabet of the automate execution runs on.
+	 */
+	public InputAlphabet getAlphabet() {
+		return this.automate.getTransitionTable().getAlphabet();
+	}
+	
 	public boolean start() {
 		// Add current states and find epsilon transitions
-		this.currentStates.add(this.automate.getStartState());
-		this.automate.getTransitionTable().getEpsilonTranitions(this.currentStates);
+		this.nextStatesCount = 0;
+		this.nextStates.clear();
+		for (int i = 0; i < this.currentStatesCount; i++) {
+			this.addNextState(this.currentStatesArray[i]);
+		}
+		
+		for (final State startState : this.automate.getTransitionTable().getEpsilonClosure(this.automate.getStartState())) {
+			this.addNextState(startState);
+		}
+		
+		this.swapCurrentStates();
 		
 		// Look if end states are found and call on entry callback for each
 		final Set<String> endStateNames = this.automate.getEndStateNames();
 		final Set<State> endStates = new HashSet<State>();
-		for (final State currentState : this.currentStates) {
+		for (int i = 0; i < this.currentStatesCount; i++) {
+			final State currentState = this.currentStatesArray[i];
 			
 			if (currentState.getOnEntryCallback() != null) {
 				currentState.getOnEntryCallback().run();
@@ -100,7 +247,16 @@ public class Execution {
 	 * Resets execution process.
 	 */
 	public void reset() {
+		
+		// Arrays don't exist yet if called from sub class constructor before this constructor has finished
+		if (this.currentStatesArray != null) {
+			Arrays.fill(this.currentStatesArray, 0, this.currentStatesCount, null);
+		}
+		
+		this.currentStatesCount = 0;
 		this.currentStates.clear();
+		this.currentStatesValid = true;
+		this.currentStateIdsValid = false;
 	}
 	
 	/**
@@ -125,24 +281,537 @@ public class Execution {
 		return inputAccepted;
 	}
 	
+	/**
+	 * Updates execution with inputs[offset] ... inputs[offset + length - 1] until execution reaches its end.
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @return Index of the input after which execution reached its end or offset + length if end wasn't reached.
+	 */
+	public int updateUntilEnd(final Input[] inputs, final int offset, final int length) {
+		checkSlice(inputs.length, offset, length);
+		
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			
+			if (!this.update(inputs[i])) {
+				return i;
+			}
+		}
+		
+		return end;
+	}
+	
+	/**
+	 * Updates execution with inputs.get(offset) ... inputs.get(offset + length - 1) until execution reaches its end.
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @return Index of the input after which execution reached its end or offset + length if end wasn't reached.
+	 */
+	public int updateUntilEnd(final List<? extends Input> inputs, final int offset, final int length) {
+		checkSlice(inputs.size(), offset, length);
+		
+		int index = offset;
+		for (final Input input : inputs.subList(offset, offset + length)) {
+			
+			if (!this.update(input)) {
+				return index;
+			}
+			
+			index++;
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Updates execution with inputs[offset] ... inputs[offset + length - 1] and records result of each update.
+	 * Bit i of results is set if update with inputs[offset + i] returned true and cleared otherwise.
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @param results Bit set results are written to. New bit set is created if null.
+	 * @return Bit set holding the results.
+	 */
+	public BitSet updateWithResults(final Input[] inputs, final int offset, final int length, final BitSet results) {
+		checkSlice(inputs.length, offset, length);
+		
+		final BitSet updateResults = results == null ? new BitSet(length) : results;
+		for (int i = 0; i < length; i++) {
+			updateResults.set(i, this.update(inputs[offset + i]));
+		}
+		
+		return updateResults;
+	}
+	
+	/**
+	 * Updates execution with inputs.get(offset) ... inputs.get(offset + length - 1) and records result of each update.
+	 * Bit i of results is set if update with inputs.get(offset + i) returned true and cleared otherwise.
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @param results Bit set results are written to. New bit set is created if null.
+	 * @return Bit set holding the results.
+	 */
+	public BitSet updateWithResults(final List<? extends Input> inputs, final int offset, final int length, final BitSet results) {
+		checkSlice(inputs.size(), offset, length);
+		
+		final BitSet updateResults = results == null ? new BitSet(length) : results;
+		int index = 0;
+		for (final Input input : inputs.subList(offset, offset + length)) {
+			updateResults.set(index++, this.update(input));
+		}
+		
+		return updateResults;
+	}
+	
+	/**
+	 * Updates execution with inputs[offset] ... inputs[offset + length - 1].
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @return Number of updates which returned true.
+	 */
+	public int updateAndCount(final Input[] inputs, final int offset, final int length) {
+		checkSlice(inputs.length, offset, length);
+		
+		int count = 0;
+		final int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			
+			if (this.update(inputs[i])) {
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Updates execution with inputs.get(offset) ... inputs.get(offset + length - 1).
+	 * @param inputs Inputs used to update execution.
+	 * @param offset Index of the first input used.
+	 * @param length Number of inputs used.
+	 * @return Number of updates which returned true.
+	 */
+	public int updateAndCount(final List<? extends Input> inputs, final int offset, final int length) {
+		checkSlice(inputs.size(), offset, length);
+		
+		int count = 0;
+		for (final Input input : inputs.subList(offset, offset + length)) {
+			
+			if (this.update(input)) {
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	protected static void checkSlice(final int size, final int offset, final int length) {
+		
+		if (offset < 0 || length < 0 || offset > size - length) {
+			throw new IndexOutOfBoundsException("Offset " + offset + " and length " + length + " don't fit in " + size + " inputs.");
+		}
+	}
+	
+	/**
+	 * Updates execution using input with given symbol id in the alphabet of the transition table of the automate.
+	 * Gives same result as update with the input of the symbol. Current states are followed with state ids given by this execution
+	 * and target states are looked up once for each state and symbol so steady state updates don't hash inputs or states.
+	 * End states are read when a state is first seen, ids are given again after transitions of the automate change.
+	 * @param symbolId Symbol id of the input which is used to update execution or InputAlphabet.UNKNOWN_SYMBOL.
+	 */
+	public boolean update(final int symbolId) {
+		
+		// Check that has been started
+		if (this.currentStatesCount == 0) {
+			throw new IllegalStateException("Current states is empty. This is most likely because start method wasn't called before first update.");
+		}
+		
+		this.resolveCurrentStateIds();
+		
+		final State errorState = this.automate.getErrorState();
+		if (errorState != this.idErrorState) {
+			this.errorStateId = this.getStateId(errorState);
+			this.idErrorState = errorState;
+		}
+		
+		// Marks tell which states have been added to next current states during this update
+		if (++this.updateMark == 0) {
+			Arrays.fill(this.idMarks, 0);
+			this.updateMark = 1;
+		}
+		
+		Set<State> endStates = null;
+		this.nextStatesCount = 0;
+		
+		for (int i = 0; i < this.currentStatesCount; i++) {
+			final int currentStateId = this.currentStateIds[i];
+			final State currentState = this.idStates[currentStateId];
+			final int[] targetStateIds = this.getTargetStateIds(currentStateId, symbolId);
+			
+			// Call on entry callback for each states which is to become current state
+			// Do checks to find end states
+			for (final int targetStateId : targetStateIds) {
+				final State transitState = this.idStates[targetStateId];
+				
+				if (transitState.getOnEntryCallback() != null) {
+					transitState.getOnEntryCallback().run();
+				}
+				
+				if (this.idEndStates[targetStateId]) {
+					
+					if (endStates == null) {
+						endStates = new HashSet<State>();
+					}
+					
+					endStates.add(transitState);
+				}
+			}
+			
+			// If no states where to transit are found stay in current state
+			// or go to error state depending on configuration
+			if (targetStateIds.length == 0) {
+				
+				if (this.configuration.allowToStayInStateOnUpdate) {
+					// Call on stay callback
+					if (currentState.getOnStayCallback() != null) {
+						currentState.getOnStayCallback().run();
+					}
+					
+					// Add to next current state
+					this.addNextStateId(currentStateId);
+					
+					continue;
+				}
+				
+				else {
+					// Call on exit callback
+					if (currentState.getOnExitCallback() != null) {
+						currentState.getOnExitCallback().run();
+					}
+					
+					if (errorState.getOnEntryCallback() != null) {
+						errorState.getOnEntryCallback().run();
+					}
+					
+					this.addNextStateId(this.errorStateId);
+				}
+			}
+			
+			// If has one transition then can transit
+			else if (targetStateIds.length == 1) {
+				// Call on exit callback
+				if (currentState.getOnExitCallback() != null) {
+					currentState.getOnExitCallback().run();
+				}
+				
+				this.addNextStateId(targetStateIds[0]);
+			}
+			
+			// If has many possible transitions transit to all if is nondeterministic
+			// otherwise go to error state
+			else {
+				// Call on exit callback
+				if (currentState.getOnExitCallback() != null) {
+					currentState.getOnExitCallback().run();
+				}
+				
+				if (this.configuration.allowToTransitToMultipleStates) {
+					
+					for (final int targetStateId : targetStateIds) {
+						this.addNextStateId(targetStateId);
+					}
+				}
+				
+				else {
+					if (errorState.getOnEntryCallback() != null) {
+						errorState.getOnEntryCallback().run();
+					}
+					
+					this.addNextStateId(this.errorStateId);
+				}
+			}
+		}
+		
+		// Update current states and their ids
+		this.swapCurrentStates();
+		
+		final int[] previousStateIds = this.currentStateIds;
+		this.currentStateIds = this.nextStateIds;
+		this.nextStateIds = previousStateIds;
+		this.currentStateIdsValid = true;
+		
+		// Update encountered end states
+		if (endStates != null) {
+			this.encounteredEndStates.add(endStates);
+		}
+		
+		return !this.isAtEnd(this.currentStatesCount == 1 && this.currentStateIds[0] == this.errorStateId);
+	}
+	
+	/**
+	 * Gives ids to current states if they were set by something else than update with symbol id.
+	 * Discards all ids first if transitions of the automate have changed since they were given.
+	 */
+	protected void resolveCurrentStateIds() {
+		final int changeCount = this.automate.getTransitionTable().getChangeCount();
+		
+		if (this.idStates == null) {
+			this.idStates = new State[INITIAL_CAPACITY];
+			this.idEndStates = new boolean[INITIAL_CAPACITY];
+			this.idTargetStates = new int[INITIAL_CAPACITY][][];
+			this.idMarks = new int[INITIAL_CAPACITY];
+			this.currentStateIds = new int[INITIAL_CAPACITY];
+			this.nextStateIds = new int[INITIAL_CAPACITY];
+			this.idChangeCount = changeCount;
+		}
+		
+		else if (changeCount != this.idChangeCount) {
+			this.stateIds.clear();
+			Arrays.fill(this.idStates, 0, this.idCount, null);
+			Arrays.fill(this.idTargetStates, 0, this.idCount, null);
+			this.idCount = 0;
+			this.idErrorState = null;
+			this.idChangeCount = changeCount;
+			this.currentStateIdsValid = false;
+		}
+		
+		if (this.currentStateIdsValid) {
+			return;
+		}
+		
+		if (this.currentStateIds.length < this.currentStatesCount) {
+			this.currentStateIds = new int[this.currentStatesArray.length];
+		}
+		
+		for (int i = 0; i < this.currentStatesCount; i++) {
+			this.currentStateIds[i] = this.getStateId(this.currentStatesArray[i]);
+		}
+		
+		this.currentStateIdsValid = true;
+	}
+	
+	/**
+	 * Returns id of given state. Gives the state a new id if it doesn't have one.
+	 */
+	protected int getStateId(final State state) {
+		final Integer stateId = this.stateIds.get(state);
+		
+		if (stateId != null) {
+			return stateId;
+		}
+		
+		if (this.idCount == this.idStates.length) {
+			final int capacity = this.idStates.length * 2;
+			this.idStates = Arrays.copyOf(this.idStates, capacity);
+			this.idEndStates = Arrays.copyOf(this.idEndStates, capacity);
+			this.idTargetStates = Arrays.copyOf(this.idTargetStates, capacity);
+			this.idMarks = Arrays.copyOf(this.idMarks, capacity);
+		}
+		
+		final int newStateId = this.idCount++;
+		this.idStates[newStateId] = state;
+		this.idEndStates[newStateId] = this.automate.getEndStateNames().contains(state.getName());
+		this.idMarks[newStateId] = 0;
+		this.stateIds.put(state, newStateId);
+		
+		return newStateId;
+	}
+	
+	/**
+	 * Returns ids of target states including epsilon transitions of state with given id for given symbol.
+	 * Target states are looked up from the transition table when first needed.
+	 */
+	protected int[] getTargetStateIds(final int stateId, final int symbolId) {
+		
+		if (symbolId == InputAlphabet.UNKNOWN_SYMBOL) {
+			return NO_STATE_IDS;
+		}
+		
+		int[][] targetStateIds = this.idTargetStates[stateId];
+		
+		if (targetStateIds == null) {
+			targetStateIds = new int[this.getAlphabet().size()][];
+			this.idTargetStates[stateId] = targetStateIds;
+		}
+		
+		if (targetStateIds[symbolId] == null) {
+			final State[] targetStates = this.automate.getTransitionTable().getTargetStatesWithEpsilon(this.idStates[stateId], symbolId);
+			final int[] ids = targetStates.length == 0 ? NO_STATE_IDS : new int[targetStates.length];
+			
+			for (int i = 0; i < targetStates.length; i++) {
+				ids[i] = this.getStateId(targetStates[i]);
+			}
+			
+			targetStateIds[symbolId] = ids;
+		}
+		
+		return targetStateIds[symbolId];
+	}
+	
+	/**
+	 * Adds state with given id to next current states if it hasn't been added during this update.
+	 */
+	protected void addNextStateId(final int stateId) {
+		
+		if (this.idMarks[stateId] == this.updateMark) {
+			return;
+		}
+		
+		this.idMarks[stateId] = this.updateMark;
+		
+		if (this.nextStatesCount == this.nextStatesArray.length) {
+			this.nextStatesArray = Arrays.copyOf(this.nextStatesArray, this.nextStatesArray.length * 2);
+		}
+		
+		if (this.nextStatesCount == this.nextStateIds.length) {
+			this.nextStateIds = Arrays.copyOf(this.nextStateIds, this.nextStateIds.length * 2);
+		}
+		
+		this.nextStatesArray[this.nextStatesCount] = this.idStates[stateId];
+		this.nextStateIds[this.nextStatesCount++] = stateId;
+	}
+	
+	/**
+	 * Updates execution with remaining bytes of given buffer until execution reaches its end.
+	 * Each byte is used like a ByteInput with the same byte but no inputs are created.
+	 * Position of the buffer is moved past the bytes used.
+	 * @param buffer Buffer holding the bytes. Can be a mapped byte buffer.
+	 * @return False if execution reached its end, true otherwise.
+	 */
+	public boolean update(final ByteBuffer buffer) {
+		final InputAlphabet alphabet = this.getAlphabet();
+		final int limit = buffer.limit();
+		int position = buffer.position();
+		
+		while (position < limit) {
+			
+			if (!this.update(alphabet.getByteSymbolId(buffer.get(position++)))) {
+				((Buffer)buffer).position(position);
+				return false;
+			}
+		}
+		
+		// Position is set through Buffer so that compiled code also runs on Java 8
+		((Buffer)buffer).position(position);
+		return !this.isAtEnd();
+	}
+	
+	/**
+	 * Starts execution and updates it with characters of given text.
+	 * Each character is used like a TextInput holding only that character but no inputs or strings are created.
+	 * @param text Text used to update execution.
+	 * @return Result of the last update or result of start if text is empty.
+	 */
+	public boolean run(final CharSequence text) {
+		final boolean result = this.start();
+		
+		if (text.length() == 0) {
+			return result;
+		}
+		
+		return this.update(text, 0, text.length());
+	}
+	
+	/**
+	 * Updates execution with characters text[from] ... text[to - 1]. Gives same result as updating execution
+	 * with a TextInput holding each character but no inputs or strings are created.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @return Result of the last update or true if execution isn't at its end when no characters are used.
+	 */
+	public boolean update(final CharSequence text, final int from, final int to) {
+		checkSlice(text.length(), from, to - from);
+		
+		final InputAlphabet alphabet = this.getAlphabet();
+		boolean result = !this.isAtEnd();
+		
+		for (int i = from; i < to; i++) {
+			result = this.update(alphabet.getCharSymbolId(text.charAt(i)));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Updates execution with characters text[from] ... text[to - 1] until execution reaches its end.
+	 * @param text Text used to update execution.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @return Index of the character with which execution reached its end or to if end wasn't reached.
+	 */
+	public int updateUntilEnd(final CharSequence text, final int from, final int to) {
+		checkSlice(text.length(), from, to - from);
+		
+		final InputAlphabet alphabet = this.getAlphabet();
+		for (int i = from; i < to; i++) {
+			
+			if (!this.update(alphabet.getCharSymbolId(text.charAt(i)))) {
+				return i;
+			}
+		}
+		
+		return to;
+	}
+	
+	/**
+	 * Updates execution with bytes of given file until execution reaches its end.
+	 * File is mapped to memory in windows so files larger than 2GB can be used.
+	 * @param channel Channel of the file.
+	 * @param position Position of the first byte used.
+	 * @param size Number of bytes used.
+	 * @return Position after the byte with which execution reached its end or position + size if end wasn't reached.
+	 * @throws IOException If mapping the file fails.
+	 */
+	public long updateFromFile(final FileChannel channel, final long position, final long size) throws IOException {
+		final long end = position + size;
+		long windowPosition = position;
+		
+		while (windowPosition < end) {
+			final int windowSize = (int)Math.min(MAPPED_WINDOW_SIZE, end - windowPosition);
+			final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowPosition, windowSize);
+			
+			if (!this.update(window)) {
+				return windowPosition + window.position();
+			}
+			
+			windowPosition += windowSize;
+		}
+		
+		return end;
+	}
+	
 	/**
 	 * Updates execution using given input.
+	 * Once all transitions have been looked up once updates don't allocate memory unless end states are encountered.
 	 * @param input Input which is used to update execution.
 	 */
 	public boolean update(final Input input) {
 		
 		// Check that has been started
-		if (this.currentStates.isEmpty()) {
+		if (this.currentStatesCount == 0) {
 			throw new IllegalStateException("Current states is empty. This is most likely because start method wasn't called before first update.");
 		}
 		
-		final Set<State> nextCurrentStates = new HashSet<State>();
-		final Set<State> endStates = new HashSet<State>();
+		final TransitionTable transitionTable = this.automate.getTransitionTable();
+		final Set<String> endStateNames = this.automate.getEndStateNames();
+		final Pair<State, Input> lookupKey = this.lookupKey;
+		lookupKey.setSecond(input);
 		
-		for (final State currentState : this.currentStates) {
+		Set<State> endStates = null;
+		this.nextStatesCount = 0;
+		this.nextStates.clear();
+		
+		for (int i = 0; i < this.currentStatesCount; i++) {
+			final State currentState = this.currentStatesArray[i];
 			
 			// Get states to transit
-			final Set<State> statesToTransit = this.automate.getTransitionTable().getTransitionWithEpsilon(currentState, input);
+			lookupKey.setFirst(currentState);
+			final State[] statesToTransit = transitionTable.getTargetStatesWithEpsilon(lookupKey);
 			
 			// Call on entry callback for each states which is to become current state
 			// Do checks to find end states
@@ -152,14 +821,19 @@ public class Execution {
 					transitState.getOnEntryCallback().run();
 				}
 				
-				if (this.automate.getEndStateNames().contains(transitState.getName())) {
+				if (endStateNames.contains(transitState.getName())) {
+					
+					if (endStates == null) {
+						endStates = new HashSet<State>();
+					}
+					
 					endStates.add(transitState);
 				}
 			}
 			
 			// If no states where to transit are found stay in current state
 			// or go to error state depending on configuration
-			if (statesToTransit.isEmpty()) {
+			if (statesToTransit.length == 0) {
 				
 				if (this.configuration.allowToStayInStateOnUpdate) {
 					// Call on stay callback
@@ -168,7 +842,7 @@ public class Execution {
 					}
 					
 					// Add to next current state
-					nextCurrentStates.add(currentState);
+					this.addNextState(currentState);
 					
 					continue;
 				}
@@ -184,18 +858,18 @@ public class Execution {
 						errorState.getOnEntryCallback().run();
 					}
 					
-					nextCurrentStates.add(errorState);
+					this.addNextState(errorState);
 				}
 			}
 			
 			// If has one transition then can transit
-			else if (statesToTransit.size() == 1) {
+			else if (statesToTransit.length == 1) {
 				// Call on exit callback
 				if (currentState.getOnExitCallback() != null) {
 					currentState.getOnExitCallback().run();
 				}
 				
-				nextCurrentStates.add(statesToTransit.iterator().next());
+				this.addNextState(statesToTransit[0]);
 			}
 			
 			// If has many possible transitions transit to all if is nondeterministic
@@ -207,7 +881,10 @@ public class Execution {
 				}
 				
 				if (this.configuration.allowToTransitToMultipleStates) {
-					nextCurrentStates.addAll(statesToTransit);
+					
+					for (final State transitState : statesToTransit) {
+						this.addNextState(transitState);
+					}
 				}
 				
 				else {
@@ -216,26 +893,109 @@ public class Execution {
 						errorState.getOnEntryCallback().run();
 					}
 					
-					nextCurrentStates.add(errorState);
+					this.addNextState(errorState);
 				}
 			}
 		}
 		
+		// Don't keep references to state and input after update
+		lookupKey.setFirst(null);
+		lookupKey.setSecond(null);
+		
 		// Update current states
-		this.currentStates.clear();
-		this.currentStates.addAll(nextCurrentStates);
+		this.swapCurrentStates();
 		
 		// Update encountered end states
-		if (!endStates.isEmpty()) {
+		if (endStates != null) {
 			this.encounteredEndStates.add(endStates);
 		}
 		
 		return !this.isAtEnd();
 	}
 	
+	/**
+	 * Adds given state to next current states if it is not there already.
+	 * Few states are searched linearly and after that a set is used.
+	 */
+	protected void addNextState(final State state) {
+		
+		if (this.nextStatesCount <= LINEAR_SEARCH_LIMIT) {
+			
+			for (int i = 0; i < this.nextStatesCount; i++) {
+				
+				if (this.nextStatesArray[i].equals(state)) {
+					return;
+				}
+			}
+		}
+		
+		else {
+			
+			// Fill set when linear search limit is passed for the first time during this update
+			if (this.nextStates.isEmpty()) {
+				
+				for (int i = 0; i < this.nextStatesCount; i++) {
+					this.nextStates.add(this.nextStatesArray[i]);
+				}
+			}
+			
+			if (!this.nextStates.add(state)) {
+				return;
+			}
+		}
+		
+		if (this.nextStatesCount == this.nextStatesArray.length) {
+			this.nextStatesArray = Arrays.copyOf(this.nextStatesArray, this.nextStatesArray.length * 2);
+		}
+		
+		this.nextStatesArray[this.nextStatesCount++] = state;
+	}
+	
+	/**
+	 * Makes next current states the current states.
+	 */
+	protected void swapCurrentStates() {
+		final State[] previous = this.currentStatesArray;
+		Arrays.fill(previous, 0, this.currentStatesCount, null);
+		
+		this.currentStatesArray = this.nextStatesArray;
+		this.currentStatesCount = this.nextStatesCount;
+		this.nextStatesArray = previous;
+		this.nextStatesCount = 0;
+		
+		this.currentStatesValid = false;
+		this.currentStateIdsValid = false;
+	}
+	
+	/**
+	 * Sets current states to given states without calling callbacks.
+	 * @param states Array holding the new current states. Array is copied.
+	 * @param count Number of states in the array.
+	 */
+	protected void setCurrentStates(final State[] states, final int count) {
+		Arrays.fill(this.currentStatesArray, 0, this.currentStatesCount, null);
+		
+		if (this.currentStatesArray.length < count) {
+			this.currentStatesArray = new State[count];
+		}
+		
+		System.arraycopy(states, 0, this.currentStatesArray, 0, count);
+		this.currentStatesCount = count;
+		this.currentStatesValid = false;
+		this.currentStateIdsValid = false;
+	}
+	
 	public boolean isAtEnd() {
+		return this.isAtEnd(this.currentStatesCount == 1 && this.currentStatesArray[0].equals(this.automate.getErrorState()));
+	}
+	
+	/**
+	 * Tells if execution is at its end when it is already known whether only the error state is left.
+	 * @param onlyErrorStateLeft True if error state is the only current state.
+	 */
+	protected boolean isAtEnd(final boolean onlyErrorStateLeft) {
 		// If only error state is left execution is done
-		if (this.currentStates.size() == 1 && this.currentStates.contains(this.automate.getErrorState())) {
+		if (onlyErrorStateLeft) {
 			return true;
 		}
 		
@@ -0,0 +1,284 @@
+package amber.automate;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import amber.input.Input;
+
+/**
+ * Dispatches inputs submitted from many threads to executions. Each execution gets a mailbox which is a lock free
+ * queue that many threads can add inputs to. Mailbox is drained by one task of the executor at a time so
+ * updates of one execution are made in submission order without locking while executions with different
+ * mailboxes are updated in parallel. Inputs submitted by one thread are used in the order they were submitted,
+ * inputs submitted by different threads at the same time in some order.
+ *
+ * Any executor can be used, for example a fixed thread pool or an executor creating a virtual thread per task.
+ * A drain task updates at most the batch size of inputs before giving its thread to other mailboxes.
+ *
+ * Executions of different mailboxes are updated at the same time in different threads. Executions may share an automate
+ * only if it isn't changed while inputs are dispatched, so share a frozen automate made with Automate.freeze or use
+ * CompiledExecutions of one CompiledAutomate. State callbacks are run in executor threads.
+ */
+public class ExecutionDispatcher {
+
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	protected final Executor executor;
+	protected final int batchSize;
+
+	/**
+	 * Listener told about updates or null.
+	 */
+	protected final DispatchListener listener;
+
+	/**
+	 * Number of inputs in all mailboxes. Counters shared by all mailboxes are adders so that threads
+	 * submitting to and draining different mailboxes don't contend on them. Queue depths of mailboxes are exact.
+	 */
+	protected final LongAdder queuedInputCount;
+
+	protected final LongAdder processedInputCount;
+	protected final LongAdder failedUpdateCount;
+
+	/**
+	 * Largest number of inputs a single mailbox has held.
+	 */
+	protected final AtomicInteger maxQueueDepth;
+
+	/**
+	 * Creates dispatcher running on given executor with default batch size and no listener.
+	 * @param executor Executor which drains the mailboxes.
+	 */
+	public ExecutionDispatcher(final Executor executor) {
+		this(executor, DEFAULT_BATCH_SIZE, null);
+	}
+
+	/**
+	 * Creates dispatcher running on given executor.
+	 * @param executor Executor which drains the mailboxes.
+	 * @param batchSize Maximum number of inputs one drain task uses.
+	 * @param listener Listener told about updates or null.
+	 */
+	public ExecutionDispatcher(final Executor executor, final int batchSize, final DispatchListener listener) {
+
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive but was " + batchSize + ".");
+		}
+
+		this.executor = executor;
+		this.batchSize = batchSize;
+		this.listener = listener;
+		this.queuedInputCount = new LongAdder();
+		this.processedInputCount = new LongAdder();
+		this.failedUpdateCount = new LongAdder();
+		this.maxQueueDepth = new AtomicInteger();
+	}
+
+	/**
+	 * Creates mailbox for given execution. Execution must be started and must not be updated other than through the mailbox.
+	 * @param execution Execution which is updated with inputs of the mailbox.
+	 * @return Mailbox of the execution.
+	 */
+	public Mailbox createMailbox(final Execution execution) {
+		return new Mailbox(execution);
+	}
+
+	/**
+	 * Returns number of inputs waiting in all mailboxes. Count is exact only when no inputs are submitted or drained at the same time.
+	 * @return Number of queued inputs.
+	 */
+	public long getQueuedInputCount() {
+		return this.queuedInputCount.sum();
+	}
+
+	/**
+	 * Returns number of inputs used to update executions including failed updates.
+	 * @return Number of processed inputs.
+	 */
+	public long getProcessedInputCount() {
+		return this.processedInputCount.sum();
+	}
+
+	public long getFailedUpdateCount() {
+		return this.failedUpdateCount.sum();
+	}
+
+	/**
+	 * Returns largest number of inputs a single mailbox has held at once.
+	 * @return Maximum queue depth.
+	 */
+	public int getMaxQueueDepth() {
+		return this.maxQueueDepth.get();
+	}
+
+	protected void recordQueueDepth(final int queueDepth) {
+		int maxQueueDepth = this.maxQueueDepth.get();
+
+		while (queueDepth > maxQueueDepth && !this.maxQueueDepth.compareAndSet(maxQueueDepth, queueDepth)) {
+			maxQueueDepth = this.maxQueueDepth.get();
+		}
+	}
+
+	/**
+	 * Node of the linked queue of a mailbox.
+	 */
+	protected static class Node {
+
+		/**
+		 * Input of the node. Cleared when node becomes the head so that used inputs aren't kept reachable.
+		 */
+		protected Input input;
+		protected volatile Node next;
+
+		protected Node(final Input input) {
+			this.input = input;
+		}
+	}
+
+	/**
+	 * Queue of inputs of one execution. Producers swap the tail and then link the previous tail to the new node.
+	 * Only the drain task reads from the head so no locks are needed.
+	 */
+	public class Mailbox implements Runnable {
+
+		protected final Execution execution;
+
+		/**
+		 * Node before the first queued input. Only accessed by the drain task.
+		 */
+		protected Node head;
+
+		protected final AtomicReference<Node> tail;
+
+		/**
+		 * Number of queued inputs. Incremented after input is linked to the queue.
+		 */
+		protected final AtomicInteger queueDepth;
+
+		/**
+		 * True while a drain task has been given to the executor and hasn't finished.
+		 */
+		protected final AtomicBoolean scheduled;
+
+		protected Mailbox(final Execution execution) {
+			this.execution = execution;
+			this.head = new Node(null);
+			this.tail = new AtomicReference<Node>(this.head);
+			this.queueDepth = new AtomicInteger();
+			this.scheduled = new AtomicBoolean();
+		}
+
+		public Execution getExecution() {
+			return this.execution;
+		}
+
+		/**
+		 * Returns number of inputs waiting in this mailbox.
+		 * @return Number of queued inputs.
+		 */
+		public int getQueueDepth() {
+			return this.queueDepth.get();
+		}
+
+		/**
+		 * Adds input to this mailbox. Can be called from any thread. Execution is updated with it later in an executor thread.
+		 * @param input Input which execution is updated with.
+		 */
+		public void submit(final Input input) {
+			final Node node = new Node(input);
+			final Node previous = this.tail.getAndSet(node);
+			previous.next = node;
+
+			final ExecutionDispatcher dispatcher = ExecutionDispatcher.this;
+			dispatcher.queuedInputCount.increment();
+			dispatcher.recordQueueDepth(this.queueDepth.incrementAndGet());
+
+			this.schedule();
+		}
+
+		protected void schedule() {
+
+			if (this.scheduled.compareAndSet(false, true)) {
+
+				try {
+					ExecutionDispatcher.this.executor.execute(this);
+				}
+
+				catch (final RuntimeException exception) {
+					this.scheduled.set(false);
+					throw exception;
+				}
+			}
+		}
+
+		/**
+		 * Drains at most batch size of inputs. Reschedules itself if inputs are left, also when update or listener throws.
+		 */
+		@Override
+		public void run() {
+			final ExecutionDispatcher dispatcher = ExecutionDispatcher.this;
+			int used = 0;
+
+			try {
+
+				while (used < dispatcher.batchSize && this.queueDepth.get() > 0) {
+					final Node next = this.head.next;
+
+					// Input is counted but a producer which swapped the tail before it hasn't linked its node yet
+					if (next == null) {
+						Thread.yield();
+						continue;
+					}
+
+					final Input input = next.input;
+					next.input = null;
+					this.head = next;
+					used++;
+
+					try {
+						this.update(input);
+					}
+
+					finally {
+						this.queueDepth.decrementAndGet();
+						dispatcher.queuedInputCount.decrement();
+						dispatcher.processedInputCount.increment();
+					}
+				}
+			}
+
+			finally {
+				this.scheduled.set(false);
+
+				// Inputs left after a full batch or added after the last check are drained in a new task
+				// which gives the thread to other mailboxes in between
+				if (this.queueDepth.get() > 0) {
+					this.schedule();
+				}
+			}
+		}
+
+		protected void update(final Input input) {
+			final DispatchListener listener = ExecutionDispatcher.this.listener;
+
+			try {
+				final boolean result = this.execution.update(input);
+
+				if (listener != null) {
+					listener.onUpdate(this.execution, input, result);
+				}
+			}
+
+			catch (final RuntimeException exception) {
+				ExecutionDispatcher.this.failedUpdateCount.increment();
+
+				if (listener != null) {
+					listener.onFailure(this.execution, input, exception);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,576 @@
+package amber.automate;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import amber.input.Input;
+
+/**
+ * Runs many executions, called sessions, of one compiled automate. Sessions are identified with int handles
+ * and their states are held in primitive arrays shared by all sessions so a session takes only a few bytes
+ * and no objects. Current state of a session of a deterministic automate is one state id. Sessions of
+ * a nondeterministic automate hold their current states as a bit set over the state ids like BitSetExecution.
+ *
+ * Sessions behave like executions with the same configuration except that state callbacks are not run
+ * and only the last end state encountered is remembered instead of all encountered end states.
+ * Handles of closed sessions are reused. Manager is not thread safe.
+ */
+public class ExecutionManager {
+
+	/**
+	 * End state id of sessions which haven't encountered end states.
+	 */
+	public static final int NO_END_STATE = -1;
+
+	protected static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Flag telling that session is open.
+	 */
+	protected static final byte OPEN = 1;
+
+	/**
+	 * Flag telling that session has encountered an end state.
+	 */
+	protected static final byte END_ENCOUNTERED = 2;
+
+	protected final CompiledAutomate compiledAutomate;
+	protected final ExecutionConfiguration configuration;
+
+	/**
+	 * Bit set transitions of a nondeterministic automate or null if automate is deterministic.
+	 */
+	protected final BitSetTransitions bitSetTransitions;
+
+	/**
+	 * Number of long words in the state set of a session. Zero if automate is deterministic.
+	 */
+	protected final int wordCount;
+
+	/**
+	 * Current state id of each session. Used when automate is deterministic.
+	 */
+	protected int[] states;
+
+	/**
+	 * Current states of each session as consecutive bit sets of word count words. Used when automate is nondeterministic.
+	 */
+	protected long[] stateSets;
+
+	/**
+	 * Next states of the session being updated. Used when automate is nondeterministic.
+	 */
+	protected final long[] next;
+
+	/**
+	 * Id of the last end state encountered by each session or NO_END_STATE.
+	 */
+	protected int[] lastEndStates;
+
+	protected byte[] flags;
+
+	/**
+	 * Closed session handles which are reused before new ones.
+	 */
+	protected int[] freeSessions;
+	protected int freeSessionCount;
+
+	/**
+	 * Number of handles ever given. Handles are from zero to this - 1.
+	 */
+	protected int sessionLimit;
+
+	protected int sessionCount;
+
+	/**
+	 * Creates manager for sessions of given compiled automate.
+	 * @param compiledAutomate Compiled automate sessions run on.
+	 * @param configuration Configuration shared by all sessions.
+	 */
+	public ExecutionManager(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration) {
+		this.compiledAutomate = compiledAutomate;
+		this.configuration = configuration;
+
+		if (compiledAutomate.isDeterministic()) {
+			this.bitSetTransitions = null;
+			this.wordCount = 0;
+			this.states = new int[INITIAL_CAPACITY];
+			this.next = null;
+		}
+
+		else {
+			this.bitSetTransitions = compiledAutomate.getBitSetTransitions();
+			this.wordCount = this.bitSetTransitions.wordCount;
+			this.stateSets = new long[INITIAL_CAPACITY * this.wordCount];
+			this.next = new long[this.wordCount];
+		}
+
+		this.lastEndStates = new int[INITIAL_CAPACITY];
+		this.flags = new byte[INITIAL_CAPACITY];
+		this.freeSessions = new int[INITIAL_CAPACITY];
+	}
+
+	public CompiledAutomate getCompiledAutomate() {
+		return this.compiledAutomate;
+	}
+
+	public ExecutionConfiguration getConfiguration() {
+		return this.configuration;
+	}
+
+	/**
+	 * Tells if sessions hold a single state id instead of a bit set.
+	 * @return True if compiled automate is deterministic.
+	 */
+	public boolean isDeterministic() {
+		return this.bitSetTransitions == null;
+	}
+
+	/**
+	 * Returns number of open sessions.
+	 * @return Number of open sessions.
+	 */
+	public int getSessionCount() {
+		return this.sessionCount;
+	}
+
+	/**
+	 * Creates new session and starts it.
+	 * @return Handle of the new session.
+	 */
+	public int createSession() {
+		final int session;
+
+		if (this.freeSessionCount > 0) {
+			session = this.freeSessions[--this.freeSessionCount];
+		}
+
+		else {
+
+			if (this.sessionLimit == this.flags.length) {
+				this.grow();
+			}
+
+			session = this.sessionLimit++;
+		}
+
+		this.flags[session] = OPEN;
+		this.sessionCount++;
+		this.restartSession(session);
+
+		return session;
+	}
+
+	protected void grow() {
+		final int capacity = this.flags.length * 2;
+
+		if (capacity < 0) {
+			throw new IllegalStateException("Manager can't hold more than " + this.flags.length + " sessions.");
+		}
+
+		if (this.states != null) {
+			this.states = Arrays.copyOf(this.states, capacity);
+		}
+
+		else {
+			this.stateSets = Arrays.copyOf(this.stateSets, capacity * this.wordCount);
+		}
+
+		this.lastEndStates = Arrays.copyOf(this.lastEndStates, capacity);
+		this.flags = Arrays.copyOf(this.flags, capacity);
+		this.freeSessions = Arrays.copyOf(this.freeSessions, capacity);
+	}
+
+	/**
+	 * Moves session back to the start state and forgets encountered end states.
+	 * @param session Handle of an open session.
+	 * @return False if session is at its end right after starting, true otherwise.
+	 */
+	public boolean restartSession(final int session) {
+		this.checkOpen(session);
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		this.flags[session] = OPEN;
+		this.lastEndStates[session] = NO_END_STATE;
+
+		if (this.states != null) {
+			this.states[session] = compiled.startState;
+
+			if (compiled.endStates[compiled.startState]) {
+				this.recordEndState(session, compiled.startState);
+			}
+		}
+
+		else {
+			final int offset = session * this.wordCount;
+			System.arraycopy(this.bitSetTransitions.startStates, 0, this.stateSets, offset, this.wordCount);
+			this.recordEndStates(session, this.stateSets, offset);
+		}
+
+		return !this.isAtEnd(session);
+	}
+
+	/**
+	 * Closes session. Its handle may be given to a later created session.
+	 * @param session Handle of an open session.
+	 */
+	public void closeSession(final int session) {
+		this.checkOpen(session);
+
+		this.flags[session] = 0;
+		this.freeSessions[this.freeSessionCount++] = session;
+		this.sessionCount--;
+	}
+
+	/**
+	 * Tells if given handle belongs to an open session.
+	 * @param session Session handle.
+	 * @return True if session is open.
+	 */
+	public boolean isOpen(final int session) {
+		return session >= 0 && session < this.sessionLimit && (this.flags[session] & OPEN) != 0;
+	}
+
+	protected void checkOpen(final int session) {
+
+		if (!this.isOpen(session)) {
+			throw new IllegalArgumentException("Session " + session + " is not open.");
+		}
+	}
+
+	/**
+	 * Updates session using given input. Input id is resolved from the compiled automate.
+	 * @param session Handle of an open session.
+	 * @param input Input which is used to update session.
+	 * @return False if session reached its end, true otherwise.
+	 */
+	public boolean update(final int session, final Input input) {
+		return this.update(session, this.compiledAutomate.getInputId(input));
+	}
+
+	/**
+	 * Updates session using input with given input id.
+	 * @param session Handle of an open session.
+	 * @param inputId Id of the input which is used to update session or CompiledAutomate.UNKNOWN_INPUT.
+	 * @return False if session reached its end, true otherwise.
+	 */
+	public boolean update(final int session, final int inputId) {
+		this.checkOpen(session);
+
+		if (this.states != null) {
+			this.updateState(session, inputId);
+		}
+
+		else {
+			this.updateStateSet(session, inputId);
+		}
+
+		return !this.isAtEnd(session);
+	}
+
+	/**
+	 * Updates sessions sessions[offset] ... sessions[offset + length - 1] with input ids at the same indexes of inputIds
+	 * in order. Gives same result as calling update for each pair but sessions of a deterministic automate are stepped
+	 * in one loop over the primitive arrays. Flag at the same index of endFlags is set if the update entered an end state
+	 * and cleared otherwise.
+	 * @param sessions Handles of open sessions. Same session can appear many times.
+	 * @param inputIds Ids of the inputs or CompiledAutomate.UNKNOWN_INPUT.
+	 * @param offset Index of the first pair used.
+	 * @param length Number of pairs used.
+	 * @param endFlags Array where end flags are written at the indexes of the pairs.
+	 * @return Number of updates which entered an end state.
+	 */
+	public int updateAll(final int[] sessions, final int[] inputIds, final int offset, final int length, final boolean[] endFlags) {
+		Execution.checkSlice(sessions.length, offset, length);
+		Execution.checkSlice(inputIds.length, offset, length);
+		Execution.checkSlice(endFlags.length, offset, length);
+
+		final int end = offset + length;
+		int endCount = 0;
+
+		if (this.states == null) {
+
+			for (int i = offset; i < end; i++) {
+				final int session = sessions[i];
+				this.checkOpen(session);
+
+				endFlags[i] = this.updateStateSet(session, inputIds[i]) != NO_END_STATE;
+
+				if (endFlags[i]) {
+					endCount++;
+				}
+			}
+
+			return endCount;
+		}
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final int[] states = this.states;
+		final int[] lastEndStates = this.lastEndStates;
+		final byte[] flags = this.flags;
+		final int[] transitions = compiled.transitions;
+		final int inputCount = compiled.inputCount;
+		final boolean[] endStates = compiled.endStates;
+		final int errorState = compiled.errorState;
+		final boolean allowToStay = this.configuration.allowToStayInStateOnUpdate;
+		final int sessionLimit = this.sessionLimit;
+
+		for (int i = offset; i < end; i++) {
+			final int session = sessions[i];
+			final int inputId = inputIds[i];
+
+			if (session < 0 || session >= sessionLimit || (flags[session] & OPEN) == 0) {
+				throw new IllegalArgumentException("Session " + session + " is not open.");
+			}
+
+			final int sourceState = states[session];
+			int targetState = inputId < 0 || transitions == null ? compiled.getTransition(sourceState, inputId) : transitions[sourceState * inputCount + inputId];
+
+			// If there is no transition stay in current state or go to error state depending on configuration
+			if (targetState == CompiledAutomate.NO_TRANSITION) {
+				targetState = allowToStay ? sourceState : errorState;
+				endFlags[i] = false;
+			}
+
+			else if (endStates[targetState]) {
+				lastEndStates[session] = targetState;
+				flags[session] |= END_ENCOUNTERED;
+				endFlags[i] = true;
+				endCount++;
+			}
+
+			else {
+				endFlags[i] = false;
+			}
+
+			states[session] = targetState;
+		}
+
+		return endCount;
+	}
+
+	protected void updateState(final int session, final int inputId) {
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final int targetState = compiled.getTransition(this.states[session], inputId);
+
+		// If there is no transition stay in current state or go to error state depending on configuration
+		if (targetState == CompiledAutomate.NO_TRANSITION) {
+
+			if (!this.configuration.allowToStayInStateOnUpdate) {
+				this.states[session] = compiled.errorState;
+			}
+
+			return;
+		}
+
+		this.states[session] = targetState;
+
+		if (compiled.endStates[targetState]) {
+			this.recordEndState(session, targetState);
+		}
+	}
+
+	/**
+	 * Updates current states of a session of a nondeterministic automate.
+	 * @return Smallest end state entered or NO_END_STATE.
+	 */
+	protected int updateStateSet(final int session, final int inputId) {
+		final BitSetTransitions transitions = this.bitSetTransitions;
+		final int errorState = this.compiledAutomate.errorState;
+		final long[] stateSets = this.stateSets;
+		final long[] next = this.next;
+		final int wordCount = this.wordCount;
+		final int offset = session * wordCount;
+
+		Arrays.fill(next, 0L);
+		int endState = NO_END_STATE;
+
+		for (int word = 0; word < wordCount; word++) {
+			long bits = stateSets[offset + word];
+
+			while (bits != 0) {
+				final int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				final int transitionIndex = inputId < 0 ? -1 : state * transitions.inputCount + inputId;
+				final long[] targetSet = transitionIndex < 0 ? null : transitions.targetSets[transitionIndex];
+
+				// If no states where to transit are found stay in current state
+				// or go to error state depending on configuration
+				if (targetSet == null) {
+
+					if (this.configuration.allowToStayInStateOnUpdate) {
+						next[word] |= 1L << state;
+					}
+
+					else {
+						next[errorState >>> 6] |= 1L << errorState;
+					}
+
+					continue;
+				}
+
+				// Remember the smallest end state found
+				for (int i = 0; i < wordCount; i++) {
+					final long endBits = targetSet[i] & transitions.endStates[i];
+
+					if (endBits != 0) {
+						final int targetEndState = (i << 6) + Long.numberOfTrailingZeros(endBits);
+						endState = endState == NO_END_STATE ? targetEndState : Math.min(endState, targetEndState);
+						break;
+					}
+				}
+
+				// Transit to all target states if allowed otherwise go to error state
+				if (transitions.targetCounts[transitionIndex] == 1 || this.configuration.allowToTransitToMultipleStates) {
+					for (int i = 0; i < wordCount; i++) {
+						next[i] |= targetSet[i];
+					}
+				}
+
+				else {
+					next[errorState >>> 6] |= 1L << errorState;
+				}
+			}
+		}
+
+		System.arraycopy(next, 0, stateSets, offset, wordCount);
+
+		if (endState != NO_END_STATE) {
+			this.recordEndState(session, endState);
+		}
+
+		return endState;
+	}
+
+	protected void recordEndState(final int session, final int endState) {
+		this.lastEndStates[session] = endState;
+		this.flags[session] |= END_ENCOUNTERED;
+	}
+
+	/**
+	 * Records the smallest end state of given set if it has end states.
+	 */
+	protected void recordEndStates(final int session, final long[] states, final int offset) {
+		for (int word = 0; word < this.wordCount; word++) {
+			final long endBits = states[offset + word] & this.bitSetTransitions.endStates[word];
+
+			if (endBits != 0) {
+				this.recordEndState(session, (word << 6) + Long.numberOfTrailingZeros(endBits));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Tells if session has reached its end. Session is at its end when only error state is left
+	 * or when it has encountered an end state and exit when end state is encountered is set.
+	 * @param session Handle of an open session.
+	 * @return True if session is at its end.
+	 */
+	public boolean isAtEnd(final int session) {
+		this.checkOpen(session);
+
+		if (this.configuration.exitWhenEndStateIsEncountered && (this.flags[session] & END_ENCOUNTERED) != 0) {
+			return true;
+		}
+
+		final int errorState = this.compiledAutomate.errorState;
+
+		if (this.states != null) {
+			return this.states[session] == errorState;
+		}
+
+		final int offset = session * this.wordCount;
+		for (int word = 0; word < this.wordCount; word++) {
+			final long expected = word == errorState >>> 6 ? 1L << errorState : 0L;
+
+			if (this.stateSets[offset + word] != expected) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Tells if session has encountered an end state since it was started.
+	 * @param session Handle of an open session.
+	 * @return True if session has encountered an end state.
+	 */
+	public boolean hasEncounteredEndState(final int session) {
+		this.checkOpen(session);
+		return (this.flags[session] & END_ENCOUNTERED) != 0;
+	}
+
+	/**
+	 * Returns id of the end state session encountered last. If several end states were encountered
+	 * with the same input the one with the smallest id is returned.
+	 * @param session Handle of an open session.
+	 * @return Id of the last encountered end state or NO_END_STATE.
+	 */
+	public int getLastEndStateId(final int session) {
+		this.checkOpen(session);
+		return this.lastEndStates[session];
+	}
+
+	/**
+	 * Returns id of the current state of session. Only for deterministic automates.
+	 * @param session Handle of an open session.
+	 * @return Id of the current state.
+	 */
+	public int getCurrentStateId(final int session) {
+		this.checkOpen(session);
+
+		if (this.states == null) {
+			throw new IllegalStateException("Sessions of a nondeterministic automate have several current states. Use isCurrentState or getCurrentStates.");
+		}
+
+		return this.states[session];
+	}
+
+	/**
+	 * Tells if state with given id is a current state of session.
+	 * @param session Handle of an open session.
+	 * @param stateId Id of the state.
+	 * @return True if state is a current state.
+	 */
+	public boolean isCurrentState(final int session, final int stateId) {
+		this.checkOpen(session);
+
+		if (this.states != null) {
+			return this.states[session] == stateId;
+		}
+
+		return (this.stateSets[session * this.wordCount + (stateId >>> 6)] & (1L << stateId)) != 0;
+	}
+
+	/**
+	 * Returns current states of session. Set is created on every call.
+	 * @param session Handle of an open session.
+	 * @return Current states of session.
+	 */
+	public Set<State> getCurrentStates(final int session) {
+		this.checkOpen(session);
+
+		final Set<State> currentStates = new HashSet<State>();
+
+		if (this.states != null) {
+			currentStates.add(this.compiledAutomate.getState(this.states[session]));
+			return currentStates;
+		}
+
+		final int offset = session * this.wordCount;
+		for (int word = 0; word < this.wordCount; word++) {
+			long bits = this.stateSets[offset + word];
+
+			while (bits != 0) {
+				currentStates.add(this.compiledAutomate.getState((word << 6) + Long.numberOfTrailingZeros(bits)));
+				bits &= bits - 1;
+			}
+		}
+
+		return currentStates;
+	}
+}
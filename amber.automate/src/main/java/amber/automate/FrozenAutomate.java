@@ -0,0 +1,130 @@
+package amber.automate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deeply immutable copy of an automate created with Automate.freeze. States, transitions, end states and
+ * callbacks can't be changed and everything is held in final fields so a frozen automate can be shared
+ * by executions running in many threads without synchronization or copying.
+ *
+ * Data computed from the transitions is computed when automate is frozen, see FrozenTransitionTable.
+ * Changes made to the original automate after freezing are not visible.
+ */
+public class FrozenAutomate extends Automate {
+
+	protected final State frozenStartState;
+	protected final State frozenErrorState;
+	protected final Set<String> frozenEndStateNames;
+	protected final Set<State> frozenEndStates;
+	protected final FrozenTransitionTable frozenTransitionTable;
+
+	/**
+	 * Creates frozen copy of given automate. Use Automate.freeze instead of this.
+	 * @param automate Automate which is copied.
+	 */
+	protected FrozenAutomate(final Automate automate) {
+		this(automate, freezeStates(automate));
+	}
+
+	protected FrozenAutomate(final Automate automate, final Map<String, FrozenState> frozenStates) {
+		super(frozenStates.get(automate.getStartState().getName()), frozenStates.get(automate.getErrorState().getName()),
+				Collections.unmodifiableSet(new HashSet<String>(automate.getEndStateNames())),
+				new FrozenTransitionTable(automate.getTransitionTable(), frozenStates));
+
+		this.frozenStartState = this.startState;
+		this.frozenErrorState = this.errorState;
+		this.frozenEndStateNames = this.endStateNames;
+		this.frozenTransitionTable = (FrozenTransitionTable)this.transitionTable;
+
+		final Set<State> endStates = new HashSet<State>();
+		for (final State state : this.frozenTransitionTable.getStates()) {
+
+			if (this.frozenEndStateNames.contains(state.getName())) {
+				endStates.add(state);
+			}
+		}
+
+		this.frozenEndStates = Collections.unmodifiableSet(endStates);
+	}
+
+	/**
+	 * Creates frozen copies of all states of given automate by name.
+	 */
+	protected static Map<String, FrozenState> freezeStates(final Automate automate) {
+		final Map<String, FrozenState> frozenStates = new HashMap<String, FrozenState>();
+
+		final Set<State> states = new HashSet<State>(automate.getTransitionTable().getStates());
+		states.add(automate.getStartState());
+		states.add(automate.getErrorState());
+
+		for (final State state : states) {
+			frozenStates.put(state.getName(), new FrozenState(state));
+		}
+
+		return frozenStates;
+	}
+
+	/**
+	 * Returns this automate since it is already frozen.
+	 * @return This automate.
+	 */
+	@Override
+	public FrozenAutomate freeze() {
+		return this;
+	}
+
+	@Override
+	public Set<String> getEndStateNames() {
+		return this.frozenEndStateNames;
+	}
+
+	/**
+	 * Returns end states. Set is collected when automate is frozen.
+	 * @return Unmodifiable set of end states.
+	 */
+	@Override
+	public Set<State> getEndStates() {
+		return this.frozenEndStates;
+	}
+
+	@Override
+	public TransitionTable getTransitionTable() {
+		return this.frozenTransitionTable;
+	}
+
+	@Override
+	public State getStartState() {
+		return this.frozenStartState;
+	}
+
+	@Override
+	public State getErrorState() {
+		return this.frozenErrorState;
+	}
+
+	@Override
+	public void setStartState(final State startState) {
+
+		// Automate constructor sets start state before fields of this class are assigned
+		if (this.frozenTransitionTable != null) {
+			throw new IllegalStateException("Start state of a frozen automate can't be changed.");
+		}
+
+		super.setStartState(startState);
+	}
+
+	@Override
+	public void setErrorState(final State errorState) {
+
+		// Automate constructor sets error state before fields of this class are assigned
+		if (this.frozenTransitionTable != null) {
+			throw new IllegalStateException("Error state of a frozen automate can't be changed.");
+		}
+
+		super.setErrorState(errorState);
+	}
+}
@@ -0,0 +1,56 @@
+package amber.automate;
+
+import amber.common.Callback;
+
+/**
+ * State of a frozen automate. Callbacks are fixed when state is created and can't be changed.
+ * Equals states with the same name like any other state.
+ */
+public class FrozenState extends State {
+
+	// Callbacks are held in final fields so that they are visible to all threads without synchronization
+	protected final Callback frozenOnEntry;
+	protected final Callback frozenOnExit;
+	protected final Callback frozenOnStay;
+
+	/**
+	 * Creates frozen copy of given state.
+	 * @param state State which is copied.
+	 */
+	protected FrozenState(final State state) {
+		super(state.getName(), state.getOnEntryCallback(), state.getOnExitCallback(), state.getOnStayCallback());
+		this.frozenOnEntry = state.getOnEntryCallback();
+		this.frozenOnExit = state.getOnExitCallback();
+		this.frozenOnStay = state.getOnStayCallback();
+	}
+
+	@Override
+	public Callback getOnEntryCallback() {
+		return this.frozenOnEntry;
+	}
+
+	@Override
+	public Callback getOnExitCallback() {
+		return this.frozenOnExit;
+	}
+
+	@Override
+	public Callback getOnStayCallback() {
+		return this.frozenOnStay;
+	}
+
+	@Override
+	public void setOnEntryCallback(final Callback callback) {
+		throw new IllegalStateException("Callbacks of a frozen state can't be changed.");
+	}
+
+	@Override
+	public void setOnExitCallback(final Callback callback) {
+		throw new IllegalStateException("Callbacks of a frozen state can't be changed.");
+	}
+
+	@Override
+	public void setOnStayCallback(final Callback callback) {
+		throw new IllegalStateException("Callbacks of a frozen state can't be changed.");
+	}
+}
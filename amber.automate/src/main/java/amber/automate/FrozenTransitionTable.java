@@ -0,0 +1,210 @@
+package amber.automate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import amber.common.Pair;
+import amber.input.EventInput;
+import amber.input.Input;
+
+/**
+ * Transition table of a frozen automate. Transitions can't be changed and all data computed from them is computed
+ * when table is created: the transitions by source state index, states, inputs, alphabet, epsilon closures,
+ * predicate decisions and target states of every state and symbol. Lookups only read final fields and
+ * don't store anything so table can be used by many threads without synchronization.
+ *
+ * Target states are stored for every source state and symbol so memory use grows with states times symbols.
+ */
+public class FrozenTransitionTable extends TransitionTable {
+
+	protected final Map<State, Map<Input, Set<State>>> frozenTransitionsBySourceState;
+	protected final Set<State> frozenSourceStates;
+	protected final Set<State> frozenTargetStates;
+	protected final Set<State> frozenStates;
+	protected final Set<Input> frozenInputs;
+	protected final InputAlphabet frozenAlphabet;
+	protected final Map<State, Set<State>> frozenEpsilonClosures;
+	protected final Map<State, PredicateDecision> frozenPredicateDecisions;
+
+	/**
+	 * Target states including epsilon transitions indexed by symbol id for each source state.
+	 */
+	protected final Map<State, State[][]> symbolTargetStates;
+
+	/**
+	 * Creates frozen table holding transitions of given table between given frozen states.
+	 * @param transitionTable Transition table which is copied.
+	 * @param frozenStates Frozen states by name. Must hold all states of the table.
+	 */
+	protected FrozenTransitionTable(final TransitionTable transitionTable, final Map<String, FrozenState> frozenStates) {
+		super(freezeTransitions(transitionTable, frozenStates));
+
+		// Compute derived data with an ordinary table over the same transitions
+		final TransitionTable source = new TransitionTable(this.transitionTable);
+
+		final Map<State, Map<Input, Set<State>>> transitionsBySourceState = new HashMap<State, Map<Input, Set<State>>>();
+		for (final State state : source.getSourceStates()) {
+			transitionsBySourceState.put(state, Collections.unmodifiableMap(new HashMap<Input, Set<State>>(source.getTransitionsForState(state))));
+		}
+
+		this.frozenTransitionsBySourceState = Collections.unmodifiableMap(transitionsBySourceState);
+		this.frozenSourceStates = Collections.unmodifiableSet(new HashSet<State>(source.getSourceStates()));
+		this.frozenTargetStates = Collections.unmodifiableSet(new HashSet<State>(source.getTargetStates()));
+		this.frozenStates = Collections.unmodifiableSet(new HashSet<State>(source.getStates()));
+		this.frozenInputs = Collections.unmodifiableSet(new HashSet<Input>(source.getInputs()));
+		this.frozenAlphabet = source.getAlphabet();
+		this.frozenPredicateDecisions = Collections.unmodifiableMap(new HashMap<State, PredicateDecision>(source.getPredicateDecisions()));
+
+		final Map<State, Set<State>> epsilonClosures = new HashMap<State, Set<State>>();
+		for (final State state : this.frozenStates) {
+			epsilonClosures.put(state, source.getEpsilonClosure(state));
+		}
+
+		this.frozenEpsilonClosures = Collections.unmodifiableMap(epsilonClosures);
+
+		final Map<State, State[][]> symbolTargetStates = new HashMap<State, State[][]>();
+		for (final State state : this.frozenSourceStates) {
+			final State[][] targetStates = new State[this.frozenAlphabet.size()][];
+
+			for (int symbolId = 0; symbolId < targetStates.length; symbolId++) {
+				targetStates[symbolId] = source.getTargetStatesWithEpsilon(state, symbolId);
+			}
+
+			symbolTargetStates.put(state, targetStates);
+		}
+
+		this.symbolTargetStates = Collections.unmodifiableMap(symbolTargetStates);
+	}
+
+	/**
+	 * Copies transitions replacing states with frozen states. Target state sets are unmodifiable.
+	 */
+	protected static Map<Pair<State, Input>, Set<State>> freezeTransitions(final TransitionTable transitionTable, final Map<String, FrozenState> frozenStates) {
+		final Map<Pair<State, Input>, Set<State>> transitions = new HashMap<Pair<State, Input>, Set<State>>();
+
+		for (final Map.Entry<Pair<State, Input>, Set<State>> transition : transitionTable.getAllTransitions().entrySet()) {
+			final Set<State> targetStates = new HashSet<State>();
+
+			for (final State targetState : transition.getValue()) {
+				targetStates.add(frozenStates.get(targetState.getName()));
+			}
+
+			final State sourceState = frozenStates.get(transition.getKey().getFirst().getName());
+			transitions.put(new Pair<State, Input>(sourceState, transition.getKey().getSecond()), Collections.unmodifiableSet(targetStates));
+		}
+
+		return transitions;
+	}
+
+	/**
+	 * Returns copy of all transitions. Changing the copy doesn't change this table.
+	 * @return New map holding all transitions.
+	 */
+	@Override
+	public Map<Pair<State, Input>, Set<State>> getAllTransitions() {
+		final Map<Pair<State, Input>, Set<State>> transitions = new HashMap<Pair<State, Input>, Set<State>>();
+
+		for (final Map.Entry<Pair<State, Input>, Set<State>> transition : this.transitionTable.entrySet()) {
+			transitions.put(new Pair<State, Input>(transition.getKey().getFirst(), transition.getKey().getSecond()), transition.getValue());
+		}
+
+		return transitions;
+	}
+
+	@Override
+	public Map<Input, Set<State>> getTransitionsForState(final State sourceState) {
+		final Map<Input, Set<State>> transitionsForState = this.frozenTransitionsBySourceState.get(sourceState);
+		return transitionsForState == null ? Collections.<Input, Set<State>>emptyMap() : transitionsForState;
+	}
+
+	@Override
+	public State[] getTargetStatesWithEpsilon(final Pair<State, Input> stateInputPair) {
+
+		if (stateInputPair.getSecond() instanceof EventInput) {
+			return this.getTargetStatesWithEpsilon(stateInputPair.getFirst(), (EventInput)stateInputPair.getSecond());
+		}
+
+		final int symbolId = this.frozenAlphabet.getSymbolId(stateInputPair.getSecond());
+
+		if (symbolId == InputAlphabet.UNKNOWN_SYMBOL) {
+			return NO_STATES;
+		}
+
+		return this.getTargetStatesWithEpsilon(stateInputPair.getFirst(), symbolId);
+	}
+
+	@Override
+	public State[] getTargetStatesWithEpsilon(final State state, final int symbolId) {
+		final State[][] targetStates = this.symbolTargetStates.get(state);
+		return targetStates == null ? NO_STATES : targetStates[symbolId];
+	}
+
+	@Override
+	public Map<State, PredicateDecision> getPredicateDecisions() {
+		return this.frozenPredicateDecisions;
+	}
+
+	/**
+	 * Returns epsilon closure of given state. Closures of states not in this table are computed on every call.
+	 * @param state State which epsilon closure is retrieved.
+	 * @return Unmodifiable set holding epsilon closure of given state.
+	 */
+	@Override
+	public Set<State> getEpsilonClosure(final State state) {
+		final Set<State> closure = this.frozenEpsilonClosures.get(state);
+		return closure == null ? Collections.unmodifiableSet(this.searchEpsilonClosure(state)) : closure;
+	}
+
+	@Override
+	public Set<Input> getInputs() {
+		return this.frozenInputs;
+	}
+
+	@Override
+	public InputAlphabet getAlphabet() {
+		return this.frozenAlphabet;
+	}
+
+	@Override
+	public Set<State> getSourceStates() {
+		return this.frozenSourceStates;
+	}
+
+	@Override
+	public Set<State> getTargetStates() {
+		return this.frozenTargetStates;
+	}
+
+	@Override
+	public Set<State> getStates() {
+		return this.frozenStates;
+	}
+
+	@Override
+	public void addState(final State state) {
+		throw new IllegalStateException("Frozen transition table can't be modified.");
+	}
+
+	@Override
+	public void addTransition(final Pair<State, Input> stateInputPair, final Set<State> transitionStates) {
+		throw new IllegalStateException("Frozen transition table can't be modified.");
+	}
+
+	@Override
+	public void updateTransition(final Pair<State, Input> stateInputPair, final Set<State> transitionStates) {
+		throw new IllegalStateException("Frozen transition table can't be modified.");
+	}
+
+	@Override
+	public void deleteTransitionsForStateInputPair(final Pair<State, Input> stateInputPair) {
+		throw new IllegalStateException("Frozen transition table can't be modified.");
+	}
+
+	@Override
+	public void transitionsChanged() {
+		throw new IllegalStateException("Frozen transition table can't be modified.");
+	}
+}
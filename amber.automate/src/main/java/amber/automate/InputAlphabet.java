@@ -0,0 +1,471 @@
+package amber.automate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import amber.input.ByteInput;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.RangeInput;
+import amber.input.TextInput;
+
+/**
+ * Inputs of an automate numbered densely from zero. Number of an input is called its symbol id.
+ *
+ * Characters and bytes are grouped into equivalence classes. Characters are in the same class if they are matched
+ * by the same single character text inputs and code point range inputs. Bytes are grouped the same way by byte inputs
+ * and byte range inputs. Each class gets one symbol id so a range input doesn't need a symbol for each of its characters.
+ * Other inputs get a symbol id of their own.
+ *
+ * Translating inputs to symbol ids once and updating executions with symbol ids
+ * avoids hashing and comparing inputs on every update.
+ * Epsilon input and null input are not part of the alphabet.
+ */
+public class InputAlphabet {
+
+	/**
+	 * Symbol id which is returned for inputs not in the alphabet.
+	 */
+	public static final int UNKNOWN_SYMBOL = -1;
+
+	/**
+	 * Creates alphabet from given inputs. Epsilon input, null and duplicate inputs are skipped.
+	 * @param inputs Inputs of the alphabet.
+	 * @return Alphabet holding given inputs.
+	 */
+	public static InputAlphabet createAlphabet(final Collection<Input> inputs) {
+		return new InputAlphabet(inputs);
+	}
+
+	/**
+	 * Returns code point of text input holding a single code point or -1 for other inputs.
+	 */
+	protected static int getCodePoint(final Input input) {
+
+		if (!(input instanceof TextInput)) {
+			return -1;
+		}
+
+		final String text = ((TextInput)input).getText();
+
+		if (text == null || text.isEmpty()) {
+			return -1;
+		}
+
+		final int codePoint = text.codePointAt(0);
+		return Character.charCount(codePoint) == text.length() ? codePoint : -1;
+	}
+
+	/**
+	 * Returns first code point or byte value matched by given character or byte input.
+	 */
+	protected static int first(final Input input) {
+
+		if (input instanceof RangeInput) {
+			return ((RangeInput)input).getFirst();
+		}
+
+		if (input instanceof ByteInput) {
+			return ((ByteInput)input).getUnsignedValue();
+		}
+
+		return getCodePoint(input);
+	}
+
+	/**
+	 * Returns last code point or byte value matched by given character or byte input.
+	 */
+	protected static int last(final Input input) {
+		return input instanceof RangeInput ? ((RangeInput)input).getLast() : first(input);
+	}
+
+	/**
+	 * Representative input of each symbol. Updating with it gives the same result as updating with any input of the symbol.
+	 */
+	protected final Input[] inputs;
+
+	/**
+	 * Inputs used in transitions which match each symbol.
+	 */
+	protected final Input[][] matchingInputs;
+
+	/**
+	 * Inputs which together match exactly the inputs of each symbol.
+	 */
+	protected final Input[][] classInputs;
+
+	/**
+	 * Map from inputs which are not characters or bytes to symbol ids.
+	 */
+	protected final Map<Input, Integer> symbolIds;
+
+	/**
+	 * All inputs the alphabet was created from.
+	 */
+	protected final Set<Input> transitionInputs;
+
+	protected final boolean hasRanges;
+
+	/**
+	 * Code points from codePointStarts[i] to codePointStarts[i + 1] - 1 have symbol id codePointSymbolIds[i].
+	 */
+	protected final int[] codePointStarts;
+	protected final int[] codePointSymbolIds;
+
+	/**
+	 * Symbol ids of characters from 0 to 255 indexed by character.
+	 */
+	protected final int[] latinCharSymbolIds;
+
+	/**
+	 * Symbol ids of bytes indexed by unsigned byte value.
+	 */
+	protected final int[] byteSymbolIds;
+
+	protected InputAlphabet(final Collection<Input> inputs) {
+		final List<Input> symbols = new ArrayList<Input>();
+		final List<Input[]> matching = new ArrayList<Input[]>();
+		final List<Input[]> covering = new ArrayList<Input[]>();
+
+		this.symbolIds = new HashMap<Input, Integer>();
+		this.transitionInputs = new HashSet<Input>();
+
+		// Separate character and byte inputs from other inputs which get symbols of their own
+		final List<Input> codePointInputs = new ArrayList<Input>();
+		final List<Input> byteInputs = new ArrayList<Input>();
+		boolean ranges = false;
+
+		for (final Input input : inputs) {
+
+			if (input == null || input instanceof EpsilonInput || !this.transitionInputs.add(input)) {
+				continue;
+			}
+
+			if (input instanceof RangeInput) {
+				ranges = true;
+				(((RangeInput)input).getKind() == RangeInput.Kind.BYTE ? byteInputs : codePointInputs).add(input);
+			}
+
+			else if (input instanceof ByteInput) {
+				byteInputs.add(input);
+			}
+
+			else if (getCodePoint(input) >= 0) {
+				codePointInputs.add(input);
+			}
+
+			else {
+				this.symbolIds.put(input, symbols.size());
+				symbols.add(input);
+				matching.add(new Input[] { input });
+				covering.add(new Input[] { input });
+			}
+		}
+
+		this.hasRanges = ranges;
+
+		// Split code points into intervals where same inputs match
+		final TreeSet<Integer> boundaries = new TreeSet<Integer>();
+		for (final Input input : codePointInputs) {
+			boundaries.add(first(input));
+			boundaries.add(last(input) + 1);
+		}
+
+		this.codePointStarts = new int[boundaries.size()];
+		this.codePointSymbolIds = new int[boundaries.size()];
+
+		int index = 0;
+		for (final Integer boundary : boundaries) {
+			this.codePointStarts[index++] = boundary;
+		}
+
+		final Map<List<Input>, Integer> classIds = new HashMap<List<Input>, Integer>();
+		final Map<Integer, List<int[]>> classRuns = new HashMap<Integer, List<int[]>>();
+
+		for (int i = 0; i < this.codePointStarts.length; i++) {
+
+			// Code points after the last boundary have no inputs
+			if (i == this.codePointStarts.length - 1) {
+				this.codePointSymbolIds[i] = UNKNOWN_SYMBOL;
+				continue;
+			}
+
+			this.codePointSymbolIds[i] = getClassId(codePointInputs, this.codePointStarts[i], this.codePointStarts[i + 1] - 1, false, classIds, classRuns, symbols, matching);
+		}
+
+		// Bytes are grouped the same way value by value
+		this.byteSymbolIds = new int[256];
+		for (int value = 0; value < 256; value++) {
+			this.byteSymbolIds[value] = getClassId(byteInputs, value, value, true, classIds, classRuns, symbols, matching);
+		}
+
+		// Build inputs which cover each class
+		for (int symbolId = covering.size(); symbolId < symbols.size(); symbolId++) {
+			final List<Input> coveringInputs = new ArrayList<Input>();
+			final boolean isByteClass = symbols.get(symbolId) instanceof ByteInput;
+
+			for (final int[] run : classRuns.get(symbolId)) {
+
+				if (run[0] == run[1]) {
+					coveringInputs.add(isByteClass ? new ByteInput(run[0]) : new TextInput(new String(Character.toChars(run[0]))));
+				}
+
+				else {
+					coveringInputs.add(isByteClass ? RangeInput.byteRange(run[0], run[1]) : RangeInput.codePointRange(run[0], run[1]));
+				}
+			}
+
+			covering.add(coveringInputs.toArray(new Input[coveringInputs.size()]));
+		}
+
+		this.inputs = symbols.toArray(new Input[symbols.size()]);
+		this.matchingInputs = matching.toArray(new Input[matching.size()][]);
+		this.classInputs = covering.toArray(new Input[covering.size()][]);
+
+		this.latinCharSymbolIds = new int[256];
+		for (int value = 0; value < 256; value++) {
+			this.latinCharSymbolIds[value] = this.searchCodePointSymbolId(value);
+		}
+	}
+
+	/**
+	 * Returns symbol id of the class of inputs matching values from first to last and adds the values to the class.
+	 * New class is created if no class has the same matching inputs. Returns UNKNOWN_SYMBOL if no input matches.
+	 */
+	protected static int getClassId(final List<Input> candidates, final int first, final int last, final boolean isByteClass,
+			final Map<List<Input>, Integer> classIds, final Map<Integer, List<int[]>> classRuns, final List<Input> symbols, final List<Input[]> matching) {
+
+		final List<Input> matchingCandidates = new ArrayList<Input>();
+		for (final Input candidate : candidates) {
+
+			if (first(candidate) <= first && last(candidate) >= first) {
+				matchingCandidates.add(candidate);
+			}
+		}
+
+		if (matchingCandidates.isEmpty()) {
+			return UNKNOWN_SYMBOL;
+		}
+
+		Integer classId = classIds.get(matchingCandidates);
+		if (classId == null) {
+			classId = symbols.size();
+			classIds.put(matchingCandidates, classId);
+			classRuns.put(classId, new ArrayList<int[]>());
+
+			symbols.add(isByteClass ? new ByteInput(first) : new TextInput(new String(Character.toChars(first))));
+			matching.add(matchingCandidates.toArray(new Input[matchingCandidates.size()]));
+		}
+
+		// Extend last run of the class if values continue it
+		final List<int[]> runs = classRuns.get(classId);
+		if (!runs.isEmpty() && runs.get(runs.size() - 1)[1] == first - 1) {
+			runs.get(runs.size() - 1)[1] = last;
+		}
+
+		else {
+			runs.add(new int[] { first, last });
+		}
+
+		return classId;
+	}
+
+	protected int searchCodePointSymbolId(final int codePoint) {
+		int index = Arrays.binarySearch(this.codePointStarts, codePoint);
+
+		if (index < 0) {
+			index = -index - 2;
+		}
+
+		return index < 0 ? UNKNOWN_SYMBOL : this.codePointSymbolIds[index];
+	}
+
+	/**
+	 * Returns number of symbols in the alphabet. Symbol ids are from zero to size - 1.
+	 * @return Number of symbols in the alphabet.
+	 */
+	public int size() {
+		return this.inputs.length;
+	}
+
+	/**
+	 * Returns input representing given symbol. Updating with it gives same result as updating with any other input of the symbol.
+	 * For character and byte classes this is a text input or a byte input holding the first character or byte of the class.
+	 * @param symbolId Symbol id of the input.
+	 * @return Input representing given symbol.
+	 */
+	public Input getInput(final int symbolId) {
+		return this.inputs[symbolId];
+	}
+
+	/**
+	 * Returns inputs used in transitions which match given symbol. Transitions of all of them are taken with the symbol.
+	 * @param symbolId Symbol id.
+	 * @return Unmodifiable list of inputs matching given symbol.
+	 */
+	public List<Input> getMatchingInputs(final int symbolId) {
+		return Collections.unmodifiableList(Arrays.asList(this.matchingInputs[symbolId]));
+	}
+
+	/**
+	 * Returns inputs which together match exactly the inputs of given symbol.
+	 * Transitions can be added with these inputs when an automate is rebuilt symbol by symbol.
+	 * @param symbolId Symbol id.
+	 * @return Unmodifiable list of inputs covering given symbol.
+	 */
+	public List<Input> getClassInputs(final int symbolId) {
+		return Collections.unmodifiableList(Arrays.asList(this.classInputs[symbolId]));
+	}
+
+	/**
+	 * Returns symbol id of given input or UNKNOWN_SYMBOL if input is not in the alphabet.
+	 * Single character text inputs and byte inputs get the symbol id of their class. Range inputs are only used
+	 * in transitions and get UNKNOWN_SYMBOL.
+	 * @param input Input which symbol id is retrieved.
+	 * @return Symbol id of given input or UNKNOWN_SYMBOL.
+	 */
+	public int getSymbolId(final Input input) {
+
+		if (input instanceof ByteInput) {
+			return this.byteSymbolIds[((ByteInput)input).getUnsignedValue()];
+		}
+
+		final int codePoint = getCodePoint(input);
+
+		if (codePoint >= 0) {
+			return this.getCodePointSymbolId(codePoint);
+		}
+
+		final Integer symbolId = this.symbolIds.get(input);
+		return symbolId == null ? UNKNOWN_SYMBOL : symbolId;
+	}
+
+	/**
+	 * Returns symbol ids of given inputs. Inputs not in the alphabet get UNKNOWN_SYMBOL.
+	 * @param inputs Inputs which symbol ids are retrieved.
+	 * @return Symbol ids of given inputs in same order.
+	 */
+	public int[] getSymbolIds(final Input... inputs) {
+		final int[] ids = new int[inputs.length];
+
+		for (int i = 0; i < inputs.length; i++) {
+			ids[i] = this.getSymbolId(inputs[i]);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Returns symbol ids of all symbols matched by given transition input. Input doesn't need to be one of the inputs
+	 * the alphabet was created from. Ranges which don't follow class boundaries cover all classes they overlap.
+	 * @param input Input of a transition.
+	 * @return Symbol ids matched by given input in increasing order.
+	 */
+	public int[] getCoveredSymbolIds(final Input input) {
+
+		if (!(input instanceof RangeInput)) {
+			final int symbolId = this.getSymbolId(input);
+			return symbolId == UNKNOWN_SYMBOL ? new int[0] : new int[] { symbolId };
+		}
+
+		final RangeInput range = (RangeInput)input;
+		final TreeSet<Integer> covered = new TreeSet<Integer>();
+
+		if (range.getKind() == RangeInput.Kind.BYTE) {
+
+			for (int value = range.getFirst(); value <= range.getLast(); value++) {
+				covered.add(this.byteSymbolIds[value]);
+			}
+		}
+
+		else {
+			int index = Arrays.binarySearch(this.codePointStarts, range.getFirst());
+			index = index < 0 ? Math.max(-index - 2, 0) : index;
+
+			for (; index < this.codePointStarts.length && this.codePointStarts[index] <= range.getLast(); index++) {
+
+				// Interval must overlap range
+				if (index + 1 < this.codePointStarts.length && this.codePointStarts[index + 1] <= range.getFirst()) {
+					continue;
+				}
+
+				covered.add(this.codePointSymbolIds[index]);
+			}
+		}
+
+		covered.remove(UNKNOWN_SYMBOL);
+
+		final int[] coveredSymbolIds = new int[covered.size()];
+		int index = 0;
+		for (final Integer symbolId : covered) {
+			coveredSymbolIds[index++] = symbolId;
+		}
+
+		return coveredSymbolIds;
+	}
+
+	/**
+	 * Returns symbol id of given code point or UNKNOWN_SYMBOL if no input matches it. Doesn't create an input.
+	 * @param codePoint Code point which symbol id is retrieved.
+	 * @return Symbol id of the class of given code point or UNKNOWN_SYMBOL.
+	 */
+	public int getCodePointSymbolId(final int codePoint) {
+
+		if (codePoint < 256) {
+			return this.latinCharSymbolIds[codePoint];
+		}
+
+		return this.searchCodePointSymbolId(codePoint);
+	}
+
+	/**
+	 * Returns symbol id of given character or UNKNOWN_SYMBOL if no input matches it. Doesn't create an input.
+	 * @param value Character which symbol id is retrieved.
+	 * @return Symbol id of the class of given character or UNKNOWN_SYMBOL.
+	 */
+	public int getCharSymbolId(final char value) {
+		return this.getCodePointSymbolId(value);
+	}
+
+	/**
+	 * Returns symbol id of given byte or UNKNOWN_SYMBOL if no input matches it. Doesn't create an input.
+	 * @param value Byte which symbol id is retrieved.
+	 * @return Symbol id of the class of given byte or UNKNOWN_SYMBOL.
+	 */
+	public int getByteSymbolId(final byte value) {
+		return this.byteSymbolIds[value & 0xFF];
+	}
+
+	/**
+	 * Tells if given input is one of the inputs the alphabet was created from.
+	 * @param input Input to be checked.
+	 * @return True if alphabet was created from given input.
+	 */
+	public boolean contains(final Input input) {
+		return this.transitionInputs.contains(input);
+	}
+
+	/**
+	 * Tells if alphabet was created from range inputs.
+	 * @return True if there are range inputs.
+	 */
+	public boolean hasRanges() {
+		return this.hasRanges;
+	}
+
+	/**
+	 * Returns inputs representing the symbols in symbol id order.
+	 * @return Inputs representing the symbols.
+	 */
+	public List<Input> getInputs() {
+		return Collections.unmodifiableList(Arrays.asList(this.inputs));
+	}
+}
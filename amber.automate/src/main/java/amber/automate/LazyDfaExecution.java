@@ -0,0 +1,295 @@
+package amber.automate;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import amber.input.EventInput;
+import amber.input.Input;
+
+/**
+ * Execution which builds a deterministic automate lazily while it runs.
+ *
+ * Each set of current states met during execution is cached together with the transitions taken from it.
+ * When the same set of current states is updated with the same input again the next set of current states
+ * is taken from the cache. Otherwise update is done like in Execution and the result is cached.
+ *
+ * Cache holds at most given number of state sets. When it is full it is cleared and filled again.
+ * If automate has callbacks cache is not used since callbacks must be called on every update.
+ */
+public class LazyDfaExecution extends Execution {
+
+	/**
+	 * Default maximum number of cached state sets.
+	 */
+	public static final int DEFAULT_MAX_CACHED_STATES = 1000;
+
+	protected final int maxCachedStates;
+
+	/**
+	 * Alphabet of the automate. Cache columns are symbol ids. Inputs not in the alphabet share the last column.
+	 */
+	protected final InputAlphabet alphabet;
+
+	protected final int columnCount;
+
+	/**
+	 * Cached state sets.
+	 */
+	protected final Map<Set<State>, CachedStates> cache;
+
+	/**
+	 * True if cache can be used meaning that automate has no callbacks.
+	 */
+	protected final boolean cacheEnabled;
+
+	/**
+	 * Cached state set holding the current states or null if execution hasn't been started or cache is not used.
+	 */
+	protected CachedStates current;
+
+	protected long cacheHits;
+	protected long cacheMisses;
+	protected long cacheFlushes;
+
+	/**
+	 * Create new execution for given automate with given configuration and default cache size.
+	 * @param automate Automate execution is run on.
+	 * @param configuration Configuration for execution.
+	 */
+	public LazyDfaExecution(final Automate automate, final ExecutionConfiguration configuration) {
+		this(automate, configuration, DEFAULT_MAX_CACHED_STATES);
+	}
+
+	/**
+	 * Create new execution for given automate with given configuration.
+	 * @param automate Automate execution is run on.
+	 * @param configuration Configuration for execution.
+	 * @param maxCachedStates Maximum number of state sets held in cache.
+	 */
+	public LazyDfaExecution(final Automate automate, final ExecutionConfiguration configuration, final int maxCachedStates) {
+		super(automate, configuration);
+
+		if (maxCachedStates < 1) {
+			throw new IllegalArgumentException("Cache must be able to hold at least one state set.");
+		}
+
+		this.maxCachedStates = maxCachedStates;
+		this.cache = new HashMap<Set<State>, CachedStates>();
+
+		this.alphabet = automate.getTransitionTable().getAlphabet();
+		this.columnCount = this.alphabet.size() + 1;
+		this.cacheEnabled = !hasCallbacks(automate);
+	}
+
+	protected static boolean hasCallbacks(final Automate automate) {
+		final Set<State> states = new HashSet<State>();
+		states.add(automate.getStartState());
+		states.add(automate.getErrorState());
+		states.addAll(automate.getTransitionTable().getStates());
+
+		for (final State state : states) {
+
+			if (state.getOnEntryCallback() != null || state.getOnExitCallback() != null || state.getOnStayCallback() != null) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns number of updates which were answered from the cache.
+	 * @return Number of cache hits.
+	 */
+	public long getCacheHits() {
+		return this.cacheHits;
+	}
+
+	/**
+	 * Returns number of updates which had to be computed.
+	 * @return Number of cache misses.
+	 */
+	public long getCacheMisses() {
+		return this.cacheMisses;
+	}
+
+	/**
+	 * Returns number of times the cache was cleared because it was full.
+	 * @return Number of cache flushes.
+	 */
+	public long getCacheFlushes() {
+		return this.cacheFlushes;
+	}
+
+	/**
+	 * Returns number of state sets currently held in the cache.
+	 * @return Number of cached state sets.
+	 */
+	public int getCachedStateCount() {
+		return this.cache.size();
+	}
+
+	public int getMaxCachedStates() {
+		return this.maxCachedStates;
+	}
+
+	/**
+	 * Returns alphabet of the automate taken when execution was created. Symbol ids are the cache columns.
+	 * @return Alphabet of the automate.
+	 */
+	@Override
+	public InputAlphabet getAlphabet() {
+		return this.alphabet;
+	}
+
+	@Override
+	public boolean start() {
+		final boolean result = super.start();
+
+		if (this.cacheEnabled) {
+			this.current = this.getCachedStates(this.getCurrentStates());
+		}
+
+		return result;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.current = null;
+	}
+
+	/**
+	 * Updates execution using given input. Uses cached result if available.
+	 * @param input Input which is used to update execution.
+	 */
+	@Override
+	public boolean update(final Input input) {
+
+		// Events can't be cached since each of them may match different predicates
+		if (input instanceof EventInput) {
+			final boolean running = super.update(input);
+			this.current = this.current == null ? null : this.getCachedStates(this.getCurrentStates());
+			return running;
+		}
+
+		return this.update(input, this.alphabet.getSymbolId(input));
+	}
+
+	/**
+	 * Updates execution using input with given symbol id. Uses cached result if available without hashing the input.
+	 * @param symbolId Symbol id of the input which is used to update execution or InputAlphabet.UNKNOWN_SYMBOL.
+	 */
+	@Override
+	public boolean update(final int symbolId) {
+		return this.update(symbolId == InputAlphabet.UNKNOWN_SYMBOL ? UNKNOWN_INPUT : this.alphabet.getInput(symbolId), symbolId);
+	}
+
+	protected boolean update(final Input input, final int symbolId) {
+
+		if (this.current == null) {
+			return super.update(input);
+		}
+
+		final int column = symbolId == InputAlphabet.UNKNOWN_SYMBOL ? this.columnCount - 1 : symbolId;
+		final CachedStates source = this.current;
+		final CachedTransition cachedTransition = source.transitions[column];
+
+		// Use cached transition
+		if (cachedTransition != null) {
+			this.cacheHits++;
+			this.current = cachedTransition.target;
+			this.setCurrentStates(this.current.stateArray, this.current.stateArray.length);
+
+			if (cachedTransition.endStates != null) {
+				this.encounteredEndStates.add(cachedTransition.endStates);
+			}
+
+			return !this.isAtEnd();
+		}
+
+		// Compute transition like execution does and cache it
+		this.cacheMisses++;
+
+		final int encounteredEndStatesBefore = this.encounteredEndStates.size();
+		super.update(input);
+		final Set<State> endStates = this.encounteredEndStates.size() > encounteredEndStatesBefore ? this.encounteredEndStates.get(encounteredEndStatesBefore) : null;
+
+		final long cacheFlushesBefore = this.cacheFlushes;
+		this.current = this.getCachedStates(this.getCurrentStates());
+
+		// Source is no longer cached if cache was flushed
+		if (this.cacheFlushes == cacheFlushesBefore) {
+			source.transitions[column] = new CachedTransition(this.current, endStates == null ? null : Collections.unmodifiableSet(endStates));
+		}
+
+		return !this.isAtEnd();
+	}
+
+	/**
+	 * Returns cached state set equal to given states. Adds it to the cache if it is not there.
+	 * Clears the cache first if it is full.
+	 */
+	protected CachedStates getCachedStates(final Set<State> states) {
+		CachedStates cachedStates = this.cache.get(states);
+
+		if (cachedStates == null) {
+
+			if (this.cache.size() >= this.maxCachedStates) {
+				this.cache.clear();
+				this.cacheFlushes++;
+			}
+
+			final Set<State> statesCopy = Collections.unmodifiableSet(new HashSet<State>(states));
+			cachedStates = new CachedStates(statesCopy, this.columnCount);
+			this.cache.put(statesCopy, cachedStates);
+		}
+
+		return cachedStates;
+	}
+
+	/**
+	 * Set of current states held in the cache.
+	 */
+	protected static class CachedStates {
+
+		protected final Set<State> states;
+
+		/**
+		 * Same states as an array so that they can be copied to current states of execution.
+		 */
+		protected final State[] stateArray;
+
+		/**
+		 * Cached transitions by input column. Null if transition hasn't been computed.
+		 */
+		protected final CachedTransition[] transitions;
+
+		protected CachedStates(final Set<State> states, final int columnCount) {
+			this.states = states;
+			this.stateArray = states.toArray(new State[states.size()]);
+			this.transitions = new CachedTransition[columnCount];
+		}
+	}
+
+	/**
+	 * Cached result of updating a set of current states with an input.
+	 */
+	protected static class CachedTransition {
+
+		protected final CachedStates target;
+
+		/**
+		 * End states encountered by the update or null if there were none.
+		 */
+		protected final Set<State> endStates;
+
+		protected CachedTransition(final CachedStates target, final Set<State> endStates) {
+			this.target = target;
+			this.endStates = endStates;
+		}
+	}
+}
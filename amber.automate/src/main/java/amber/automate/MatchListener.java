@@ -0,0 +1,16 @@
+package amber.automate;
+
+/**
+ * Listener which is told about matches found when scanning with CompiledExecution.scan.
+ * Match is a position where an end state was entered. Primitive arguments are used so that matches don't allocate memory.
+ */
+public interface MatchListener {
+
+	/**
+	 * Called when an end state is entered.
+	 * @param position Index of the input with which end state was entered.
+	 * @param endStateId Id of the end state in the compiled automate.
+	 * @return True to continue scanning, false to stop.
+	 */
+	public boolean onMatch(int position, int endStateId);
+}
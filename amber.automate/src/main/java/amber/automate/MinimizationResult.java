@@ -0,0 +1,51 @@
+package amber.automate;
+
+/**
+ * Result of minimizing an automate. Holds the minimized automate and the number of states which were merged away.
+ */
+public class MinimizationResult {
+
+	protected final Automate automate;
+
+	protected final int originalStateCount;
+
+	protected final int stateCount;
+
+	public MinimizationResult(final Automate automate, final int originalStateCount, final int stateCount) {
+		this.automate = automate;
+		this.originalStateCount = originalStateCount;
+		this.stateCount = stateCount;
+	}
+
+	/**
+	 * Returns minimized automate.
+	 * @return Minimized automate.
+	 */
+	public Automate getAutomate() {
+		return this.automate;
+	}
+
+	/**
+	 * Returns number of states in the original automate including error state.
+	 * @return Number of states in the original automate.
+	 */
+	public int getOriginalStateCount() {
+		return this.originalStateCount;
+	}
+
+	/**
+	 * Returns number of states in the minimized automate including error state.
+	 * @return Number of states in the minimized automate.
+	 */
+	public int getStateCount() {
+		return this.stateCount;
+	}
+
+	/**
+	 * Returns number of states which were removed by merging them with equivalent states.
+	 * @return Number of removed states.
+	 */
+	public int getRemovedStateCount() {
+		return this.originalStateCount - this.stateCount;
+	}
+}
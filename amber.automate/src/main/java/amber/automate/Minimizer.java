@@ -0,0 +1,358 @@
+package amber.automate;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import amber.common.Callback;
+import amber.input.Input;
+
+/**
+ * Minimizes deterministic automates by merging equivalent states with Hopcroft's partition refinement algorithm.
+ *
+ * States are only merged if they are both end states or both normal states and have the same callbacks.
+ * Error state is never merged with other states. Missing transitions are treated as transitions to a state
+ * of their own so the result is equivalent regardless of the allow to stay in state on update setting.
+ */
+public class Minimizer {
+
+	/**
+	 * Minimizes given automate. Automate must be deterministic. Use Determinizer first for nondeterministic automates.
+	 * @param automate Automate to be minimized.
+	 * @return Result which holds minimized automate and number of removed states.
+	 */
+	public static MinimizationResult minimize(final Automate automate) {
+		final CompiledAutomate compiled = CompiledAutomate.compile(automate);
+
+		if (!compiled.isDeterministic()) {
+			throw new IllegalArgumentException("Only deterministic automates can be minimized. Use Determinizer first.");
+		}
+
+		return new Minimizer(compiled).minimize();
+	}
+
+	protected final CompiledAutomate compiled;
+
+	/**
+	 * Number of states including the extra state for missing transitions.
+	 */
+	protected final int stateCount;
+
+	protected final int inputCount;
+
+	/**
+	 * Id of the extra state which missing transitions lead to.
+	 */
+	protected final int missingState;
+
+	// Partition. Elements of block b are elements[blockStart[b]] ... elements[blockEnd[b] - 1].
+	protected final int[] elements;
+	protected final int[] locations;
+	protected final int[] blockOf;
+	protected final int[] blockStart;
+	protected final int[] blockEnd;
+	protected final int[] markedEnd;
+	protected int blockCount;
+
+	// Inverse transitions. Sources of state t with input a are inverseSources[inverseStart[a][t]] ... inverseSources[inverseStart[a][t + 1] - 1].
+	protected final int[][] inverseStart;
+	protected final int[][] inverseSources;
+
+	protected Minimizer(final CompiledAutomate compiled) {
+		this.compiled = compiled;
+		this.stateCount = compiled.getStateCount() + 1;
+		this.inputCount = compiled.getInputCount();
+		this.missingState = compiled.getStateCount();
+
+		this.elements = new int[this.stateCount];
+		this.locations = new int[this.stateCount];
+		this.blockOf = new int[this.stateCount];
+		this.blockStart = new int[this.stateCount];
+		this.blockEnd = new int[this.stateCount];
+		this.markedEnd = new int[this.stateCount];
+
+		this.inverseStart = new int[this.inputCount][];
+		this.inverseSources = new int[this.inputCount][];
+	}
+
+	/**
+	 * Returns target of transition treating missing transitions as transitions to the missing state.
+	 */
+	protected int target(final int state, final int input) {
+
+		if (state == this.missingState) {
+			return this.missingState;
+		}
+
+		final int target = this.compiled.getTransition(state, input);
+		return target == CompiledAutomate.NO_TRANSITION ? this.missingState : target;
+	}
+
+	protected MinimizationResult minimize() {
+		this.buildInverseTransitions();
+		this.buildInitialPartition();
+
+		// Add all but the first initial block as splitters
+		final Deque<int[]> splitters = new ArrayDeque<int[]>();
+		final boolean[] isSplitter = new boolean[this.stateCount * this.inputCount];
+		for (int block = 1; block < this.blockCount; block++) {
+			for (int input = 0; input < this.inputCount; input++) {
+				splitters.add(new int[] { block, input });
+				isSplitter[block * this.inputCount + input] = true;
+			}
+		}
+
+		final int[] predecessors = new int[this.stateCount];
+		final int[] touchedBlocks = new int[this.stateCount];
+
+		while (!splitters.isEmpty()) {
+			final int[] splitter = splitters.poll();
+			final int splitterBlock = splitter[0];
+			final int input = splitter[1];
+			isSplitter[splitterBlock * this.inputCount + input] = false;
+
+			// Collect states which move into splitter block with input
+			int predecessorCount = 0;
+			for (int i = this.blockStart[splitterBlock]; i < this.blockEnd[splitterBlock]; i++) {
+				final int state = this.elements[i];
+
+				for (int j = this.inverseStart[input][state]; j < this.inverseStart[input][state + 1]; j++) {
+					predecessors[predecessorCount++] = this.inverseSources[input][j];
+				}
+			}
+
+			// Mark them inside their blocks
+			int touchedCount = 0;
+			for (int i = 0; i < predecessorCount; i++) {
+				final int state = predecessors[i];
+				final int block = this.blockOf[state];
+
+				if (this.markedEnd[block] == this.blockStart[block]) {
+					touchedBlocks[touchedCount++] = block;
+				}
+
+				this.mark(state);
+			}
+
+			// Split blocks which were only partly marked
+			for (int i = 0; i < touchedCount; i++) {
+				final int block = touchedBlocks[i];
+
+				if (this.markedEnd[block] == this.blockEnd[block]) {
+					this.markedEnd[block] = this.blockStart[block];
+					continue;
+				}
+
+				final int newBlock = this.split(block);
+
+				for (int splitInput = 0; splitInput < this.inputCount; splitInput++) {
+
+					if (isSplitter[block * this.inputCount + splitInput]) {
+						splitters.add(new int[] { newBlock, splitInput });
+						isSplitter[newBlock * this.inputCount + splitInput] = true;
+					}
+
+					else {
+						final int smallerBlock = this.blockSize(newBlock) <= this.blockSize(block) ? newBlock : block;
+						splitters.add(new int[] { smallerBlock, splitInput });
+						isSplitter[smallerBlock * this.inputCount + splitInput] = true;
+					}
+				}
+			}
+		}
+
+		return this.buildMinimizedAutomate();
+	}
+
+	protected void buildInverseTransitions() {
+		for (int input = 0; input < this.inputCount; input++) {
+			final int[] start = new int[this.stateCount + 1];
+
+			for (int state = 0; state < this.stateCount; state++) {
+				start[this.target(state, input) + 1]++;
+			}
+
+			for (int state = 0; state < this.stateCount; state++) {
+				start[state + 1] += start[state];
+			}
+
+			final int[] sources = new int[this.stateCount];
+			final int[] position = new int[this.stateCount];
+			System.arraycopy(start, 0, position, 0, this.stateCount);
+
+			for (int state = 0; state < this.stateCount; state++) {
+				sources[position[this.target(state, input)]++] = state;
+			}
+
+			this.inverseStart[input] = start;
+			this.inverseSources[input] = sources;
+		}
+	}
+
+	/**
+	 * Groups states by being an end state, being the error state and their callbacks.
+	 */
+	protected void buildInitialPartition() {
+		final Map<String, Integer> blockForKey = new HashMap<String, Integer>();
+		final int[] initialBlock = new int[this.stateCount];
+		final int[] blockSizes = new int[this.stateCount];
+
+		for (int state = 0; state < this.stateCount; state++) {
+			final String key = this.partitionKey(state);
+
+			Integer block = blockForKey.get(key);
+			if (block == null) {
+				block = blockForKey.size();
+				blockForKey.put(key, block);
+			}
+
+			initialBlock[state] = block;
+			blockSizes[block]++;
+		}
+
+		this.blockCount = blockForKey.size();
+
+		int position = 0;
+		for (int block = 0; block < this.blockCount; block++) {
+			this.blockStart[block] = position;
+			this.blockEnd[block] = position;
+			this.markedEnd[block] = position;
+			position += blockSizes[block];
+		}
+
+		for (int state = 0; state < this.stateCount; state++) {
+			final int block = initialBlock[state];
+			this.elements[this.blockEnd[block]] = state;
+			this.locations[state] = this.blockEnd[block];
+			this.blockOf[state] = block;
+			this.blockEnd[block]++;
+		}
+	}
+
+	protected String partitionKey(final int state) {
+
+		if (state == this.missingState) {
+			return "missing";
+		}
+
+		if (state == this.compiled.getErrorStateId()) {
+			return "error";
+		}
+
+		final State original = this.compiled.getState(state);
+		return this.compiled.isEndState(state) + "|" + callbackKey(original.getOnEntryCallback()) + "|"
+				+ callbackKey(original.getOnExitCallback()) + "|" + callbackKey(original.getOnStayCallback());
+	}
+
+	/**
+	 * Callbacks are equal if they have same class and name.
+	 */
+	protected static String callbackKey(final Callback callback) {
+		return callback == null ? "" : callback.getClass().getName() + ":" + callback.getName();
+	}
+
+	/**
+	 * Moves given state to the marked part of its block.
+	 */
+	protected void mark(final int state) {
+		final int block = this.blockOf[state];
+		final int location = this.locations[state];
+		final int markedLocation = this.markedEnd[block];
+
+		final int swapped = this.elements[markedLocation];
+		this.elements[markedLocation] = state;
+		this.locations[state] = markedLocation;
+		this.elements[location] = swapped;
+		this.locations[swapped] = location;
+
+		this.markedEnd[block]++;
+	}
+
+	/**
+	 * Splits marked part of given block into a new block.
+	 * @return Id of the new block.
+	 */
+	protected int split(final int block) {
+		final int newBlock = this.blockCount++;
+
+		this.blockStart[newBlock] = this.blockStart[block];
+		this.blockEnd[newBlock] = this.markedEnd[block];
+		this.markedEnd[newBlock] = this.blockStart[newBlock];
+
+		this.blockStart[block] = this.markedEnd[block];
+		this.markedEnd[block] = this.blockStart[block];
+
+		for (int i = this.blockStart[newBlock]; i < this.blockEnd[newBlock]; i++) {
+			this.blockOf[this.elements[i]] = newBlock;
+		}
+
+		return newBlock;
+	}
+
+	protected int blockSize(final int block) {
+		return this.blockEnd[block] - this.blockStart[block];
+	}
+
+	protected MinimizationResult buildMinimizedAutomate() {
+
+		// Select representative state for each block. Start and error states are preferred.
+		final int[] representatives = new int[this.blockCount];
+		for (int block = 0; block < this.blockCount; block++) {
+			int representative = Integer.MAX_VALUE;
+
+			for (int i = this.blockStart[block]; i < this.blockEnd[block]; i++) {
+				representative = Math.min(representative, this.elements[i]);
+			}
+
+			representatives[block] = representative;
+		}
+
+		representatives[this.blockOf[this.compiled.getStartStateId()]] = this.compiled.getStartStateId();
+		representatives[this.blockOf[this.compiled.getErrorStateId()]] = this.compiled.getErrorStateId();
+
+		// Build automate from representatives
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder();
+		for (int block = 0; block < this.blockCount; block++) {
+
+			if (block == this.blockOf[this.missingState]) {
+				continue;
+			}
+
+			final State state = this.compiled.getState(representatives[block]);
+			builder.addState(state);
+
+			if (this.compiled.isEndState(representatives[block])) {
+				builder.addEndState(state);
+			}
+		}
+
+		for (int block = 0; block < this.blockCount; block++) {
+
+			if (block == this.blockOf[this.missingState]) {
+				continue;
+			}
+
+			final State state = this.compiled.getState(representatives[block]);
+
+			for (int input = 0; input < this.inputCount; input++) {
+				final int target = this.compiled.getTransition(representatives[block], input);
+
+				if (target == CompiledAutomate.NO_TRANSITION) {
+					continue;
+				}
+
+				// Character and byte classes may need several inputs
+				final State targetState = this.compiled.getState(representatives[this.blockOf[target]]);
+				for (final Input classInput : this.compiled.getAlphabet().getClassInputs(input)) {
+					builder.addTransition(state, classInput, targetState);
+				}
+			}
+		}
+
+		builder.setStartState(this.compiled.getState(this.compiled.getStartStateId()));
+		builder.setErrorState(this.compiled.getState(this.compiled.getErrorStateId()));
+
+		return new MinimizationResult(builder.build(), this.compiled.getStateCount(), this.blockCount - 1);
+	}
+}
@@ -0,0 +1,483 @@
+package amber.automate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a compiled deterministic automate over one long input using several threads.
+ *
+ * Input is split into chunks which are run in parallel on a fork join pool. Since the state a chunk starts in is not known
+ * beforehand each chunk is run from every state at once and the mapping from start states to the states the chunk ends in
+ * is recorded. Runs which meet the same state are merged because they go on the same way, so usually only a few runs
+ * are followed after the first inputs of a chunk. The first chunk is only run from the start state.
+ * Mappings are then stitched together in order to get the result a sequential run would give.
+ *
+ * Runner follows the rules of the execution configuration but doesn't run state callbacks or record encountered end states.
+ * Instead it tells the final state and the position where an end state was first entered.
+ */
+public class ParallelRunner {
+
+	/**
+	 * Default minimum number of inputs in one chunk. Shorter inputs are run in one chunk.
+	 */
+	public static final int DEFAULT_MIN_CHUNK_SIZE = 1 << 16;
+
+	/**
+	 * First end position when start state is an end state, which is entered before any input is used.
+	 */
+	public static final long BEFORE_FIRST_INPUT = -2;
+
+	/**
+	 * Number of inputs converted to input ids at a time when running bytes.
+	 */
+	protected static final int BLOCK_SIZE = 4096;
+
+	/**
+	 * Result of a run.
+	 */
+	public static class Result {
+
+		protected final CompiledAutomate compiledAutomate;
+		protected final int finalStateId;
+		protected final long firstEndPosition;
+		protected final boolean atEnd;
+
+		protected Result(final CompiledAutomate compiledAutomate, final int finalStateId, final long firstEndPosition, final boolean atEnd) {
+			this.compiledAutomate = compiledAutomate;
+			this.finalStateId = finalStateId;
+			this.firstEndPosition = firstEndPosition;
+			this.atEnd = atEnd;
+		}
+
+		/**
+		 * Returns id of the state run ended in. If execution exits when end state is encountered this is the first end state.
+		 * @return Id of the final state.
+		 */
+		public int getFinalStateId() {
+			return this.finalStateId;
+		}
+
+		public State getFinalState() {
+			return this.compiledAutomate.getState(this.finalStateId);
+		}
+
+		/**
+		 * Returns position of the input with which an end state was entered first, BEFORE_FIRST_INPUT if start state
+		 * is an end state or -1 if no end state was entered.
+		 * @return Position of the first end state, BEFORE_FIRST_INPUT or -1.
+		 */
+		public long getFirstEndPosition() {
+			return this.firstEndPosition;
+		}
+
+		/**
+		 * Tells if run reached its end like Execution.isAtEnd.
+		 * @return True if run ended in error state or exited at an end state.
+		 */
+		public boolean isAtEnd() {
+			return this.atEnd;
+		}
+	}
+
+	protected final CompiledAutomate compiledAutomate;
+	protected final ExecutionConfiguration configuration;
+	protected final ForkJoinPool pool;
+	protected final int minChunkSize;
+
+	/**
+	 * Creates runner using common fork join pool and default minimum chunk size.
+	 * @param compiledAutomate Compiled deterministic automate.
+	 * @param configuration Configuration which tells how missing transitions and end states are handled.
+	 */
+	public ParallelRunner(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration) {
+		this(compiledAutomate, configuration, ForkJoinPool.commonPool(), DEFAULT_MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * Creates runner. Throws exception if compiled automate is not deterministic.
+	 * @param compiledAutomate Compiled deterministic automate.
+	 * @param configuration Configuration which tells how missing transitions and end states are handled.
+	 * @param pool Pool which runs the chunks. Input is split into as many chunks as pool has parallelism.
+	 * @param minChunkSize Minimum number of inputs in one chunk.
+	 */
+	public ParallelRunner(final CompiledAutomate compiledAutomate, final ExecutionConfiguration configuration, final ForkJoinPool pool, final int minChunkSize) {
+
+		if (!compiledAutomate.isDeterministic()) {
+			throw new IllegalArgumentException("Compiled automate is not deterministic. Determinize automate before compiling.");
+		}
+
+		if (minChunkSize < 1) {
+			throw new IllegalArgumentException("Minimum chunk size must be positive but was " + minChunkSize + ".");
+		}
+
+		this.compiledAutomate = compiledAutomate;
+		this.configuration = configuration;
+		this.pool = pool;
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * Runs input ids inputIds[offset] ... inputIds[offset + length - 1]. Positions in the result are indexes to the array.
+	 * @param inputIds Input ids of the input.
+	 * @param offset Index of the first input id used.
+	 * @param length Number of input ids used.
+	 * @return Result of the run.
+	 */
+	public Result run(final int[] inputIds, final int offset, final int length) {
+		Execution.checkSlice(inputIds.length, offset, length);
+
+		return this.run(offset, length, new ChunkInput() {
+
+			@Override
+			public void run(final ChunkRun chunkRun, final long start, final long end) {
+				chunkRun.run(inputIds, (int)start, (int)end, start);
+			}
+		});
+	}
+
+	/**
+	 * Runs remaining bytes of given buffer. Each byte is used like a ByteInput. Position of the buffer is not moved.
+	 * Positions in the result are indexes to the buffer.
+	 * @param buffer Buffer holding the bytes. Can be a mapped byte buffer.
+	 * @return Result of the run.
+	 */
+	public Result run(final ByteBuffer buffer) {
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+
+		return this.run(buffer.position(), buffer.remaining(), new ChunkInput() {
+
+			@Override
+			public void run(final ChunkRun chunkRun, final long start, final long end) {
+				chunkRun.run(buffer, alphabet, (int)start, (int)end, 0);
+			}
+		});
+	}
+
+	/**
+	 * Runs bytes of given file. Each chunk maps its part of the file so files larger than 2GB can be run.
+	 * Positions in the result are positions in the file.
+	 * @param channel Channel of the file.
+	 * @param position Position of the first byte used.
+	 * @param size Number of bytes used.
+	 * @return Result of the run.
+	 * @throws IOException If mapping the file fails.
+	 */
+	public Result run(final FileChannel channel, final long position, final long size) throws IOException {
+		final InputAlphabet alphabet = this.compiledAutomate.getAlphabet();
+
+		try {
+			return this.run(position, size, new ChunkInput() {
+
+				@Override
+				public void run(final ChunkRun chunkRun, final long start, final long end) {
+
+					try {
+						for (long windowStart = start; windowStart < end; windowStart += Execution.MAPPED_WINDOW_SIZE) {
+							final int windowSize = (int)Math.min(Execution.MAPPED_WINDOW_SIZE, end - windowStart);
+							final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+							chunkRun.run(window, alphabet, 0, windowSize, windowStart);
+						}
+					}
+
+					catch (final IOException e) {
+						throw new ChunkIOException(e);
+					}
+				}
+			});
+		}
+
+		catch (final ChunkIOException e) {
+			throw (IOException)e.getCause();
+		}
+	}
+
+	/**
+	 * Splits input into chunks, runs them in the pool and stitches the results.
+	 */
+	protected Result run(final long start, final long length, final ChunkInput input) {
+		final CompiledAutomate compiled = this.compiledAutomate;
+
+		// Like CompiledExecution.start sequential execution is at its end before any input if start state is an end state
+		if (compiled.endStates[compiled.startState] && this.configuration.exitWhenEndStateIsEncountered) {
+			return new Result(compiled, compiled.startState, BEFORE_FIRST_INPUT, true);
+		}
+
+		final int chunkCount = (int)Math.max(1, Math.min(this.pool.getParallelism(), length / this.minChunkSize));
+		final List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+
+		for (int chunk = 0; chunk < chunkCount; chunk++) {
+			final long chunkStart = start + length * chunk / chunkCount;
+			final long chunkEnd = start + length * (chunk + 1) / chunkCount;
+			tasks.add(new ChunkTask(new ChunkRun(compiled, this.configuration, chunk == 0), input, chunkStart, chunkEnd));
+		}
+
+		// Run first chunk in this thread while others run in the pool
+		for (int chunk = 1; chunk < chunkCount; chunk++) {
+			this.pool.execute(tasks.get(chunk));
+		}
+
+		tasks.get(0).invoke();
+
+		int state = compiled.startState;
+		long firstEndPosition = compiled.endStates[state] ? BEFORE_FIRST_INPUT : -1;
+
+		for (final ChunkTask task : tasks) {
+			final ChunkRun chunkRun = task.getChunkRun();
+
+			if (firstEndPosition == -1 && chunkRun.firstEndPositions[state] >= 0) {
+				firstEndPosition = chunkRun.firstEndPositions[state];
+
+				// Sequential execution would stop at the first end state
+				if (this.configuration.exitWhenEndStateIsEncountered) {
+					return new Result(compiled, chunkRun.firstEndStates[state], firstEndPosition, true);
+				}
+			}
+
+			state = chunkRun.finalStates[state];
+
+			if (state == compiled.errorState) {
+				break;
+			}
+		}
+
+		return new Result(compiled, state, firstEndPosition, state == compiled.errorState);
+	}
+
+	/**
+	 * Source of the inputs of chunks.
+	 */
+	protected static interface ChunkInput {
+
+		public void run(ChunkRun chunkRun, long start, long end);
+	}
+
+	protected static class ChunkIOException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		protected ChunkIOException(final IOException cause) {
+			super(cause);
+		}
+	}
+
+	protected static class ChunkTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		protected final ChunkRun chunkRun;
+		protected final ChunkInput input;
+		protected final long start;
+		protected final long end;
+
+		protected ChunkTask(final ChunkRun chunkRun, final ChunkInput input, final long start, final long end) {
+			this.chunkRun = chunkRun;
+			this.input = input;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			this.input.run(this.chunkRun, this.start, this.end);
+			this.chunkRun.finish();
+		}
+
+		/**
+		 * Waits until chunk has been run.
+		 * @return Mapping of the chunk.
+		 */
+		protected ChunkRun getChunkRun() {
+			this.join();
+			return this.chunkRun;
+		}
+	}
+
+	/**
+	 * Runs one chunk from every state at once. Runs are kept in lanes. Lanes which reach the same state are merged
+	 * and the start states of merged lanes are kept in a linked list.
+	 */
+	protected static class ChunkRun {
+
+		protected final CompiledAutomate compiled;
+		protected final boolean allowToStay;
+
+		/**
+		 * Final state and first end state position and state for each start state. Filled when chunk has been run.
+		 */
+		protected final int[] finalStates;
+		protected final long[] firstEndPositions;
+		protected final int[] firstEndStates;
+
+		// Lanes. Active lanes are the lanes 0 ... lane count - 1.
+		protected final int[] laneStates;
+		protected final int[] laneHeads;
+		protected final int[] laneTails;
+
+		/**
+		 * True if every start state of lane has met an end state so end states met by lane can be ignored.
+		 */
+		protected final boolean[] laneEnded;
+		protected int laneCount;
+
+		/**
+		 * Next start state in the same lane or -1.
+		 */
+		protected final int[] nextMembers;
+
+		/**
+		 * Lane which is in each state during current step and the step when it was set.
+		 */
+		protected final int[] stateLanes;
+		protected final long[] stateSteps;
+
+		protected ChunkRun(final CompiledAutomate compiled, final ExecutionConfiguration configuration, final boolean fromStartStateOnly) {
+			final int stateCount = compiled.getStateCount();
+			this.compiled = compiled;
+			this.allowToStay = configuration.allowToStayInStateOnUpdate;
+
+			this.finalStates = new int[stateCount];
+			this.firstEndPositions = new long[stateCount];
+			this.firstEndStates = new int[stateCount];
+			Arrays.fill(this.firstEndPositions, -1);
+
+			this.laneStates = new int[stateCount];
+			this.laneHeads = new int[stateCount];
+			this.laneTails = new int[stateCount];
+			this.laneEnded = new boolean[stateCount];
+			this.nextMembers = new int[stateCount];
+			this.stateLanes = new int[stateCount];
+			this.stateSteps = new long[stateCount];
+			Arrays.fill(this.nextMembers, -1);
+			Arrays.fill(this.stateSteps, -1);
+
+			if (fromStartStateOnly) {
+				this.addLane(compiled.startState);
+			}
+
+			else {
+
+				for (int state = 0; state < stateCount; state++) {
+					this.addLane(state);
+				}
+			}
+		}
+
+		protected void addLane(final int state) {
+			this.laneStates[this.laneCount] = state;
+			this.laneHeads[this.laneCount] = state;
+			this.laneTails[this.laneCount] = state;
+			this.laneCount++;
+		}
+
+		/**
+		 * Runs input ids inputIds[from] ... inputIds[to - 1]. Position of inputIds[from] is given position.
+		 */
+		protected void run(final int[] inputIds, final int from, final int to, final long position) {
+
+			for (int i = from; i < to; i++) {
+				this.step(inputIds[i], position + i - from);
+			}
+		}
+
+		/**
+		 * Runs bytes buffer[from] ... buffer[to - 1] converting them to input ids in blocks. Position of buffer[from] is from + base.
+		 */
+		protected void run(final ByteBuffer buffer, final InputAlphabet alphabet, final int from, final int to, final long base) {
+			final int[] block = new int[BLOCK_SIZE];
+
+			for (int blockStart = from; blockStart < to; blockStart += BLOCK_SIZE) {
+				final int blockEnd = Math.min(to, blockStart + BLOCK_SIZE);
+
+				for (int i = blockStart; i < blockEnd; i++) {
+					block[i - blockStart] = alphabet.getByteSymbolId(buffer.get(i));
+				}
+
+				this.run(block, 0, blockEnd - blockStart, base + blockStart);
+			}
+		}
+
+		/**
+		 * Moves all lanes with given input id merging lanes which reach the same state.
+		 */
+		protected void step(final int inputId, final long position) {
+			final CompiledAutomate compiled = this.compiled;
+			int lane = 0;
+
+			while (lane < this.laneCount) {
+				final int sourceState = this.laneStates[lane];
+				int targetState = compiled.getTransition(sourceState, inputId);
+
+				if (targetState == CompiledAutomate.NO_TRANSITION) {
+					targetState = this.allowToStay ? sourceState : compiled.errorState;
+				}
+
+				else if (compiled.endStates[targetState] && !this.laneEnded[lane]) {
+					this.recordEndState(lane, targetState, position);
+				}
+
+				// Merge lane with the lane which already reached the same state during this step
+				if (this.stateSteps[targetState] == position) {
+					this.mergeLane(lane, this.stateLanes[targetState]);
+					continue;
+				}
+
+				this.stateSteps[targetState] = position;
+				this.stateLanes[targetState] = lane;
+				this.laneStates[lane] = targetState;
+				lane++;
+			}
+		}
+
+		protected void recordEndState(final int lane, final int endState, final long position) {
+
+			for (int member = this.laneHeads[lane]; member >= 0; member = this.nextMembers[member]) {
+
+				if (this.firstEndPositions[member] < 0) {
+					this.firstEndPositions[member] = position;
+					this.firstEndStates[member] = endState;
+				}
+			}
+
+			this.laneEnded[lane] = true;
+		}
+
+		/**
+		 * Moves start states of given lane to target lane and replaces given lane with the last active lane.
+		 * Last lane hasn't been moved during this step yet since lanes are moved in order.
+		 */
+		protected void mergeLane(final int lane, final int targetLane) {
+			this.nextMembers[this.laneTails[targetLane]] = this.laneHeads[lane];
+			this.laneTails[targetLane] = this.laneTails[lane];
+			this.laneEnded[targetLane] = this.laneEnded[targetLane] && this.laneEnded[lane];
+
+			final int lastLane = --this.laneCount;
+			if (lane != lastLane) {
+				this.laneStates[lane] = this.laneStates[lastLane];
+				this.laneHeads[lane] = this.laneHeads[lastLane];
+				this.laneTails[lane] = this.laneTails[lastLane];
+				this.laneEnded[lane] = this.laneEnded[lastLane];
+			}
+		}
+
+		/**
+		 * Records final state of each start state.
+		 */
+		protected void finish() {
+			Arrays.fill(this.finalStates, this.compiled.errorState);
+
+			for (int lane = 0; lane < this.laneCount; lane++) {
+
+				for (int member = this.laneHeads[lane]; member >= 0; member = this.nextMembers[member]) {
+					this.finalStates[member] = this.laneStates[lane];
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package amber.automate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import amber.input.EventInput;
+import amber.input.Input;
+import amber.input.PredicateInput;
+
+/**
+ * Predicate transitions of one state compiled into a decision structure.
+ *
+ * Thresholds of numeric predicates on an attribute split numbers into regions: open intervals between thresholds
+ * and the thresholds themselves. Target states are computed for each region so an event is dispatched with
+ * a binary search over the thresholds. Values of IN predicates are looked up from a hash map.
+ * Dispatch takes time relative to the number of attributes the predicates test, not to the number of predicates.
+ *
+ * Target states include states reachable with epsilon transitions. Use TransitionTable.getTargetStatesWithEpsilon to dispatch events.
+ */
+public class PredicateDecision {
+
+	/**
+	 * Shared empty array returned when no predicate matches.
+	 */
+	protected static final State[] NO_STATES = new State[0];
+
+	/**
+	 * Names of the attributes tested by predicates.
+	 */
+	protected final String[] attributes;
+
+	/**
+	 * Sorted distinct thresholds of numeric predicates by attribute index.
+	 */
+	protected final double[][] thresholds;
+
+	/**
+	 * Target states of numeric regions by attribute index. Region 2 * i + 1 is threshold i and region 2 * i is the interval below it.
+	 */
+	protected final State[][][] regionTargetStates;
+
+	/**
+	 * Target states of IN predicates by attribute index and value. Null if attribute has no IN predicates.
+	 */
+	protected final List<Map<String, State[]>> valueTargetStates;
+
+	/**
+	 * Builds decision structure for predicate transitions of given state.
+	 * @param transitionTable Transition table holding the transitions.
+	 * @param state Source state which predicate transitions are compiled.
+	 */
+	public PredicateDecision(final TransitionTable transitionTable, final State state) {
+
+		// Group predicates by attribute
+		final Map<String, List<PredicateInput>> predicatesByAttribute = new HashMap<String, List<PredicateInput>>();
+		final Map<PredicateInput, Set<State>> predicateTargetStates = new HashMap<PredicateInput, Set<State>>();
+
+		for (final Map.Entry<Input, Set<State>> transition : transitionTable.getTransitionsForState(state).entrySet()) {
+
+			if (!(transition.getKey() instanceof PredicateInput) || transition.getValue().isEmpty()) {
+				continue;
+			}
+
+			final PredicateInput predicate = (PredicateInput)transition.getKey();
+			List<PredicateInput> predicates = predicatesByAttribute.get(predicate.getAttribute());
+
+			if (predicates == null) {
+				predicates = new ArrayList<PredicateInput>();
+				predicatesByAttribute.put(predicate.getAttribute(), predicates);
+			}
+
+			predicates.add(predicate);
+			predicateTargetStates.put(predicate, transition.getValue());
+		}
+
+		final int attributeCount = predicatesByAttribute.size();
+		this.attributes = new String[attributeCount];
+		this.thresholds = new double[attributeCount][];
+		this.regionTargetStates = new State[attributeCount][][];
+		this.valueTargetStates = new ArrayList<Map<String, State[]>>();
+
+		int attributeIndex = 0;
+		for (final Map.Entry<String, List<PredicateInput>> attributePredicates : predicatesByAttribute.entrySet()) {
+			this.attributes[attributeIndex] = attributePredicates.getKey();
+			this.buildNumericRegions(attributeIndex, attributePredicates.getValue(), predicateTargetStates, transitionTable);
+			this.valueTargetStates.add(this.buildValueMap(attributePredicates.getValue(), predicateTargetStates, transitionTable));
+			attributeIndex++;
+		}
+	}
+
+	protected void buildNumericRegions(final int attributeIndex, final List<PredicateInput> predicates,
+			final Map<PredicateInput, Set<State>> predicateTargetStates, final TransitionTable transitionTable) {
+
+		final TreeSet<Double> thresholdSet = new TreeSet<Double>();
+		for (final PredicateInput predicate : predicates) {
+
+			if (predicate.isNumeric()) {
+				thresholdSet.add(predicate.getThreshold());
+			}
+		}
+
+		final double[] attributeThresholds = new double[thresholdSet.size()];
+		int index = 0;
+		for (final Double threshold : thresholdSet) {
+			attributeThresholds[index++] = threshold;
+		}
+
+		// Collect target states of each region
+		final List<Set<State>> regions = new ArrayList<Set<State>>();
+		for (int region = 0; region < attributeThresholds.length * 2 + 1; region++) {
+			regions.add(new HashSet<State>());
+		}
+
+		for (final PredicateInput predicate : predicates) {
+
+			if (!predicate.isNumeric()) {
+				continue;
+			}
+
+			final int thresholdRegion = Arrays.binarySearch(attributeThresholds, predicate.getThreshold()) * 2 + 1;
+			final int firstRegion;
+			final int lastRegion;
+
+			switch (predicate.getOperator()) {
+				case LESS_THAN:
+					firstRegion = 0;
+					lastRegion = thresholdRegion - 1;
+					break;
+				case LESS_OR_EQUAL:
+					firstRegion = 0;
+					lastRegion = thresholdRegion;
+					break;
+				case GREATER_THAN:
+					firstRegion = thresholdRegion + 1;
+					lastRegion = regions.size() - 1;
+					break;
+				default:
+					firstRegion = thresholdRegion;
+					lastRegion = regions.size() - 1;
+					break;
+			}
+
+			for (int region = firstRegion; region <= lastRegion; region++) {
+				regions.get(region).addAll(predicateTargetStates.get(predicate));
+			}
+		}
+
+		this.thresholds[attributeIndex] = attributeThresholds;
+		this.regionTargetStates[attributeIndex] = new State[regions.size()][];
+
+		for (int region = 0; region < regions.size(); region++) {
+			this.regionTargetStates[attributeIndex][region] = toClosedArray(regions.get(region), transitionTable);
+		}
+	}
+
+	protected Map<String, State[]> buildValueMap(final List<PredicateInput> predicates,
+			final Map<PredicateInput, Set<State>> predicateTargetStates, final TransitionTable transitionTable) {
+
+		final Map<String, Set<State>> valueStates = new HashMap<String, Set<State>>();
+		for (final PredicateInput predicate : predicates) {
+
+			if (predicate.isNumeric()) {
+				continue;
+			}
+
+			for (final String value : predicate.getValues()) {
+				Set<State> states = valueStates.get(value);
+
+				if (states == null) {
+					states = new HashSet<State>();
+					valueStates.put(value, states);
+				}
+
+				states.addAll(predicateTargetStates.get(predicate));
+			}
+		}
+
+		if (valueStates.isEmpty()) {
+			return null;
+		}
+
+		final Map<String, State[]> valueMap = new HashMap<String, State[]>();
+		for (final Map.Entry<String, Set<State>> value : valueStates.entrySet()) {
+			valueMap.put(value.getKey(), toClosedArray(value.getValue(), transitionTable));
+		}
+
+		return valueMap;
+	}
+
+	protected static State[] toClosedArray(final Set<State> states, final TransitionTable transitionTable) {
+
+		if (states.isEmpty()) {
+			return NO_STATES;
+		}
+
+		final Set<State> closure = transitionTable.getEpsilonTranitions(states);
+		return closure.toArray(new State[closure.size()]);
+	}
+
+	/**
+	 * Returns target states of predicates matching given event.
+	 * @param event Event being dispatched.
+	 * @return Target states including epsilon transitions. Returned array may be shared and must not be modified.
+	 */
+	public State[] getTargetStates(final EventInput event) {
+		State[] targetStates = NO_STATES;
+		Set<State> combinedTargetStates = null;
+
+		for (int attributeIndex = 0; attributeIndex < this.attributes.length; attributeIndex++) {
+			final State[] attributeTargetStates = this.getTargetStates(attributeIndex, event.getAttribute(this.attributes[attributeIndex]));
+
+			if (attributeTargetStates.length == 0) {
+				continue;
+			}
+
+			// Usually only one attribute matches so the precomputed array can be returned as it is
+			if (targetStates.length == 0) {
+				targetStates = attributeTargetStates;
+				continue;
+			}
+
+			if (combinedTargetStates == null) {
+				combinedTargetStates = new LinkedHashSet<State>(Arrays.asList(targetStates));
+			}
+
+			combinedTargetStates.addAll(Arrays.asList(attributeTargetStates));
+		}
+
+		if (combinedTargetStates != null) {
+			return combinedTargetStates.toArray(new State[combinedTargetStates.size()]);
+		}
+
+		return targetStates;
+	}
+
+	protected State[] getTargetStates(final int attributeIndex, final Object value) {
+
+		if (value == null) {
+			return NO_STATES;
+		}
+
+		State[] targetStates = NO_STATES;
+
+		final Map<String, State[]> valueMap = this.valueTargetStates.get(attributeIndex);
+		if (valueMap != null) {
+			final State[] valueTargetStates = valueMap.get(value.toString());
+			targetStates = valueTargetStates == null ? NO_STATES : valueTargetStates;
+		}
+
+		final double[] attributeThresholds = this.thresholds[attributeIndex];
+		if (attributeThresholds.length == 0 || !(value instanceof Number) || Double.isNaN(((Number)value).doubleValue())) {
+			return targetStates;
+		}
+
+		// Found threshold gives odd region, insertion point gives the interval below it
+		final int index = Arrays.binarySearch(attributeThresholds, ((Number)value).doubleValue());
+		final State[] regionTargetStates = this.regionTargetStates[attributeIndex][index >= 0 ? index * 2 + 1 : (-index - 1) * 2];
+
+		if (targetStates.length == 0) {
+			return regionTargetStates;
+		}
+
+		if (regionTargetStates.length == 0) {
+			return targetStates;
+		}
+
+		final Set<State> combinedTargetStates = new LinkedHashSet<State>(Arrays.asList(targetStates));
+		combinedTargetStates.addAll(Arrays.asList(regionTargetStates));
+		return combinedTargetStates.toArray(new State[combinedTargetStates.size()]);
+	}
+}
@@ -0,0 +1,275 @@
+package amber.automate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Skip ahead data of a compiled automate for states which stay in themselves with almost all inputs
+ * and are left only with a few bytes or characters, for example a state skipping until a newline.
+ * Execution in such a state can search for the next exit byte or character instead of walking
+ * the transition table one input at a time.
+ *
+ * Staying in a state is not visible only if the state has no callbacks and is not an end state
+ * so only such states are skipped. Whether missing transitions stay in the state depends on the
+ * allow to stay in state on update setting so tables are created separately for both values of it.
+ * Use CompiledAutomate.getSkipAheadTable to create.
+ */
+public class SkipAheadTable {
+
+	/**
+	 * Maximum number of bytes leaving a state for the bytes of the state to be skipped.
+	 */
+	public static final int MAX_EXIT_BYTES = 16;
+
+	/**
+	 * Maximum number of characters leaving a state for the characters of the state to be skipped.
+	 */
+	public static final int MAX_EXIT_CHARS = 3;
+
+	/**
+	 * States with at most this many exit bytes are searched eight bytes at a time.
+	 */
+	protected static final int MAX_WORD_EXIT_BYTES = 3;
+
+	protected static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	protected static final long LOWEST_BYTES = 0x0101010101010101L;
+
+	/**
+	 * Exit bytes of each state indexed by unsigned byte value or null if bytes of the state can't be skipped.
+	 */
+	protected final boolean[][] exitBytes;
+
+	/**
+	 * Each exit byte repeated in all bytes of a long for states with at most MAX_WORD_EXIT_BYTES exit bytes, otherwise null.
+	 */
+	protected final long[][] exitBytePatterns;
+
+	/**
+	 * Exit characters of each state or null if characters of the state can't be skipped.
+	 */
+	protected final char[][] exitChars;
+
+	protected SkipAheadTable(final CompiledAutomate compiled, final boolean allowToStay) {
+		final int stateCount = compiled.getStateCount();
+		this.exitBytes = new boolean[stateCount][];
+		this.exitBytePatterns = new long[stateCount][];
+		this.exitChars = new char[stateCount][];
+
+		for (int state = 0; state < stateCount; state++) {
+
+			// Staying in end states and states with callbacks can't be skipped
+			if (state == compiled.errorState || compiled.endStates[state] || compiled.onEntryCallbacks[state] != null
+					|| compiled.onExitCallbacks[state] != null || compiled.onStayCallbacks[state] != null) {
+				continue;
+			}
+
+			this.findExitBytes(compiled, allowToStay, state);
+			this.findExitChars(compiled, allowToStay, state);
+		}
+	}
+
+	protected void findExitBytes(final CompiledAutomate compiled, final boolean allowToStay, final int state) {
+		final InputAlphabet alphabet = compiled.getAlphabet();
+		final boolean[] exits = new boolean[256];
+		int exitCount = 0;
+
+		for (int value = 0; value < 256; value++) {
+
+			if (!stays(compiled, allowToStay, state, alphabet.getByteSymbolId((byte)value))) {
+				exits[value] = true;
+				exitCount++;
+			}
+		}
+
+		if (exitCount > MAX_EXIT_BYTES) {
+			return;
+		}
+
+		this.exitBytes[state] = exits;
+
+		if (exitCount <= MAX_WORD_EXIT_BYTES) {
+			final long[] patterns = new long[exitCount];
+
+			int i = 0;
+			for (int value = 0; value < 256; value++) {
+
+				if (exits[value]) {
+					patterns[i++] = value * LOWEST_BYTES;
+				}
+			}
+
+			this.exitBytePatterns[state] = patterns;
+		}
+	}
+
+	protected void findExitChars(final CompiledAutomate compiled, final boolean allowToStay, final int state) {
+		final InputAlphabet alphabet = compiled.getAlphabet();
+		final int[] starts = alphabet.codePointStarts;
+		final char[] exits = new char[MAX_EXIT_CHARS];
+		int exitCount = 0;
+
+		// Go through runs of characters with the same symbol. Characters before the first run have no symbol.
+		for (int i = -1; i < starts.length; i++) {
+			final int first = i < 0 ? 0 : starts[i];
+			final int last = Math.min(i + 1 < starts.length ? starts[i + 1] - 1 : Character.MAX_VALUE, Character.MAX_VALUE);
+			final int symbolId = i < 0 ? InputAlphabet.UNKNOWN_SYMBOL : alphabet.codePointSymbolIds[i];
+
+			if (first > last || stays(compiled, allowToStay, state, symbolId)) {
+				continue;
+			}
+
+			if (exitCount + last - first + 1 > MAX_EXIT_CHARS) {
+				return;
+			}
+
+			for (int value = first; value <= last; value++) {
+				exits[exitCount++] = (char)value;
+			}
+		}
+
+		final char[] exitChars = new char[exitCount];
+		System.arraycopy(exits, 0, exitChars, 0, exitCount);
+		this.exitChars[state] = exitChars;
+	}
+
+	/**
+	 * Tells if updating with given symbol keeps execution in given state.
+	 */
+	protected static boolean stays(final CompiledAutomate compiled, final boolean allowToStay, final int state, final int symbolId) {
+		final int target = compiled.getTransition(state, symbolId);
+		return target == state || (target == CompiledAutomate.NO_TRANSITION && allowToStay);
+	}
+
+	/**
+	 * Tells if bytes can be skipped in given state.
+	 * @param stateId Id of the state.
+	 * @return True if skipBytes can be used in the state.
+	 */
+	public boolean canSkipBytes(final int stateId) {
+		return this.exitBytes[stateId] != null;
+	}
+
+	/**
+	 * Tells if characters can be skipped in given state.
+	 * @param stateId Id of the state.
+	 * @return True if skipChars can be used in the state.
+	 */
+	public boolean canSkipChars(final int stateId) {
+		return this.exitChars[stateId] != null;
+	}
+
+	/**
+	 * Returns index of the first byte from position on which leaves given state. States with only a few exit bytes
+	 * are searched eight bytes at a time. Position of the buffer is not changed.
+	 * @param stateId Id of the state which bytes can be skipped.
+	 * @param buffer Buffer holding the bytes.
+	 * @param position Index of the first byte searched.
+	 * @param limit Index after the last byte searched.
+	 * @return Index of the first exit byte or limit if there is none.
+	 */
+	public int skipBytes(final int stateId, final ByteBuffer buffer, final int position, final int limit) {
+		final long[] patterns = this.exitBytePatterns[stateId];
+		int index = position;
+
+		if (patterns != null) {
+			final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+
+			for (; index <= limit - 8; index += 8) {
+				final long word = buffer.getLong(index);
+
+				long found = 0;
+				for (final long pattern : patterns) {
+					found |= zeroBytes(word ^ pattern);
+				}
+
+				if (found != 0) {
+					return index + ((littleEndian ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) >>> 3);
+				}
+			}
+		}
+
+		final boolean[] exits = this.exitBytes[stateId];
+		while (index < limit && !exits[buffer.get(index) & 0xFF]) {
+			index++;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns word where the highest bit of each byte is set if the byte is zero in given word and other bits are clear.
+	 * Unlike the shorter test based on borrowing this doesn't mark bytes after a zero byte.
+	 */
+	protected static long zeroBytes(final long word) {
+		final long lowBits = (word & LOW_BITS) + LOW_BITS;
+		return ~(lowBits | word | LOW_BITS);
+	}
+
+	/**
+	 * Returns index of the first character from from on which leaves given state.
+	 * @param stateId Id of the state which characters can be skipped.
+	 * @param text Text holding the characters.
+	 * @param from Index of the first character searched.
+	 * @param to Index after the last character searched.
+	 * @return Index of the first exit character or to if there is none.
+	 */
+	public int skipChars(final int stateId, final CharSequence text, final int from, final int to) {
+		final char[] exits = this.exitChars[stateId];
+
+		switch (exits.length) {
+			case 0:
+				return to;
+
+			case 1: {
+				final char exit = exits[0];
+
+				// Strings are searched to their end so use indexOf only when searching to the end
+				if (text instanceof String && to == text.length()) {
+					final int index = ((String)text).indexOf(exit, from);
+					return index < 0 ? to : index;
+				}
+
+				int index = from;
+				while (index < to && text.charAt(index) != exit) {
+					index++;
+				}
+
+				return index;
+			}
+
+			case 2: {
+				final char first = exits[0];
+				final char second = exits[1];
+
+				int index = from;
+				for (; index < to; index++) {
+					final char value = text.charAt(index);
+
+					if (value == first || value == second) {
+						break;
+					}
+				}
+
+				return index;
+			}
+
+			default: {
+				final char first = exits[0];
+				final char second = exits[1];
+				final char third = exits[2];
+
+				int index = from;
+				for (; index < to; index++) {
+					final char value = text.charAt(index);
+
+					if (value == first || value == second || value == third) {
+						break;
+					}
+				}
+
+				return index;
+			}
+		}
+	}
+}
@@ -135,7 +135,8 @@ public class State {
 			return false;
 		}
 		
-		if (obj.getClass() != this.getClass()) {
+		// Frozen states equal other states with the same name
+		if (!(obj instanceof State)) {
 			return false;
 		}
 		
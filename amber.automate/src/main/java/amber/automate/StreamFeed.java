@@ -0,0 +1,206 @@
+package amber.automate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Feeds characters or bytes read from a stream to an execution in fixed size chunks.
+ * Memory used stays the same regardless of the length of the stream since only one chunk is held at a time.
+ *
+ * Each byte is used like a ByteInput and each character like a TextInput holding only that character, the same way
+ * as Execution.update with a CharSequence, so surrogate pairs are used as two characters.
+ * State is carried from one chunk to the next so the execution gives the same result however the stream is split.
+ * Chunks can also be pushed with the feed methods taking an array or a buffer, for example when data arrives from a socket.
+ *
+ * When execution reaches its end the rest of the chunk is not used. Position tells how many characters or bytes were used.
+ */
+public class StreamFeed {
+
+	/**
+	 * Default number of characters or bytes read at a time.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	protected final Execution execution;
+	protected final int bufferSize;
+
+	/**
+	 * Chunk buffers. Created when first needed and reused for all chunks.
+	 */
+	protected char[] charBuffer;
+	protected CharBuffer charSequence;
+	protected byte[] byteArray;
+	protected ByteBuffer byteBuffer;
+
+	/**
+	 * Number of characters or bytes used so far.
+	 */
+	protected long position;
+
+	/**
+	 * Creates feed using default buffer size.
+	 * @param execution Started execution which is updated.
+	 */
+	public StreamFeed(final Execution execution) {
+		this(execution, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Creates feed.
+	 * @param execution Started execution which is updated.
+	 * @param bufferSize Number of characters or bytes read at a time.
+	 */
+	public StreamFeed(final Execution execution, final int bufferSize) {
+
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("Buffer size must be positive but was " + bufferSize + ".");
+		}
+
+		this.execution = execution;
+		this.bufferSize = bufferSize;
+	}
+
+	public Execution getExecution() {
+		return this.execution;
+	}
+
+	/**
+	 * Returns number of characters or bytes used so far. If execution has reached its end this is the position
+	 * after the character or byte with which the end was reached.
+	 * @return Number of characters or bytes used.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Reads characters from given reader and updates execution with them until execution reaches its end or reader is exhausted.
+	 * Reader is not closed.
+	 * @param reader Reader which characters are used.
+	 * @return False if execution reached its end, true otherwise.
+	 * @throws IOException If reading fails.
+	 */
+	public boolean feed(final Reader reader) throws IOException {
+
+		if (this.charBuffer == null) {
+			this.charBuffer = new char[this.bufferSize];
+			this.charSequence = CharBuffer.wrap(this.charBuffer);
+		}
+
+		boolean running = !this.execution.isAtEnd();
+		while (running) {
+			final int read = reader.read(this.charBuffer, 0, this.bufferSize);
+
+			if (read < 0) {
+				break;
+			}
+
+			running = this.feed(this.charBuffer, 0, read);
+		}
+
+		return running;
+	}
+
+	/**
+	 * Reads bytes from given stream and updates execution with them until execution reaches its end or stream is exhausted.
+	 * Stream is not closed.
+	 * @param stream Stream which bytes are used.
+	 * @return False if execution reached its end, true otherwise.
+	 * @throws IOException If reading fails.
+	 */
+	public boolean feed(final InputStream stream) throws IOException {
+
+		if (this.byteArray == null) {
+			this.byteArray = new byte[this.bufferSize];
+			this.byteBuffer = ByteBuffer.wrap(this.byteArray);
+		}
+
+		boolean running = !this.execution.isAtEnd();
+		while (running) {
+			final int read = stream.read(this.byteArray, 0, this.bufferSize);
+
+			if (read < 0) {
+				break;
+			}
+
+			// Buffer wraps the array so it only needs to be repositioned
+			((Buffer)this.byteBuffer).limit(read);
+			((Buffer)this.byteBuffer).position(0);
+			running = this.feed(this.byteBuffer);
+		}
+
+		return running;
+	}
+
+	/**
+	 * Reads bytes from given channel and updates execution with them until execution reaches its end or channel is exhausted.
+	 * Channel is not closed. Non-blocking channel is read only until it has no more bytes available.
+	 * @param channel Channel which bytes are used.
+	 * @return False if execution reached its end, true otherwise.
+	 * @throws IOException If reading fails.
+	 */
+	public boolean feed(final ReadableByteChannel channel) throws IOException {
+
+		if (this.byteBuffer == null) {
+			this.byteArray = new byte[this.bufferSize];
+			this.byteBuffer = ByteBuffer.wrap(this.byteArray);
+		}
+
+		boolean running = !this.execution.isAtEnd();
+		while (running) {
+			((Buffer)this.byteBuffer).clear();
+			final int read = channel.read(this.byteBuffer);
+
+			if (read <= 0) {
+				break;
+			}
+
+			((Buffer)this.byteBuffer).flip();
+			running = this.feed(this.byteBuffer);
+		}
+
+		return running;
+	}
+
+	/**
+	 * Updates execution with remaining bytes of given chunk until execution reaches its end.
+	 * Position of the buffer is moved past the bytes used.
+	 * @param chunk Buffer holding the bytes.
+	 * @return False if execution reached its end, true otherwise.
+	 */
+	public boolean feed(final ByteBuffer chunk) {
+		final int start = chunk.position();
+		final boolean running = this.execution.update(chunk);
+		this.position += chunk.position() - start;
+		return running;
+	}
+
+	/**
+	 * Updates execution with characters chars[offset] ... chars[offset + length - 1] until execution reaches its end.
+	 * @param chars Array holding the characters.
+	 * @param offset Index of the first character used.
+	 * @param length Number of characters used.
+	 * @return False if execution reached its end, true otherwise.
+	 */
+	public boolean feed(final char[] chars, final int offset, final int length) {
+		Execution.checkSlice(chars.length, offset, length);
+
+		// Chunks read by this feed are in the wrapped buffer so they are used without creating objects
+		final CharSequence text = chars == this.charBuffer ? this.charSequence : CharBuffer.wrap(chars);
+		final int end = offset + length;
+		final int stop = this.execution.updateUntilEnd(text, offset, end);
+
+		if (stop < end) {
+			this.position += stop + 1 - offset;
+			return false;
+		}
+
+		this.position += length;
+		return !this.execution.isAtEnd();
+	}
+}
@@ -0,0 +1,17 @@
+package amber.automate;
+
+/**
+ * Listener which is told about tokens found by Tokenizer.
+ */
+public interface TokenListener {
+
+	/**
+	 * Called for each token.
+	 * @param tokenStateId Id of the end state of the token in the compiled automate or Tokenizer.NO_TOKEN
+	 * if no token starts at start. Then the token holds only one input.
+	 * @param start Position of the first input of the token.
+	 * @param end Position after the last input of the token.
+	 * @return True to continue tokenizing, false to stop.
+	 */
+	public boolean onToken(int tokenStateId, long start, long end);
+}
@@ -0,0 +1,339 @@
+package amber.automate;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits input into tokens using longest match. Each token is the longest run of inputs starting after the previous token
+ * which takes the automate from its start state to an end state. The end state tells the kind of the token.
+ *
+ * Tokenizer keeps track of the last end state met while running and restarts from the start state after each token
+ * so no executions are created. Scanning of a token stops as soon as no end state can be reached anymore
+ * and inputs after the last end state are scanned again for the next token.
+ * If no token starts at some position a token holding only that input is reported with NO_TOKEN.
+ *
+ * Tokenizer runs on a compiled deterministic automate. State callbacks are not run.
+ */
+public class Tokenizer {
+
+	/**
+	 * Token state id reported for an input with which no token starts.
+	 */
+	public static final int NO_TOKEN = -1;
+
+	/**
+	 * Initial size of the buffer used when tokenizing a reader.
+	 */
+	protected static final int INITIAL_BUFFER_SIZE = 4096;
+
+	/**
+	 * Creates tokenizer for given automate. Nondeterministic automate is determinized so that all alternatives
+	 * are followed and alternatives which can't continue are dropped. End states of tokens are then states
+	 * of the determinized automate which are named after their member states.
+	 * @param automate Automate which end states are the tokens.
+	 * @return Tokenizer for given automate.
+	 */
+	public static Tokenizer createTokenizer(final Automate automate) {
+
+		if (Determinizer.isDeterministic(automate)) {
+			return new Tokenizer(CompiledAutomate.compile(automate));
+		}
+
+		final ExecutionConfiguration configuration = new ExecutionConfiguration();
+		configuration.setAllowToTransitToMultipleStates(true);
+
+		final Automate deterministic = new Determinizer(automate, configuration, Determinizer.DEFAULT_MAX_STATES, true).determinize();
+		return new Tokenizer(CompiledAutomate.compile(deterministic, automate.getTransitionTable().getAlphabet()));
+	}
+
+	protected final CompiledAutomate compiledAutomate;
+
+	/**
+	 * True for states from which some end state can be reached. Token can't continue from other states.
+	 */
+	protected final boolean[] liveStates;
+
+	/**
+	 * Characters of a reader from the start of the current token on. Created when first needed.
+	 */
+	protected char[] buffer;
+
+	/**
+	 * Creates tokenizer for given compiled automate. Throws exception if compiled automate is not deterministic.
+	 * @param compiledAutomate Compiled automate which end states are the tokens.
+	 */
+	public Tokenizer(final CompiledAutomate compiledAutomate) {
+
+		if (!compiledAutomate.isDeterministic()) {
+			throw new IllegalArgumentException("Compiled automate is not deterministic. Use createTokenizer or determinize automate before compiling.");
+		}
+
+		this.compiledAutomate = compiledAutomate;
+		this.liveStates = findLiveStates(compiledAutomate);
+	}
+
+	/**
+	 * Finds states from which some end state can be reached by following transitions backwards from the end states.
+	 */
+	protected static boolean[] findLiveStates(final CompiledAutomate compiled) {
+		final int stateCount = compiled.getStateCount();
+		final int inputCount = compiled.getInputCount();
+
+		// Store source states of transitions grouped by target state
+		final int[] sourceStart = new int[stateCount + 1];
+		for (int state = 0; state < stateCount; state++) {
+
+			for (int inputId = 0; inputId < inputCount; inputId++) {
+				final int target = compiled.getTransition(state, inputId);
+
+				if (target >= 0) {
+					sourceStart[target + 1]++;
+				}
+			}
+		}
+
+		for (int state = 0; state < stateCount; state++) {
+			sourceStart[state + 1] += sourceStart[state];
+		}
+
+		final int[] sources = new int[sourceStart[stateCount]];
+		final int[] sourceCounts = new int[stateCount];
+		for (int state = 0; state < stateCount; state++) {
+
+			for (int inputId = 0; inputId < inputCount; inputId++) {
+				final int target = compiled.getTransition(state, inputId);
+
+				if (target >= 0) {
+					sources[sourceStart[target] + sourceCounts[target]++] = state;
+				}
+			}
+		}
+
+		// Search backwards from end states
+		final boolean[] live = new boolean[stateCount];
+		final int[] statesToSearch = new int[stateCount];
+		int searchCount = 0;
+
+		for (int state = 0; state < stateCount; state++) {
+
+			if (compiled.endStates[state] && state != compiled.errorState) {
+				live[state] = true;
+				statesToSearch[searchCount++] = state;
+			}
+		}
+
+		while (searchCount > 0) {
+			final int state = statesToSearch[--searchCount];
+
+			for (int i = sourceStart[state]; i < sourceStart[state + 1]; i++) {
+
+				if (!live[sources[i]]) {
+					live[sources[i]] = true;
+					statesToSearch[searchCount++] = sources[i];
+				}
+			}
+		}
+
+		return live;
+	}
+
+	public CompiledAutomate getCompiledAutomate() {
+		return this.compiledAutomate;
+	}
+
+	/**
+	 * Tokenizes input ids inputIds[offset] ... inputIds[offset + length - 1]. Positions are indexes to the array.
+	 * @param inputIds Input ids which are tokenized.
+	 * @param offset Index of the first input id used.
+	 * @param length Number of input ids used.
+	 * @param listener Listener which is told about tokens.
+	 * @return Position after the last token.
+	 */
+	public int tokenize(final int[] inputIds, final int offset, final int length, final TokenListener listener) {
+		Execution.checkSlice(inputIds.length, offset, length);
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final int end = offset + length;
+		int tokenStart = offset;
+
+		while (tokenStart < end) {
+			int state = compiled.startState;
+			int tokenEnd = tokenStart;
+			int tokenState = NO_TOKEN;
+
+			// Run until there is no transition remembering the last end state
+			for (int i = tokenStart; i < end; i++) {
+				state = this.next(state, inputIds[i]);
+
+				if (state < 0) {
+					break;
+				}
+
+				if (compiled.endStates[state]) {
+					tokenEnd = i + 1;
+					tokenState = state;
+				}
+			}
+
+			tokenEnd = tokenState == NO_TOKEN ? tokenStart + 1 : tokenEnd;
+
+			if (!listener.onToken(tokenState, tokenStart, tokenEnd)) {
+				return tokenEnd;
+			}
+
+			tokenStart = tokenEnd;
+		}
+
+		return end;
+	}
+
+	/**
+	 * Tokenizes characters text[from] ... text[to - 1]. Each character is used like a TextInput holding only that character.
+	 * Positions are indexes to the text.
+	 * @param text Text which is tokenized.
+	 * @param from Index of the first character used.
+	 * @param to Index after the last character used.
+	 * @param listener Listener which is told about tokens.
+	 * @return Position after the last token.
+	 */
+	public int tokenize(final CharSequence text, final int from, final int to, final TokenListener listener) {
+		Execution.checkSlice(text.length(), from, to - from);
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final InputAlphabet alphabet = compiled.getAlphabet();
+		int tokenStart = from;
+
+		while (tokenStart < to) {
+			int state = compiled.startState;
+			int tokenEnd = tokenStart;
+			int tokenState = NO_TOKEN;
+
+			for (int i = tokenStart; i < to; i++) {
+				state = this.next(state, alphabet.getCharSymbolId(text.charAt(i)));
+
+				if (state < 0) {
+					break;
+				}
+
+				if (compiled.endStates[state]) {
+					tokenEnd = i + 1;
+					tokenState = state;
+				}
+			}
+
+			tokenEnd = tokenState == NO_TOKEN ? tokenStart + 1 : tokenEnd;
+
+			if (!listener.onToken(tokenState, tokenStart, tokenEnd)) {
+				return tokenEnd;
+			}
+
+			tokenStart = tokenEnd;
+		}
+
+		return to;
+	}
+
+	/**
+	 * Tokenizes characters read from given reader until it is exhausted. Only characters from the start of the current token on
+	 * are held in memory so memory used depends on the longest run of characters from which a token can still be reached,
+	 * not on the length of the input.
+	 * Reader is not closed.
+	 * @param reader Reader which characters are tokenized.
+	 * @param listener Listener which is told about tokens.
+	 * @return Position after the last token.
+	 * @throws IOException If reading fails.
+	 */
+	public long tokenize(final Reader reader, final TokenListener listener) throws IOException {
+
+		if (this.buffer == null) {
+			this.buffer = new char[INITIAL_BUFFER_SIZE];
+		}
+
+		final CompiledAutomate compiled = this.compiledAutomate;
+		final InputAlphabet alphabet = compiled.getAlphabet();
+
+		// Buffer holds characters from buffer position on. Characters from 0 to buffer end are valid.
+		long bufferPosition = 0;
+		int bufferEnd = 0;
+		int tokenStart = 0;
+		boolean exhausted = false;
+
+		while (true) {
+			int state = compiled.startState;
+			int tokenEnd = tokenStart;
+			int tokenState = NO_TOKEN;
+			int i = tokenStart;
+
+			while (true) {
+
+				// Read more characters moving the current token to the start of the buffer
+				if (i == bufferEnd) {
+
+					if (exhausted) {
+						break;
+					}
+
+					if (tokenStart > 0) {
+						System.arraycopy(this.buffer, tokenStart, this.buffer, 0, bufferEnd - tokenStart);
+						bufferPosition += tokenStart;
+						bufferEnd -= tokenStart;
+						i -= tokenStart;
+						tokenEnd -= tokenStart;
+						tokenStart = 0;
+					}
+
+					if (bufferEnd == this.buffer.length) {
+						final char[] grownBuffer = new char[this.buffer.length * 2];
+						System.arraycopy(this.buffer, 0, grownBuffer, 0, bufferEnd);
+						this.buffer = grownBuffer;
+					}
+
+					final int read = reader.read(this.buffer, bufferEnd, this.buffer.length - bufferEnd);
+
+					if (read < 0) {
+						exhausted = true;
+						break;
+					}
+
+					bufferEnd += read;
+					continue;
+				}
+
+				state = this.next(state, alphabet.getCharSymbolId(this.buffer[i]));
+
+				if (state < 0) {
+					break;
+				}
+
+				i++;
+
+				if (compiled.endStates[state]) {
+					tokenEnd = i;
+					tokenState = state;
+				}
+			}
+
+			// Reader is exhausted and all characters have been used
+			if (tokenStart == bufferEnd) {
+				return bufferPosition + tokenStart;
+			}
+
+			tokenEnd = tokenState == NO_TOKEN ? tokenStart + 1 : tokenEnd;
+
+			if (!listener.onToken(tokenState, bufferPosition + tokenStart, bufferPosition + tokenEnd)) {
+				return bufferPosition + tokenEnd;
+			}
+
+			tokenStart = tokenEnd;
+		}
+	}
+
+	/**
+	 * Returns state transition from given state with given input leads to or NO_TRANSITION if token can't continue
+	 * because there is no transition or no end state can be reached from the target state.
+	 */
+	protected int next(final int state, final int inputId) {
+		final int target = this.compiledAutomate.getTransition(state, inputId);
+		return target < 0 || target == this.compiledAutomate.errorState || !this.liveStates[target] ? CompiledAutomate.NO_TRANSITION : target;
+	}
+}
@@ -1,13 +1,20 @@
 package amber.automate;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import amber.common.Pair;
 import amber.input.EpsilonInput;
+import amber.input.EventInput;
 import amber.input.Input;
+import amber.input.PredicateInput;
 
 /**
  * Presents the transition table of automate. Has information of all the states and the transitions between them.
@@ -16,17 +23,74 @@ import amber.input.Input;
  */
 public class TransitionTable {
 	
+	/**
+	 * Shared empty array returned when there are no target states.
+	 */
+	protected static final State[] NO_STATES = new State[0];
+	
 	/**
 	 * Transition table map.
 	 */
 	protected final Map<Pair<State, Input>, Set<State>> transitionTable;
 	
+	/**
+	 * Epsilon closures of states. Computed for all states when automate is built and for others when first needed.
+	 * Concurrent so that executions in different threads can share the table. Cleared when transitions change.
+	 */
+	protected final Map<State, Set<State>> epsilonClosures;
+	
+	/**
+	 * Target states including epsilon transitions indexed by symbol id for each state. Row of a state is computed when the state is first looked up
+	 * so tables which are never executed don't pay for states times symbols. Concurrent so that executions in different threads can share the table.
+	 * Cleared when transitions change.
+	 */
+	protected final Map<State, State[][]> targetStatesWithEpsilon;
+	
+	/**
+	 * Alphabet of inputs in this transition table or null if it hasn't been built since transitions last changed.
+	 * Volatile so that an alphabet built by one thread is seen whole by others.
+	 */
+	protected volatile InputAlphabet alphabet;
+	
+	/**
+	 * Transitions indexed by source state and input. Target sets are the same sets as in the transition table map.
+	 * Null if index hasn't been built since transitions were changed directly. Built while holding the lock of this table.
+	 */
+	protected Map<State, Map<Input, Set<State>>> transitionsBySourceState;
+	
+	/**
+	 * Number of transitions each state is a target of. Built together with the transitions by source state index.
+	 */
+	protected Map<State, Integer> targetStateCounts;
+	
+	/**
+	 * Number of transitions with each input. Built together with the transitions by source state index.
+	 */
+	protected Map<Input, Integer> inputCounts;
+	
+	/**
+	 * All source and target states or null if they haven't been collected since transitions last changed.
+	 */
+	protected volatile Set<State> states;
+	
+	/**
+	 * Decision structures of states which have transitions with predicate inputs or null if they haven't been built since transitions last changed.
+	 */
+	protected volatile Map<State, PredicateDecision> predicateDecisions;
+	
+	/**
+	 * Number of times data computed from transitions has been cleared. Lets executions which cache lookups notice changes.
+	 */
+	protected volatile int changeCount;
+	
 	/**
 	 * Creates new transition table. Before using this constructor consider using automate builder class.
 	 * @param transitionTable Transition table map which is used as a transition table.
 	 */
 	public TransitionTable(final Map<Pair<State, Input>, Set<State>> transitionTable) {
 		this.transitionTable = transitionTable;
+		this.epsilonClosures = new ConcurrentHashMap<State, Set<State>>();
+		this.targetStatesWithEpsilon = new ConcurrentHashMap<State, State[][]>();
 	}
 	
 	/**
@@ -35,11 +99,12 @@ public class TransitionTable {
 	 */
 	public void addState(final State state) {
 		final Pair<State, Input> transitionTableEntry = new Pair<State, Input>(state, null);
-		this.transitionTable.put(transitionTableEntry, new HashSet<State>());
+		this.putTransition(transitionTableEntry, new HashSet<State>());
 	}
 	
 	/**
 	 * Returns transition table map which contains all transitions.
+	 * Changes made directly to the returned map are not tracked. Call transitionsChanged after making them.
 	 * @return Transition table map which contains all transitions.
 	 */
 	public Map<Pair<State, Input>, Set<State>> getAllTransitions() {
@@ -48,22 +113,38 @@ public class TransitionTable {
 	
 	/**
 	 * Returns transition table map which holds all transitions which have given state as a source.
+	 * Built from the transitions by source state index so takes time relative to the number of transitions of given state.
 	 * @param sourceState Source state which transitions are retrieved.
 	 * @return Transition table map which holds all transitions which have given state as a source.
 	 */
 	public Map<Pair<State, Input>, Set<State>> getAllTransitionsForState(final State sourceState) {
 		final Map<Pair<State, Input>, Set<State>> transitionsForState = new HashMap<Pair<State, Input>, Set<State>>();
 		
-		for (final Pair<State, Input> transition : this.transitionTable.keySet()) {
-			
-			if (transition.getFirst().equals(sourceState)) {
-				transitionsForState.put(transition, this.transitionTable.get(transition));
-			}
+		for (final Map.Entry<Input, Set<State>> transition : this.getTransitionsForState(sourceState).entrySet()) {
+			transitionsForState.put(new Pair<State, Input>(sourceState, transition.getKey()), transition.getValue());
 		}
 		
 		return transitionsForState;
 	}
 	
+	/**
+	 * Returns transitions which have given state as a source mapped by input.
+	 * Map is a copy so transitions can be changed while iterating it.
+	 * @param sourceState Source state which transitions are retrieved.
+	 * @return Unmodifiable map from inputs to target states. Empty if state has no transitions.
+	 */
+	public Map<Input, Set<State>> getTransitionsForState(final State sourceState) {
+		this.buildIndex();
+		
+		final Map<Input, Set<State>> transitionsForState = this.transitionsBySourceState.get(sourceState);
+		
+		if (transitionsForState == null) {
+			return Collections.<Input, Set<State>>emptyMap();
+		}
+		
+		return Collections.unmodifiableMap(new HashMap<Input, Set<State>>(transitionsForState));
+	}
+	
 	/**
 	 * Returns transitions for given state input pair.
 	 * State input pair holds the source state and input.
@@ -88,38 +169,220 @@ public class TransitionTable {
 		return this.getTransitionWithEpsilon(new Pair<State, Input>(state, input));
 	}
 	
+	/**
+	 * Returns target states of transition for given state input pair and all states reachable from them with epsilon transitions.
+	 * Returned set may be shared and must not be modified.
+	 * @param stateInputPair State input pair holds the source state and input.
+	 * @return Target states including epsilon transitions.
+	 */
 	public Set<State> getTransitionWithEpsilon(final Pair<State, Input> stateInputPair) {
 		// Get target states without epsilon transitions
 		final Set<State> targetStates = this.transitionTable.get(stateInputPair);
 		
 		if (targetStates == null || targetStates.isEmpty()) {
-			return new HashSet<State>();
+			return Collections.<State>emptySet();
 		}
 		
 		return this.getEpsilonTranitions(targetStates);
 	}
 	
-	public Set<State> getEpsilonTranitions(final Set<State> states) {
-		// Do search to find all states which are connected via epsilon transitions
-		final Set<State> searchedStates = new HashSet<State>();
-		final Set<State> statesToSearch = new HashSet<State>();
+	/**
+	 * Returns target states of all transitions of given state which match given symbol of the alphabet of this transition table
+	 * and all states reachable from them with epsilon transitions. Besides exact input matches transitions with range inputs
+	 * containing the characters or bytes of the symbol are taken.
+	 * @param state Source state.
+	 * @param symbolId Symbol id of the input.
+	 * @return Target states including epsilon transitions. Must not be modified.
+	 */
+	public Set<State> getTransitionWithEpsilon(final State state, final int symbolId) {
+		final InputAlphabet alphabet = this.getAlphabet();
+		final List<Input> matchingInputs = alphabet.getMatchingInputs(symbolId);
 		
-		// Initialize states to search
-		statesToSearch.addAll(states);
+		// Usually only one input matches
+		if (matchingInputs.size() == 1) {
+			return this.getTransitionWithEpsilon(new Pair<State, Input>(state, matchingInputs.get(0)));
+		}
 		
-		while (!statesToSearch.isEmpty()) {
-			// Select state to process
-			final State currentState = statesToSearch.iterator().next();
+		final Set<State> targetStates = new HashSet<State>();
+		for (final Input matchingInput : matchingInputs) {
+			final Set<State> matchingTargetStates = this.transitionTable.get(new Pair<State, Input>(state, matchingInput));
 			
-			// Add current state to target states
-			states.add(currentState);
+			if (matchingTargetStates != null) {
+				targetStates.addAll(matchingTargetStates);
+			}
+		}
+		
+		if (targetStates.isEmpty()) {
+			return Collections.<State>emptySet();
+		}
+		
+		return this.getEpsilonTranitions(targetStates);
+	}
+	
+	/**
+	 * Returns target states of transitions for given state input pair and all states reachable from them with epsilon transitions as an array.
+	 * Input is matched like in getTransitionWithEpsilon with symbol id so range inputs are taken into account.
+	 * Result is computed once for each state and symbol. Given state input pair can be reused by the caller since it is not stored.
+	 * Returned array is shared and must not be modified.
+	 * @param stateInputPair State input pair holds the source state and input.
+	 * @return Target states including epsilon transitions. Empty array if there is no transition.
+	 */
+	public State[] getTargetStatesWithEpsilon(final Pair<State, Input> stateInputPair) {
+		
+		// Events are matched with predicates and never stored
+		if (stateInputPair.getSecond() instanceof EventInput) {
+			return this.getTargetStatesWithEpsilon(stateInputPair.getFirst(), (EventInput)stateInputPair.getSecond());
+		}
+		
+		// Inputs not in the alphabet have no transitions
+		final int symbolId = this.getAlphabet().getSymbolId(stateInputPair.getSecond());
+		
+		if (symbolId == InputAlphabet.UNKNOWN_SYMBOL) {
+			return NO_STATES;
+		}
+		
+		return this.getTargetStatesWithEpsilon(stateInputPair.getFirst(), symbolId);
+	}
+	
+	/**
+	 * Returns target states of transitions of given state with given symbol and all states reachable from them with epsilon transitions as an array.
+	 * Result is computed once for each state and symbol. Returned array is shared and must not be modified.
+	 * @param state Source state.
+	 * @param symbolId Symbol id of the input in the alphabet of this transition table.
+	 * @return Target states including epsilon transitions. Empty array if there is no transition.
+	 */
+	public State[] getTargetStatesWithEpsilon(final State state, final int symbolId) {
+		final State[][] targetStates = this.targetStatesWithEpsilon.get(state);
+		
+		if (targetStates != null) {
+			return targetStates[symbolId];
+		}
+		
+		final State[][] computedTargetStates = this.computeTargetStatesWithEpsilon(state);
+		final State[][] storedTargetStates = this.targetStatesWithEpsilon.putIfAbsent(state, computedTargetStates);
+		
+		return (storedTargetStates == null ? computedTargetStates : storedTargetStates)[symbolId];
+	}
+	
+	/**
+	 * Computes target states including epsilon transitions of given state for every symbol of the alphabet.
+	 */
+	protected State[][] computeTargetStatesWithEpsilon(final State state) {
+		final State[][] targetStates = new State[this.getAlphabet().size()][];
+		
+		for (int symbolId = 0; symbolId < targetStates.length; symbolId++) {
+			final Set<State> targetStateSet = this.getTransitionWithEpsilon(state, symbolId);
+			targetStates[symbolId] = targetStateSet.isEmpty() ? NO_STATES : targetStateSet.toArray(new State[targetStateSet.size()]);
+		}
+		
+		return targetStates;
+	}
+	
+	/**
+	 * Returns target states of transitions of given state which have predicate inputs matching given event
+	 * and all states reachable from them with epsilon transitions. Event is dispatched with the decision structure of the state.
+	 * @param state Source state.
+	 * @param event Event used to update.
+	 * @return Target states including epsilon transitions. Empty array if no predicate matches. Must not be modified.
+	 */
+	public State[] getTargetStatesWithEpsilon(final State state, final EventInput event) {
+		final PredicateDecision predicateDecision = this.getPredicateDecisions().get(state);
+		return predicateDecision == null ? NO_STATES : predicateDecision.getTargetStates(event);
+	}
+	
+	/**
+	 * Tells if transition table has transitions with predicate inputs.
+	 * @return True if some transition has a predicate input.
+	 */
+	public boolean hasPredicates() {
+		return !this.getPredicateDecisions().isEmpty();
+	}
+	
+	/**
+	 * Returns decision structures of states which have transitions with predicate inputs. Decision structures are built
+	 * when automate is built and rebuilt when first needed after transitions change.
+	 * @return Unmodifiable map from states to their decision structures.
+	 */
+	public Map<State, PredicateDecision> getPredicateDecisions() {
+		
+		if (this.predicateDecisions == null) {
+			final Map<State, PredicateDecision> decisions = new HashMap<State, PredicateDecision>();
 			
-			// Update book keeping sets
-			statesToSearch.remove(currentState);
-			searchedStates.add(currentState);
+			for (final State state : this.getSourceStates()) {
+				
+				for (final Input input : this.getTransitionsForState(state).keySet()) {
+					
+					if (input instanceof PredicateInput) {
+						decisions.put(state, new PredicateDecision(this, state));
+						break;
+					}
+				}
+			}
+			
+			this.predicateDecisions = Collections.unmodifiableMap(decisions);
+		}
+		
+		return this.predicateDecisions;
+	}
+	
+	/**
+	 * Returns given states and all states reachable from them with epsilon transitions.
+	 * Result is a union of precomputed epsilon closures. Given set is not modified.
+	 * Returned set may be shared and must not be modified.
+	 * @param states States which epsilon transitions are followed.
+	 * @return Given states and all states reachable from them with epsilon transitions.
+	 */
+	public Set<State> getEpsilonTranitions(final Set<State> states) {
+		
+		if (states.size() == 1) {
+			return this.getEpsilonClosure(states.iterator().next());
+		}
+		
+		final Set<State> closure = new HashSet<State>();
+		for (final State state : states) {
+			closure.addAll(this.getEpsilonClosure(state));
+		}
+		
+		return closure;
+	}
+	
+	/**
+	 * Returns given state and all states reachable from it with epsilon transitions.
+	 * Closures are computed when automate is built and otherwise once when first needed and reused until transitions change.
+	 * @param state State which epsilon closure is retrieved.
+	 * @return Unmodifiable set holding epsilon closure of given state.
+	 */
+	public Set<State> getEpsilonClosure(final State state) {
+		final Set<State> closure = this.epsilonClosures.get(state);
+		
+		if (closure != null) {
+			return closure;
+		}
+		
+		final Set<State> searchedClosure = Collections.unmodifiableSet(this.searchEpsilonClosure(state));
+		final Set<State> storedClosure = this.epsilonClosures.putIfAbsent(state, searchedClosure);
+		
+		return storedClosure == null ? searchedClosure : storedClosure;
+	}
+	
+	/**
+	 * Does search to find all states which are connected to given state via epsilon transitions.
+	 * @param state State where search is started.
+	 * @return Given state and all states reachable from it with epsilon transitions.
+	 */
+	protected Set<State> searchEpsilonClosure(final State state) {
+		final Set<State> closure = new HashSet<State>();
+		final Deque<State> statesToSearch = new ArrayDeque<State>();
+		final Pair<State, Input> epsilonTransition = new Pair<State, Input>(null, EpsilonInput.getEpsilonInput());
+		
+		closure.add(state);
+		statesToSearch.add(state);
+		
+		while (!statesToSearch.isEmpty()) {
+			epsilonTransition.setFirst(statesToSearch.poll());
 			
 			// Find epsilon transitions
-			final Set<State> epsilonTargetStates = this.transitionTable.get(new Pair<State, Input>(currentState, EpsilonInput.getEpsilonInput()));
+			final Set<State> epsilonTargetStates = this.transitionTable.get(epsilonTransition);
 			
 			if (epsilonTargetStates == null) {
 				continue;
@@ -127,14 +390,136 @@ public class TransitionTable {
 			
 			for (final State epsilonTargetState : epsilonTargetStates) {
 				
-				// Add if not already checked
-				if (!searchedStates.contains(epsilonTargetState)) {
+				// Add if not already found
+				if (closure.add(epsilonTargetState)) {
 					statesToSearch.add(epsilonTargetState);
 				}
 			}
 		}
 		
-		return states;
+		return closure;
+	}
+	
+	/**
+	 * Computes the alphabet, epsilon closures and predicate decisions so that lookups made later only read them.
+	 * Target states of each state are computed when first looked up since they take memory relative to states times symbols.
+	 * Called when automate is built. Data cleared by later changes is computed again when first needed.
+	 */
+	public void computeDerivedData() {
+		this.getAlphabet();
+		
+		for (final State state : this.getStates()) {
+			this.getEpsilonClosure(state);
+		}
+		
+		this.getPredicateDecisions();
+	}
+	
+	/**
+	 * Clears data computed from transitions including the transitions by source state index.
+	 * Must be called if transition map or target state sets are changed directly.
+	 */
+	public void transitionsChanged() {
+		this.derivedDataChanged();
+		this.transitionsBySourceState = null;
+		this.targetStateCounts = null;
+		this.inputCounts = null;
+	}
+	
+	/**
+	 * Clears data computed from transitions which is not updated when transitions are changed through methods of this class.
+	 */
+	protected void derivedDataChanged() {
+		this.changeCount++;
+		this.epsilonClosures.clear();
+		this.targetStatesWithEpsilon.clear();
+		this.alphabet = null;
+		this.states = null;
+		this.predicateDecisions = null;
+	}
+	
+	/**
+	 * Builds transitions by source state index and the input and target state counts if they haven't been built.
+	 * Synchronized so that threads sharing the table don't build it at the same time.
+	 */
+	protected synchronized void buildIndex() {
+		
+		if (this.transitionsBySourceState != null) {
+			return;
+		}
+		
+		this.transitionsBySourceState = new HashMap<State, Map<Input, Set<State>>>();
+		this.targetStateCounts = new HashMap<State, Integer>();
+		this.inputCounts = new HashMap<Input, Integer>();
+		
+		for (final Map.Entry<Pair<State, Input>, Set<State>> transition : this.transitionTable.entrySet()) {
+			this.addToIndex(transition.getKey(), transition.getValue());
+		}
+	}
+	
+	protected void addToIndex(final Pair<State, Input> stateInputPair, final Set<State> transitionStates) {
+		Map<Input, Set<State>> transitionsForState = this.transitionsBySourceState.get(stateInputPair.getFirst());
+		
+		if (transitionsForState == null) {
+			transitionsForState = new HashMap<Input, Set<State>>();
+			this.transitionsBySourceState.put(stateInputPair.getFirst(), transitionsForState);
+		}
+		
+		transitionsForState.put(stateInputPair.getSecond(), transitionStates);
+		addCount(this.inputCounts, stateInputPair.getSecond(), 1);
+		
+		for (final State transitionState : transitionStates) {
+			addCount(this.targetStateCounts, transitionState, 1);
+		}
+	}
+	
+	protected void removeFromIndex(final Pair<State, Input> stateInputPair, final Set<State> transitionStates) {
+		final Map<Input, Set<State>> transitionsForState = this.transitionsBySourceState.get(stateInputPair.getFirst());
+		transitionsForState.remove(stateInputPair.getSecond());
+		
+		if (transitionsForState.isEmpty()) {
+			this.transitionsBySourceState.remove(stateInputPair.getFirst());
+		}
+		
+		addCount(this.inputCounts, stateInputPair.getSecond(), -1);
+		
+		for (final State transitionState : transitionStates) {
+			addCount(this.targetStateCounts, transitionState, -1);
+		}
+	}
+	
+	/**
+	 * Adds given amount to count of given key. Key is removed when its count drops to zero.
+	 */
+	protected static <KeyType> void addCount(final Map<KeyType, Integer> counts, final KeyType key, final int amount) {
+		final Integer count = counts.get(key);
+		final int newCount = (count == null ? 0 : count) + amount;
+		
+		if (newCount == 0) {
+			counts.remove(key);
+		}
+		
+		else {
+			counts.put(key, newCount);
+		}
+	}
+	
+	/**
+	 * Puts transition to the transition table map and keeps index up to date.
+	 */
+	protected void putTransition(final Pair<State, Input> stateInputPair, final Set<State> transitionStates) {
+		final Set<State> previousTransitionStates = this.transitionTable.put(stateInputPair, transitionStates);
+		
+		if (this.transitionsBySourceState != null) {
+			
+			if (previousTransitionStates != null) {
+				this.removeFromIndex(stateInputPair, previousTransitionStates);
+			}
+			
+			this.addToIndex(stateInputPair, transitionStates);
+		}
+		
+		this.derivedDataChanged();
 	}
 	
 	/**
@@ -148,7 +533,7 @@ public class TransitionTable {
 			throw new IllegalArgumentException("Given state input pair already exists in transition table");
 		}
 		
-		this.transitionTable.put(stateInputPair, transitionStates);
+		this.putTransition(stateInputPair, transitionStates);
 	}
 	
 	/**
@@ -163,11 +548,17 @@ public class TransitionTable {
 			throw new IllegalArgumentException("Given state input pair doesn't exists in transition table");
 		}
 		
-		this.transitionTable.put(stateInputPair, transitionStates);
+		this.putTransition(stateInputPair, transitionStates);
 	}
 	
 	public void deleteTransitionsForStateInputPair(final Pair<State, Input> stateInputPair) {
-		this.transitionTable.remove(stateInputPair);
+		final Set<State> transitionStates = this.transitionTable.remove(stateInputPair);
+		
+		if (transitionStates != null && this.transitionsBySourceState != null) {
+			this.removeFromIndex(stateInputPair, transitionStates);
+		}
+		
+		this.derivedDataChanged();
 	}
 	
 	/**
@@ -175,13 +566,30 @@ public class TransitionTable {
 	 * @return All inputs which are present in transition table.
 	 */
 	public Set<Input> getInputs() {
-		final Set<Input> inputs = new HashSet<Input>();
+		this.buildIndex();
+		return new HashSet<Input>(this.inputCounts.keySet());
+	}
+	
+	/**
+	 * Returns number of times transitions have changed. Lookups cached by callers must be discarded when it changes.
+	 * @return Change count of this transition table.
+	 */
+	public int getChangeCount() {
+		return this.changeCount;
+	}
+	
+	/**
+	 * Returns alphabet of all inputs in this transition table. Alphabet is built when it is first requested
+	 * and rebuilt after transitions change so symbol ids may change when transitions are modified.
+	 * @return Alphabet of inputs in this transition table.
+	 */
+	public InputAlphabet getAlphabet() {
 		
-		for (final Pair<State, Input> stateInputPair : this.transitionTable.keySet()) {
-			inputs.add(stateInputPair.getSecond());
+		if (this.alphabet == null) {
+			this.alphabet = InputAlphabet.createAlphabet(this.getInputs());
 		}
 		
-		return inputs;
+		return this.alphabet;
 	}
 	
 	/**
@@ -189,13 +597,8 @@ public class TransitionTable {
 	 * @return All source states of this transition table.
 	 */
 	public Set<State> getSourceStates() {
-		final Set<State> states = new HashSet<State>();
-		
-		for (final Pair<State, Input> stateInputPair : this.transitionTable.keySet()) {
-			states.add(stateInputPair.getFirst());
-		}
-		
-		return states;
+		this.buildIndex();
+		return new HashSet<State>(this.transitionsBySourceState.keySet());
 	}
 	
 	/**
@@ -203,12 +606,22 @@ public class TransitionTable {
 	 * @return All target states of this transition table.
 	 */
 	public Set<State> getTargetStates() {
-		final Set<State> states = new HashSet<State>();
+		this.buildIndex();
+		return new HashSet<State>(this.targetStateCounts.keySet());
+	}
+	
+	/**
+	 * Returns all source and target states of this transition table. Set is collected once and reused until transitions change.
+	 * @return Unmodifiable set holding all states of this transition table.
+	 */
+	public Set<State> getStates() {
 		
-		for (final Set<State> stateSet : this.transitionTable.values()) {
-			states.addAll(stateSet);
+		if (this.states == null) {
+			final Set<State> allStates = this.getSourceStates();
+			allStates.addAll(this.getTargetStates());
+			this.states = Collections.unmodifiableSet(allStates);
 		}
 		
-		return states;
+		return this.states;
 	}
 }
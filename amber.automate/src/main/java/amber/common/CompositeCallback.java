@@ -0,0 +1,68 @@
+package amber.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Callback which runs a list of callbacks in order. Name is formed from the names of the callbacks.
+ */
+public class CompositeCallback extends Callback {
+
+	/**
+	 * Creates callback which runs all given callbacks. Null callbacks are skipped.
+	 * Returns null if there are no callbacks and the callback itself if there is only one.
+	 * @param callbacks Callbacks to be combined.
+	 * @return Callback which runs all given callbacks.
+	 */
+	public static Callback combine(final List<Callback> callbacks) {
+		final List<Callback> nonNullCallbacks = new ArrayList<Callback>();
+		for (final Callback callback : callbacks) {
+
+			if (callback != null) {
+				nonNullCallbacks.add(callback);
+			}
+		}
+
+		if (nonNullCallbacks.isEmpty()) {
+			return null;
+		}
+
+		if (nonNullCallbacks.size() == 1) {
+			return nonNullCallbacks.get(0);
+		}
+
+		return new CompositeCallback(nonNullCallbacks);
+	}
+
+	protected static String createName(final List<Callback> callbacks) {
+		final StringBuilder nameBuilder = new StringBuilder();
+		for (final Callback callback : callbacks) {
+
+			if (nameBuilder.length() > 0) {
+				nameBuilder.append(",");
+			}
+
+			nameBuilder.append(callback.getName());
+		}
+
+		return nameBuilder.toString();
+	}
+
+	protected final List<Callback> callbacks;
+
+	protected CompositeCallback(final List<Callback> callbacks) {
+		super(createName(callbacks));
+		this.callbacks = callbacks;
+	}
+
+	public List<Callback> getCallbacks() {
+		return this.callbacks;
+	}
+
+	@Override
+	public void run() {
+		for (final Callback callback : this.callbacks) {
+			callback.run();
+		}
+	}
+}
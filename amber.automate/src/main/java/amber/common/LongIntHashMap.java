@@ -0,0 +1,211 @@
+package amber.common;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to primitive int values using open addressing with linear probing.
+ * Keys and values are stored in two flat arrays so no objects are created per entry and lookups don't follow pointers.
+ * Used for sparse tables keyed by two packed ints, see pack.
+ *
+ * Entries can't be removed. Value given to the constructor is returned for missing keys and can't be stored.
+ */
+public class LongIntHashMap {
+
+	/**
+	 * Key marking an empty slot. Entry with this key is stored outside the arrays.
+	 */
+	protected static final long FREE_KEY = 0;
+
+	/**
+	 * Map is grown when it would become fuller than this.
+	 */
+	protected static final double MAX_LOAD_FACTOR = 0.5;
+
+	/**
+	 * Packs two ints into one key. First int goes to the high bits.
+	 * @param high Int stored in the high 32 bits.
+	 * @param low Int stored in the low 32 bits.
+	 * @return Packed key.
+	 */
+	public static long pack(final int high, final int low) {
+		return ((long)high << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	protected final int missingValue;
+
+	protected long[] keys;
+	protected int[] values;
+
+	/**
+	 * Mask giving slot index from hash. Capacity is always a power of two.
+	 */
+	protected int mask;
+
+	/**
+	 * Number of entries stored in the arrays.
+	 */
+	protected int size;
+
+	protected boolean hasFreeKey;
+	protected int freeKeyValue;
+
+	/**
+	 * Creates map.
+	 * @param expectedSize Number of entries map can hold without growing.
+	 * @param missingValue Value returned for keys which are not in the map.
+	 */
+	public LongIntHashMap(final int expectedSize, final int missingValue) {
+
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Expected size must not be negative but was " + expectedSize + ".");
+		}
+
+		this.missingValue = missingValue;
+		this.allocate(capacityFor(expectedSize));
+	}
+
+	protected static int capacityFor(final int size) {
+		final long minCapacity = Math.max(2, (long)Math.ceil(size / MAX_LOAD_FACTOR) + 1);
+
+		if (minCapacity > 1 << 30) {
+			throw new IllegalArgumentException("Map can't hold " + size + " entries.");
+		}
+
+		return Integer.highestOneBit((int)minCapacity - 1) << 1;
+	}
+
+	protected void allocate(final int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Spreads bits of the key so that keys differing only in high bits end up in different slots.
+	 */
+	protected int slot(final long key) {
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & this.mask;
+	}
+
+	/**
+	 * Returns value of given key.
+	 * @param key Key which value is retrieved.
+	 * @return Value of the key or the missing value if key is not in the map.
+	 */
+	public int get(final long key) {
+
+		if (key == FREE_KEY) {
+			return this.hasFreeKey ? this.freeKeyValue : this.missingValue;
+		}
+
+		final long[] keys = this.keys;
+		int slot = this.slot(key);
+
+		while (true) {
+			final long slotKey = keys[slot];
+
+			if (slotKey == key) {
+				return this.values[slot];
+			}
+
+			if (slotKey == FREE_KEY) {
+				return this.missingValue;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	public boolean containsKey(final long key) {
+		return this.get(key) != this.missingValue;
+	}
+
+	/**
+	 * Sets value of given key.
+	 * @param key Key which value is set.
+	 * @param value New value. Must not be the missing value.
+	 * @return Previous value of the key or the missing value if key wasn't in the map.
+	 */
+	public int put(final long key, final int value) {
+
+		if (value == this.missingValue) {
+			throw new IllegalArgumentException("Missing value " + value + " can't be stored in the map.");
+		}
+
+		if (key == FREE_KEY) {
+			final int previousValue = this.hasFreeKey ? this.freeKeyValue : this.missingValue;
+			this.hasFreeKey = true;
+			this.freeKeyValue = value;
+			return previousValue;
+		}
+
+		int slot = this.slot(key);
+
+		while (true) {
+			final long slotKey = this.keys[slot];
+
+			if (slotKey == key) {
+				final int previousValue = this.values[slot];
+				this.values[slot] = value;
+				return previousValue;
+			}
+
+			if (slotKey == FREE_KEY) {
+				break;
+			}
+
+			slot = (slot + 1) & this.mask;
+		}
+
+		this.keys[slot] = key;
+		this.values[slot] = value;
+		this.size++;
+
+		if (this.size > this.keys.length * MAX_LOAD_FACTOR) {
+			this.grow();
+		}
+
+		return this.missingValue;
+	}
+
+	protected void grow() {
+		final long[] oldKeys = this.keys;
+		final int[] oldValues = this.values;
+
+		this.allocate(oldKeys.length * 2);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+
+			if (oldKeys[i] == FREE_KEY) {
+				continue;
+			}
+
+			int slot = this.slot(oldKeys[i]);
+			while (this.keys[slot] != FREE_KEY) {
+				slot = (slot + 1) & this.mask;
+			}
+
+			this.keys[slot] = oldKeys[i];
+			this.values[slot] = oldValues[i];
+		}
+	}
+
+	/**
+	 * Returns number of entries in the map.
+	 * @return Number of entries.
+	 */
+	public int size() {
+		return this.size + (this.hasFreeKey ? 1 : 0);
+	}
+
+	public int getMissingValue() {
+		return this.missingValue;
+	}
+
+	public void clear() {
+		Arrays.fill(this.keys, FREE_KEY);
+		this.size = 0;
+		this.hasFreeKey = false;
+	}
+}
@@ -0,0 +1,88 @@
+package amber.input;
+
+/**
+ * Input holding a single byte. Automates built with byte inputs can be run directly over byte buffers
+ * with Execution.update(ByteBuffer) without creating an input for each byte.
+ */
+public class ByteInput implements Input {
+	
+	private static final long serialVersionUID = 1L;
+	
+	protected byte value;
+	
+	public ByteInput(final ByteInputJsonObject inputJson) {
+		this(inputJson.getValue());
+	}
+	
+	public ByteInput(final byte value) {
+		this.value = value;
+	}
+	
+	/**
+	 * Creates input for byte with given unsigned value.
+	 * @param value Value of the byte from 0 to 255.
+	 */
+	public ByteInput(final int value) {
+		
+		if (value < 0 || value > 255) {
+			throw new IllegalArgumentException("Byte value must be from 0 to 255 but was " + value + ".");
+		}
+		
+		this.value = (byte)value;
+	}
+	
+	public byte getValue() {
+		return this.value;
+	}
+	
+	/**
+	 * Returns value of the byte as an unsigned value from 0 to 255.
+	 * @return Unsigned value of the byte.
+	 */
+	public int getUnsignedValue() {
+		return this.value & 0xFF;
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.value;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+		
+		return this.value == ((ByteInput)obj).value;
+	}
+	
+	@Override
+	public String toString() {
+		return "byte:" + this.getUnsignedValue();
+	}
+
+	public Object toJsonObject() {
+		final ByteInputJsonObject jsonObject = new ByteInputJsonObject();
+		jsonObject.setValue(this.value);
+		return jsonObject;
+	}
+
+	public Class<?> getJsonObjectClass() {
+		return ByteInputJsonObject.class;
+	}
+	
+	protected class ByteInputJsonObject {
+		
+		protected byte value;
+		
+		public byte getValue() {
+			return this.value;
+		}
+		
+		public void setValue(final byte value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package amber.input;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Input holding named attributes of an event. Event inputs are used to update executions of automates
+ * which have transitions with predicate inputs. Transition is taken if its predicate matches the attributes of the event.
+ *
+ * Attributes must not be changed after the event has been used to update an execution.
+ */
+public class EventInput implements Input {
+
+	private static final long serialVersionUID = 1L;
+
+	protected Map<String, Object> attributes;
+
+	public EventInput(final EventInputJsonObject inputJson) {
+		this(inputJson.getAttributes());
+	}
+
+	public EventInput() {
+		this.attributes = new HashMap<String, Object>();
+	}
+
+	/**
+	 * Creates event with given attributes. Attributes are copied.
+	 * @param attributes Attributes of the event.
+	 */
+	public EventInput(final Map<String, ?> attributes) {
+		this.attributes = new HashMap<String, Object>(attributes);
+	}
+
+	/**
+	 * Sets value of given attribute.
+	 * @param name Name of the attribute.
+	 * @param value Value of the attribute. Numbers are compared with numeric predicates and other values as text.
+	 * @return This event.
+	 */
+	public EventInput setAttribute(final String name, final Object value) {
+		this.attributes.put(name, value);
+		return this;
+	}
+
+	/**
+	 * Returns value of given attribute.
+	 * @param name Name of the attribute.
+	 * @return Value of the attribute or null if event doesn't have it.
+	 */
+	public Object getAttribute(final String name) {
+		return this.attributes.get(name);
+	}
+
+	public Map<String, Object> getAttributes() {
+		return this.attributes;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.attributes.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+
+		return this.attributes.equals(((EventInput)obj).attributes);
+	}
+
+	@Override
+	public String toString() {
+		return this.attributes.toString();
+	}
+
+	public Object toJsonObject() {
+		final EventInputJsonObject jsonObject = new EventInputJsonObject();
+		jsonObject.setAttributes(this.attributes);
+		return jsonObject;
+	}
+
+	public Class<?> getJsonObjectClass() {
+		return EventInputJsonObject.class;
+	}
+
+	protected class EventInputJsonObject {
+
+		protected Map<String, Object> attributes;
+
+		public Map<String, Object> getAttributes() {
+			return this.attributes;
+		}
+
+		public void setAttributes(final Map<String, Object> attributes) {
+			this.attributes = attributes;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package amber.input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Input which matches events by a condition on one of their attributes. Condition either compares numeric value
+ * of the attribute to a threshold or tells if value of the attribute is one of given values.
+ * Transition with a predicate input is taken with every EventInput the predicate matches.
+ * If several predicates of a state match an event all of their transitions are taken like with nondeterministic transitions.
+ *
+ * Predicates of each state are compiled into a decision structure so that dispatching an event doesn't evaluate them one by one.
+ * Predicate input is only used in transitions. Executions are updated with event inputs.
+ */
+public class PredicateInput implements Input {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Comparison done by predicate.
+	 */
+	public static enum Operator {
+		LESS_THAN,
+		LESS_OR_EQUAL,
+		GREATER_THAN,
+		GREATER_OR_EQUAL,
+		IN
+	}
+
+	/**
+	 * Creates predicate matching events which have numeric value of given attribute below given threshold.
+	 * @param attribute Name of the attribute.
+	 * @param threshold Threshold value.
+	 * @return Predicate input.
+	 */
+	public static PredicateInput lessThan(final String attribute, final double threshold) {
+		return new PredicateInput(attribute, Operator.LESS_THAN, threshold, Collections.<String>emptySet());
+	}
+
+	public static PredicateInput lessOrEqual(final String attribute, final double threshold) {
+		return new PredicateInput(attribute, Operator.LESS_OR_EQUAL, threshold, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Creates predicate matching events which have numeric value of given attribute above given threshold.
+	 * @param attribute Name of the attribute.
+	 * @param threshold Threshold value.
+	 * @return Predicate input.
+	 */
+	public static PredicateInput greaterThan(final String attribute, final double threshold) {
+		return new PredicateInput(attribute, Operator.GREATER_THAN, threshold, Collections.<String>emptySet());
+	}
+
+	public static PredicateInput greaterOrEqual(final String attribute, final double threshold) {
+		return new PredicateInput(attribute, Operator.GREATER_OR_EQUAL, threshold, Collections.<String>emptySet());
+	}
+
+	/**
+	 * Creates predicate matching events which have one of given values as a value of given attribute.
+	 * Values of the event are compared as text.
+	 * @param attribute Name of the attribute.
+	 * @param values Accepted values.
+	 * @return Predicate input.
+	 */
+	public static PredicateInput in(final String attribute, final String... values) {
+		return new PredicateInput(attribute, Operator.IN, 0, Arrays.asList(values));
+	}
+
+	protected String attribute;
+	protected Operator operator;
+	protected double threshold;
+
+	/**
+	 * Accepted values of IN predicate in sorted order. Empty for numeric predicates.
+	 */
+	protected Set<String> values;
+
+	public PredicateInput(final PredicateInputJsonObject inputJson) {
+		this(inputJson.getAttribute(), Operator.valueOf(inputJson.getOperator()), inputJson.getThreshold(), inputJson.getValues());
+	}
+
+	public PredicateInput(final String attribute, final Operator operator, final double threshold, final Iterable<String> values) {
+
+		if (attribute == null) {
+			throw new IllegalArgumentException("Predicate must have an attribute.");
+		}
+
+		if (operator != Operator.IN && Double.isNaN(threshold)) {
+			throw new IllegalArgumentException("Threshold of predicate must be a number.");
+		}
+
+		this.attribute = attribute;
+		this.operator = operator;
+		this.threshold = operator == Operator.IN ? 0 : threshold;
+		this.values = new TreeSet<String>();
+
+		if (operator == Operator.IN) {
+
+			for (final String value : values) {
+				this.values.add(value);
+			}
+
+			if (this.values.isEmpty()) {
+				throw new IllegalArgumentException("Predicate must accept at least one value.");
+			}
+		}
+	}
+
+	public String getAttribute() {
+		return this.attribute;
+	}
+
+	public Operator getOperator() {
+		return this.operator;
+	}
+
+	public double getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * Returns accepted values of IN predicate.
+	 * @return Unmodifiable set of accepted values. Empty for numeric predicates.
+	 */
+	public Set<String> getValues() {
+		return Collections.unmodifiableSet(this.values);
+	}
+
+	/**
+	 * Tells if predicate is a numeric comparison.
+	 * @return True if predicate compares numeric value to a threshold.
+	 */
+	public boolean isNumeric() {
+		return this.operator != Operator.IN;
+	}
+
+	/**
+	 * Tells if predicate matches given event. Used when predicates are not dispatched through decision structure.
+	 * @param event Event to be checked.
+	 * @return True if event has the attribute and its value matches.
+	 */
+	public boolean matches(final EventInput event) {
+		final Object value = event.getAttribute(this.attribute);
+
+		if (value == null) {
+			return false;
+		}
+
+		if (this.operator == Operator.IN) {
+			return this.values.contains(value.toString());
+		}
+
+		if (!(value instanceof Number) || Double.isNaN(((Number)value).doubleValue())) {
+			return false;
+		}
+
+		final int comparison = Double.compare(((Number)value).doubleValue(), this.threshold);
+		switch (this.operator) {
+			case LESS_THAN:
+				return comparison < 0;
+			case LESS_OR_EQUAL:
+				return comparison <= 0;
+			case GREATER_THAN:
+				return comparison > 0;
+			default:
+				return comparison >= 0;
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return ((this.attribute.hashCode() * 31 + this.operator.hashCode()) * 31 + Double.valueOf(this.threshold).hashCode()) * 31 + this.values.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+
+		final PredicateInput other = (PredicateInput)obj;
+		return this.attribute.equals(other.attribute) && this.operator == other.operator
+				&& Double.compare(this.threshold, other.threshold) == 0 && this.values.equals(other.values);
+	}
+
+	@Override
+	public String toString() {
+		return this.attribute + " " + this.operator + " " + (this.operator == Operator.IN ? this.values.toString() : String.valueOf(this.threshold));
+	}
+
+	public Object toJsonObject() {
+		final PredicateInputJsonObject jsonObject = new PredicateInputJsonObject();
+		jsonObject.setAttribute(this.attribute);
+		jsonObject.setOperator(this.operator.name());
+		jsonObject.setThreshold(this.threshold);
+		jsonObject.setValues(new ArrayList<String>(this.values));
+		return jsonObject;
+	}
+
+	public Class<?> getJsonObjectClass() {
+		return PredicateInputJsonObject.class;
+	}
+
+	protected class PredicateInputJsonObject {
+
+		protected String attribute;
+		protected String operator;
+		protected double threshold;
+		protected List<String> values;
+
+		public String getAttribute() {
+			return this.attribute;
+		}
+
+		public void setAttribute(final String attribute) {
+			this.attribute = attribute;
+		}
+
+		public String getOperator() {
+			return this.operator;
+		}
+
+		public void setOperator(final String operator) {
+			this.operator = operator;
+		}
+
+		public double getThreshold() {
+			return this.threshold;
+		}
+
+		public void setThreshold(final double threshold) {
+			this.threshold = threshold;
+		}
+
+		public List<String> getValues() {
+			return this.values;
+		}
+
+		public void setValues(final List<String> values) {
+			this.values = values;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package amber.input;
+
+/**
+ * Input which matches a range of characters or bytes. Transition with a range input is taken
+ * with every TextInput holding a single code point in the range or with every ByteInput in the range.
+ * If several transitions of a state match an input all of them are taken like with nondeterministic transitions.
+ *
+ * Range input is only used in transitions. Executions are updated with the characters or bytes themselves.
+ */
+public class RangeInput implements Input {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Tells if range is a code point range or a byte range.
+	 */
+	public static enum Kind {
+		CODE_POINT,
+		BYTE
+	}
+
+	/**
+	 * Creates range matching code points from first to last including both.
+	 * @param first First code point of the range.
+	 * @param last Last code point of the range.
+	 * @return Code point range.
+	 */
+	public static RangeInput codePointRange(final int first, final int last) {
+		return new RangeInput(Kind.CODE_POINT, first, last);
+	}
+
+	/**
+	 * Creates range matching unsigned byte values from first to last including both.
+	 * @param first First byte value of the range from 0 to 255.
+	 * @param last Last byte value of the range from 0 to 255.
+	 * @return Byte range.
+	 */
+	public static RangeInput byteRange(final int first, final int last) {
+		return new RangeInput(Kind.BYTE, first, last);
+	}
+
+	protected Kind kind;
+	protected int first;
+	protected int last;
+
+	public RangeInput(final RangeInputJsonObject inputJson) {
+		this(Kind.valueOf(inputJson.getKind()), inputJson.getFirst(), inputJson.getLast());
+	}
+
+	public RangeInput(final Kind kind, final int first, final int last) {
+		final int maxValue = kind == Kind.BYTE ? 255 : Character.MAX_CODE_POINT;
+
+		if (first < 0 || last > maxValue || first > last) {
+			throw new IllegalArgumentException("Invalid range " + first + "-" + last + " for " + kind + " range.");
+		}
+
+		this.kind = kind;
+		this.first = first;
+		this.last = last;
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	public int getFirst() {
+		return this.first;
+	}
+
+	public int getLast() {
+		return this.last;
+	}
+
+	/**
+	 * Tells if given code point or unsigned byte value is in the range.
+	 * @param value Code point or byte value depending on the kind of the range.
+	 * @return True if value is in the range.
+	 */
+	public boolean contains(final int value) {
+		return value >= this.first && value <= this.last;
+	}
+
+	@Override
+	public int hashCode() {
+		return (this.kind.hashCode() * 31 + this.first) * 31 + this.last;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this.getClass() != obj.getClass()) {
+			return false;
+		}
+
+		final RangeInput other = (RangeInput)obj;
+		return this.kind == other.kind && this.first == other.first && this.last == other.last;
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + ":" + this.first + "-" + this.last;
+	}
+
+	public Object toJsonObject() {
+		final RangeInputJsonObject jsonObject = new RangeInputJsonObject();
+		jsonObject.setKind(this.kind.name());
+		jsonObject.setFirst(this.first);
+		jsonObject.setLast(this.last);
+		return jsonObject;
+	}
+
+	public Class<?> getJsonObjectClass() {
+		return RangeInputJsonObject.class;
+	}
+
+	protected class RangeInputJsonObject {
+
+		protected String kind;
+		protected int first;
+		protected int last;
+
+		public String getKind() {
+			return this.kind;
+		}
+
+		public void setKind(final String kind) {
+			this.kind = kind;
+		}
+
+		public int getFirst() {
+			return this.first;
+		}
+
+		public void setFirst(final int first) {
+			this.first = first;
+		}
+
+		public int getLast() {
+			return this.last;
+		}
+
+		public void setLast(final int last) {
+			this.last = last;
+		}
+	}
+}
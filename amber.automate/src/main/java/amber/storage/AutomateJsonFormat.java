@@ -1,7 +1,6 @@
 package amber.storage;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,12 +17,8 @@ public class AutomateJsonFormat extends JsonFormat {
 	
 	public static AutomateJsonFormat automateToJsonFormat(final Automate automate) {
 		// States and callbacks
-		final Set<State> states = new HashSet<State>();
-		states.addAll(automate.getTransitionTable().getSourceStates());
-		states.addAll(automate.getTransitionTable().getTargetStates());
-		
 		final List<StateJsonFormat> statesJsonFormat = new ArrayList<StateJsonFormat>();
-		for (final State state : states) {
+		for (final State state : automate.getTransitionTable().getStates()) {
 			statesJsonFormat.add(StateJsonFormat.stateToJsonFormat(state));
 		}
 		
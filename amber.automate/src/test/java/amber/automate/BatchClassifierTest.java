@@ -0,0 +1,147 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class BatchClassifierTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("a"), new TextInput("b"), new TextInput("c") };
+
+	private static Automate createAutomate() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.setErrorState("error")
+				.setStartState("start");
+
+		for (int i = 0; i < 12; i++) {
+			builder.addState("s" + i);
+		}
+
+		builder.addTransition("start", EpsilonInput.getEpsilonInput(), "s0");
+		for (int i = 0; i < 11; i++) {
+			builder.addTransition("s" + i, new TextInput("a"), "s" + (i + 1), "s0");
+			builder.addTransition("s" + i, new TextInput("b"), "s" + (i + 1));
+
+			if (i % 3 == 2) {
+				builder.addEndState("s" + i);
+			}
+		}
+
+		return builder.build();
+	}
+
+	private static List<List<Input>> createSequences(final int count) {
+		final Random random = new Random(3);
+		final List<List<Input>> sequences = new ArrayList<List<Input>>();
+
+		for (int i = 0; i < count; i++) {
+			final List<Input> sequence = new ArrayList<Input>();
+			final int length = random.nextInt(12);
+
+			for (int j = 0; j < length; j++) {
+				sequence.add(INPUTS[random.nextInt(random.nextInt(10) == 0 ? 3 : 2)]);
+			}
+
+			sequences.add(sequence);
+		}
+
+		return sequences;
+	}
+
+	/**
+	 * Returns smallest end state id among the current states execution stops in or -1.
+	 */
+	private static int runExecution(final CompiledAutomate compiled, final Execution execution, final List<Input> sequence) {
+		execution.reset();
+		execution.getEncounteredEndStates().clear();
+
+		if (execution.start()) {
+			for (final Input input : sequence) {
+				if (!execution.update(input)) {
+					break;
+				}
+			}
+		}
+
+		int endState = BatchClassifier.NO_END_STATE;
+		for (final State state : execution.getCurrentStates()) {
+			final int stateId = compiled.getStateId(state);
+
+			if (compiled.isEndState(stateId) && (endState == BatchClassifier.NO_END_STATE || stateId < endState)) {
+				endState = stateId;
+			}
+		}
+
+		return endState;
+	}
+
+	private static void assertSameAsExecutions(final CompiledAutomate compiled, final ExecutionConfiguration conf) {
+		final List<List<Input>> sequences = createSequences(5000);
+		final ForkJoinPool pool = new ForkJoinPool(4);
+
+		try {
+			final BatchClassifier classifier = new BatchClassifier(compiled, conf, pool, 100);
+			final BitSet accepted = classifier.classifyAll(sequences);
+			final int[] endStates = classifier.findEndStates(sequences);
+
+			final Execution execution = compiled.isDeterministic() ? new CompiledExecution(compiled, conf) : new BitSetExecution(compiled, conf);
+			int acceptedCount = 0;
+
+			for (int i = 0; i < sequences.size(); i++) {
+				final int expected = runExecution(compiled, execution, sequences.get(i));
+				assertEquals(expected, endStates[i]);
+				assertEquals(expected != BatchClassifier.NO_END_STATE, accepted.get(i));
+				acceptedCount += accepted.get(i) ? 1 : 0;
+			}
+
+			assertTrue(acceptedCount > 0 && acceptedCount < sequences.size());
+
+			// Streams and collections without fast access give same result
+			assertEquals(accepted, classifier.classifyAll(sequences.stream()));
+			assertEquals(accepted, classifier.classifyAll(new LinkedList<List<Input>>(sequences)));
+		}
+
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldClassifyLikeBitSetExecution() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		assertSameAsExecutions(CompiledAutomate.compile(createAutomate()), conf);
+	}
+
+	@Test
+	public void shouldClassifyLikeCompiledExecution() {
+		final Automate automate = createAutomate();
+		final Automate deterministic = new Determinizer(automate, new ExecutionConfiguration(), Determinizer.DEFAULT_MAX_STATES, false).determinize();
+		final CompiledAutomate compiled = CompiledAutomate.compile(deterministic);
+
+		assertSameAsExecutions(compiled, new ExecutionConfiguration());
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setExitWhenEndStateIsEncountered(true);
+		assertSameAsExecutions(compiled, conf);
+	}
+
+	@Test
+	public void shouldClassifyEmptyCollection() {
+		final BatchClassifier classifier = new BatchClassifier(CompiledAutomate.compile(createAutomate()), new ExecutionConfiguration());
+		assertTrue(classifier.classifyAll(new ArrayList<List<Input>>()).isEmpty());
+	}
+}
@@ -0,0 +1,97 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class BitSetExecutionTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("a"), new TextInput("b"), new TextInput("c") };
+
+	private Automate automate;
+	private CompiledAutomate compiled;
+
+	@Before
+	public void setup() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.setErrorState("error")
+				.setStartState("start");
+
+		// Chain of states which all can also restart from the beginning.
+		// Uses more than 64 states so that state sets span multiple words.
+		for (int i = 0; i < 100; i++) {
+			builder.addState("s" + i);
+		}
+
+		builder.addTransition("start", EpsilonInput.getEpsilonInput(), "s0");
+		for (int i = 0; i < 99; i++) {
+			builder.addTransition("s" + i, new TextInput("a"), "s" + (i + 1), "s0");
+			builder.addTransition("s" + i, new TextInput("b"), "s" + (i + 1));
+
+			if (i % 10 == 9) {
+				builder.addEndState("s" + i);
+				builder.addTransition("s" + i, EpsilonInput.getEpsilonInput(), "s" + (i / 2));
+			}
+		}
+
+		this.automate = builder.build();
+		this.compiled = CompiledAutomate.compile(this.automate);
+	}
+
+	@Test
+	public void shouldBehaveLikeExecution() {
+		final ExecutionConfiguration conf = ExecutionConfiguration.getDefaultConfiguration();
+		this.assertSameAsExecution(conf);
+	}
+
+	@Test
+	public void shouldBehaveLikeExecutionWhenAllowedToStayInSameState() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		this.assertSameAsExecution(conf);
+	}
+
+	@Test
+	public void shouldBehaveLikeExecutionWhenNotAllowedToTransitToMultipleStates() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToTransitToMultipleStates(false);
+		this.assertSameAsExecution(conf);
+	}
+
+	@Test
+	public void shouldEndWhenOnlyErrorStateIsLeft() {
+		final BitSetExecution execution = new BitSetExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+
+		assertFalse(execution.update(new TextInput("undefined")));
+		assertEquals(1, execution.getCurrentStateCount());
+		assertTrue(execution.isCurrentState(this.compiled.getErrorStateId()));
+	}
+
+	private void assertSameAsExecution(final ExecutionConfiguration conf) {
+		final Random random = new Random(7);
+
+		for (int sequence = 0; sequence < 20; sequence++) {
+			final Execution execution = new Execution(this.automate, conf);
+			final BitSetExecution bitSetExecution = new BitSetExecution(this.compiled, conf);
+			assertEquals(execution.start(), bitSetExecution.start());
+
+			for (int i = 0; i < 200; i++) {
+				final Input input = random.nextInt(50) == 0 ? INPUTS[2] : INPUTS[random.nextInt(2)];
+				assertEquals(execution.update(input), bitSetExecution.update(input));
+				assertEquals(execution.getCurrentStates(), bitSetExecution.getCurrentStates());
+			}
+
+			assertEquals(execution.getEncounteredEndStates(), bitSetExecution.getEncounteredEndStates());
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.EpsilonInput;
+import amber.input.TextInput;
+
+public class CompiledAutomateTest {
+
+	private Automate automate;
+	private CompiledAutomate compiled;
+
+	@Before
+	public void setup() {
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("pair")
+				.addState("nonPair")
+
+				.setErrorState("error")
+				.setStartState("pair")
+				.addEndState("nonPair")
+
+				.addTransition("pair", new TextInput("1"), "nonPair")
+				.addTransition("pair", new TextInput("0"), "pair")
+				.addTransition("nonPair", new TextInput("1"), "pair")
+				.addTransition("nonPair", new TextInput("0"), "nonPair")
+
+				.build();
+
+		this.compiled = CompiledAutomate.compile(this.automate);
+	}
+
+	@Test
+	public void shouldEndInSameStateAsExecution() {
+		final TextInput[] inputs = new TextInput[] { new TextInput("0"), new TextInput("1"), new TextInput("0"), new TextInput("0"), new TextInput("1"), new TextInput("1") };
+
+		final Execution execution = new Execution(this.automate, ExecutionConfiguration.getDefaultConfiguration());
+		final CompiledExecution compiledExecution = new CompiledExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+		compiledExecution.start();
+
+		for (final TextInput input : inputs) {
+			assertEquals(execution.update(input), compiledExecution.update(input));
+			assertEquals(execution.getCurrentStates(), compiledExecution.getCurrentStates());
+		}
+
+		assertEquals(execution.getEncounteredEndStates(), compiledExecution.getEncounteredEndStates());
+	}
+
+	@Test
+	public void shouldUpdateWithInputIds() {
+		final int one = this.compiled.getInputId(new TextInput("1"));
+
+		final CompiledExecution execution = new CompiledExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+		execution.update(one);
+
+		assertEquals("nonPair", execution.getCurrentState().getName());
+		assertEquals(1, execution.getEncounteredEndStates().size());
+	}
+
+	@Test
+	public void shouldMoveToErrorStateWithUnknownInput() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+
+		assertFalse(execution.update(new TextInput("undefined")));
+		assertTrue(execution.isAtEnd());
+		assertEquals(new HashSet<State>(Arrays.asList(this.automate.getErrorState())), execution.getCurrentStates());
+	}
+
+	@Test
+	public void shouldStayInStateWithUnknownInputIfAllowedToStayInSameState() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final CompiledExecution execution = new CompiledExecution(this.compiled, conf);
+		execution.start();
+
+		assertTrue(execution.update(new TextInput("undefined")));
+		assertEquals("pair", execution.getCurrentState().getName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotExecuteAutomateWithEpsilonTransitions() {
+		final Automate nondeterministic = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.setErrorState("error")
+				.setStartState("start")
+				.addTransition("start", EpsilonInput.getEpsilonInput(), "a")
+				.build();
+
+		final CompiledAutomate compiledNondeterministic = CompiledAutomate.compile(nondeterministic);
+		assertFalse(compiledNondeterministic.isDeterministic());
+
+		new CompiledExecution(compiledNondeterministic, ExecutionConfiguration.getDefaultConfiguration());
+	}
+
+	@Test
+	public void shouldGiveSameTransitionsWhenSparse() {
+		final CompiledAutomate sparse = CompiledAutomate.compileSparse(this.automate);
+		assertTrue(sparse.isSparse());
+		assertFalse(this.compiled.isSparse());
+
+		for (int state = 0; state < this.compiled.getStateCount(); state++) {
+
+			for (int input = -1; input < this.compiled.getInputCount(); input++) {
+				assertEquals(this.compiled.getTransition(state, input), sparse.getTransition(state, input));
+				assertArrayEquals(this.compiled.getTargetStateIds(state, input), sparse.getTargetStateIds(state, input));
+			}
+		}
+
+		final CompiledExecution execution = new CompiledExecution(sparse, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+		execution.update(new TextInput("1"));
+		execution.update(new TextInput("0"));
+		assertEquals("nonPair", execution.getCurrentState().getName());
+	}
+
+	@Test
+	public void shouldKeepMultipleTargetsWhenSparse() {
+		final Automate nondeterministic = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("first")
+				.addState("second")
+				.setErrorState("error")
+				.setStartState("start")
+				.addTransition("start", new TextInput("a"), "first")
+				.addTransition("start", new TextInput("a"), "second")
+				.addTransition("first", new TextInput("b"), "second")
+				.build();
+
+		final CompiledAutomate dense = CompiledAutomate.compile(nondeterministic);
+		final CompiledAutomate sparse = CompiledAutomate.compileSparse(nondeterministic);
+		final int start = sparse.getStartStateId();
+		final int a = sparse.getInputId(new TextInput("a"));
+
+		assertEquals(CompiledAutomate.MULTIPLE_TRANSITIONS, sparse.getTransition(start, a));
+		assertArrayEquals(dense.getTargetStateIds(start, a), sparse.getTargetStateIds(start, a));
+		assertFalse(sparse.isDeterministic());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldThrowIfUpdatedBeforeStart() {
+		new CompiledExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration()).update(new TextInput("1"));
+	}
+}
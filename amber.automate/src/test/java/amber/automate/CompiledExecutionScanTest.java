@@ -0,0 +1,134 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.TextInput;
+
+public class CompiledExecutionScanTest {
+
+	private static final String TEXT = "xabaabyab";
+
+	private CompiledAutomate compiled;
+	private ExecutionConfiguration conf;
+
+	@Before
+	public void setup() {
+		// Finds "ab" when staying in state with other characters
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", new TextInput("a"), "a")
+				.addTransition("a", new TextInput("a"), "a")
+				.addTransition("a", new TextInput("b"), "found")
+				.addTransition("found", new TextInput("a"), "a")
+				.build();
+
+		this.compiled = CompiledAutomate.compile(automate);
+
+		this.conf = new ExecutionConfiguration();
+		this.conf.setAllowToStayInStateOnUpdate(true);
+		this.conf.setExitWhenEndStateIsEncountered(true);
+	}
+
+	@Test
+	public void shouldReportAllMatchesToListener() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, this.conf);
+		execution.start();
+
+		final List<Integer> positions = new ArrayList<Integer>();
+		final int found = this.compiled.getStateId(this.compiled.getAutomate().getEndStates().iterator().next());
+
+		assertEquals(TEXT.length(), execution.scan(TEXT, 0, TEXT.length(), new MatchListener() {
+
+			@Override
+			public boolean onMatch(final int position, final int endStateId) {
+				assertEquals(found, endStateId);
+				positions.add(position);
+				return true;
+			}
+		}));
+
+		assertEquals(2, positions.get(0).intValue());
+		assertEquals(5, positions.get(1).intValue());
+		assertEquals(8, positions.get(2).intValue());
+		assertEquals(3, positions.size());
+		assertTrue(execution.getEncounteredEndStates().isEmpty());
+	}
+
+	@Test
+	public void shouldStopWhenListenerAsks() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, this.conf);
+		execution.start();
+
+		final int[] inputIds = new int[TEXT.length()];
+		for (int i = 0; i < TEXT.length(); i++) {
+			inputIds[i] = this.compiled.getInputId(new TextInput(TEXT.substring(i, i + 1)));
+		}
+
+		assertEquals(3, execution.scan(inputIds, 0, inputIds.length, new MatchListener() {
+
+			@Override
+			public boolean onMatch(final int position, final int endStateId) {
+				return false;
+			}
+		}));
+	}
+
+	@Test
+	public void shouldContinueAfterFullBuffer() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, this.conf);
+		execution.start();
+
+		final int[] matches = new int[4];
+		assertEquals(2, execution.scan(TEXT, 0, TEXT.length(), matches));
+		assertEquals(2, matches[0]);
+		assertEquals(5, matches[2]);
+		assertEquals("found", this.compiled.getState(matches[3]).getName());
+		assertEquals(matches[2] + 1, execution.getScanEnd());
+
+		assertEquals(1, execution.scan(TEXT, execution.getScanEnd(), TEXT.length(), matches));
+		assertEquals(8, matches[0]);
+		assertEquals(TEXT.length(), execution.getScanEnd());
+	}
+
+	@Test
+	public void shouldTellWhereScanStoppedAtErrorState() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+
+		final String text = "abxab";
+		final int[] matches = new int[8];
+		assertEquals(1, execution.scan(text, 0, text.length(), matches));
+		assertEquals(1, matches[0]);
+		assertEquals(3, execution.getScanEnd());
+		assertTrue(execution.isAtEnd());
+
+		final int[] inputIds = new int[text.length()];
+		for (int i = 0; i < text.length(); i++) {
+			inputIds[i] = this.compiled.getInputId(new TextInput(text.substring(i, i + 1)));
+		}
+
+		execution.reset();
+		execution.start();
+		assertEquals(1, execution.scan(inputIds, 0, inputIds.length, matches));
+		assertEquals(3, execution.getScanEnd());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotScanIntoBufferWhichCantHoldMatch() {
+		final CompiledExecution execution = new CompiledExecution(this.compiled, this.conf);
+		execution.start();
+		execution.scan(TEXT, 0, TEXT.length(), new int[1]);
+	}
+}
@@ -0,0 +1,180 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.common.Callback;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class DeterminizerTest {
+
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		// Recognizes inputs which have "a" as second to last input
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("loop")
+				.addState("seenA")
+				.addState("end")
+
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("end")
+
+				.addTransition("start", EpsilonInput.getEpsilonInput(), "loop")
+				.addTransition("loop", new TextInput("a"), "loop", "seenA")
+				.addTransition("loop", new TextInput("b"), "loop")
+				.addTransition("seenA", new TextInput("a"), "end")
+				.addTransition("seenA", new TextInput("b"), "end")
+
+				.build();
+	}
+
+	@Test
+	public void shouldCreateDeterministicAutomate() {
+		final Automate deterministic = Determinizer.determinize(this.automate);
+
+		assertFalse(Determinizer.isDeterministic(this.automate));
+		assertTrue(Determinizer.isDeterministic(deterministic));
+	}
+
+	@Test
+	public void shouldEncounterEndStatesLikeNondeterministicExecution() {
+		final CompiledAutomate compiled = CompiledAutomate.compile(this.automate, ExecutionConfiguration.getDefaultConfiguration(), Determinizer.DEFAULT_MAX_STATES);
+		final Input[] inputs = new Input[] { new TextInput("a"), new TextInput("b") };
+		final Random random = new Random(42);
+
+		for (int sequence = 0; sequence < 50; sequence++) {
+			final Execution execution = new Execution(this.automate, ExecutionConfiguration.getDefaultConfiguration());
+			final CompiledExecution compiledExecution = new CompiledExecution(compiled, ExecutionConfiguration.getDefaultConfiguration());
+			execution.start();
+			compiledExecution.start();
+
+			for (int i = 0; i < 20; i++) {
+				final Input input = inputs[random.nextInt(inputs.length)];
+				assertEquals(execution.update(input), compiledExecution.update(input));
+				assertEquals(execution.getEncounteredEndStates().size(), compiledExecution.getEncounteredEndStates().size());
+			}
+		}
+	}
+
+	private static Callback createRecordingCallback(final String name, final List<String> calls) {
+		return new Callback(name) {
+
+			@Override
+			public void run() {
+				calls.add(this.getName());
+			}
+		};
+	}
+
+	/**
+	 * Replaces states of deterministic automate with names of their member states which are end states of the original automate.
+	 */
+	private static List<Set<String>> getEndStateNames(final List<Set<State>> encounteredEndStates, final Map<String, Set<State>> members, final Automate automate) {
+		final List<Set<String>> names = new ArrayList<Set<String>>();
+
+		for (final Set<State> endStates : encounteredEndStates) {
+			final Set<String> endStateNames = new HashSet<String>();
+
+			for (final State endState : endStates) {
+				final Set<State> memberStates = members.containsKey(endState.getName()) ? members.get(endState.getName()) : endStates;
+
+				for (final State member : memberStates) {
+
+					if (automate.getEndStateNames().contains(member.getName())) {
+						endStateNames.add(member.getName());
+					}
+				}
+			}
+
+			names.add(endStateNames);
+		}
+
+		return names;
+	}
+
+	@Test
+	public void shouldReenterStatesWhichTransitBackToThemselvesWhenStayingIsAllowed() {
+		final List<String> calls = new ArrayList<String>();
+
+		// Start state goes to e and f with x, e transits back to itself and f has no transitions
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState(State.createState("s", createRecordingCallback("entry s", calls), createRecordingCallback("exit s", calls), createRecordingCallback("stay s", calls)))
+				.addState(State.createState("e", createRecordingCallback("entry e", calls), createRecordingCallback("exit e", calls), createRecordingCallback("stay e", calls)))
+				.addState("f")
+
+				.setErrorState("error")
+				.setStartState("s")
+				.addEndState("e")
+
+				.addTransition("s", new TextInput("x"), "e", "f")
+				.addTransition("e", new TextInput("x"), "e")
+
+				.build();
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final Determinizer determinizer = new Determinizer(automate, conf, Determinizer.DEFAULT_MAX_STATES);
+		final Automate deterministic = determinizer.determinize();
+		final Map<String, Set<State>> members = new HashMap<String, Set<State>>();
+		for (final Map.Entry<Set<State>, State> subsetState : determinizer.subsetStates.entrySet()) {
+			members.put(subsetState.getValue().getName(), subsetState.getKey());
+		}
+
+		final Input[] inputs = new Input[] { new TextInput("x"), new TextInput("x"), new TextInput("y"), new TextInput("x") };
+
+		final Execution execution = new Execution(automate, conf);
+		execution.start();
+		execution.update(inputs);
+		final List<String> expectedCalls = new ArrayList<String>(calls);
+		final List<Set<String>> expectedEndStates = getEndStateNames(execution.getEncounteredEndStates(), members, automate);
+		assertEquals(3, expectedEndStates.size());
+
+		final Execution[] executions = new Execution[] {
+				new Execution(deterministic, conf),
+				new CompiledExecution(CompiledAutomate.compile(automate, conf, Determinizer.DEFAULT_MAX_STATES), conf)
+		};
+
+		for (final Execution deterministicExecution : executions) {
+			calls.clear();
+			deterministicExecution.start();
+			deterministicExecution.update(inputs);
+
+			assertEquals(expectedCalls, calls);
+			assertEquals(expectedEndStates, getEndStateNames(deterministicExecution.getEncounteredEndStates(), members, automate));
+		}
+	}
+
+	@Test
+	public void shouldMoveToErrorStateWhenAllStatesAreInErrorState() {
+		final Automate deterministic = Determinizer.determinize(this.automate);
+		final Execution execution = new Execution(deterministic, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+
+		assertFalse(execution.update(new TextInput("c")));
+		assertEquals("error", execution.getCurrentStates().iterator().next().getName());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldThrowIfMaximumNumberOfStatesIsExceeded() {
+		Determinizer.determinize(this.automate, ExecutionConfiguration.getDefaultConfiguration(), 2);
+	}
+}
@@ -0,0 +1,88 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class ExecutionAllocationTest {
+
+	private static final int WARM_UP_STEPS = 200000;
+	private static final int MEASURED_STEPS = 100000;
+	private static final long MAX_MEASURING_BYTES = 1024;
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("0"), new TextInput("1"), new TextInput("0"), new TextInput("undefined") };
+
+	private com.sun.management.ThreadMXBean threadBean;
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+		this.threadBean = (com.sun.management.ThreadMXBean) bean;
+		assumeTrue(this.threadBean.isThreadAllocatedMemorySupported());
+		this.threadBean.setThreadAllocatedMemoryEnabled(true);
+
+		// Deterministic automate without end states so that no end state sets are recorded
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("pair")
+				.addState("nonPair")
+
+				.setErrorState("error")
+				.setStartState("pair")
+
+				.addTransition("pair", new TextInput("1"), "nonPair")
+				.addTransition("pair", new TextInput("0"), "pair")
+				.addTransition("nonPair", new TextInput("1"), "pair")
+				.addTransition("nonPair", new TextInput("0"), "nonPair")
+
+				.build();
+	}
+
+	@Test
+	public void shouldNotAllocateOnUpdatesOfDeterministicAutomate() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final Execution execution = new Execution(this.automate, conf);
+		execution.start();
+
+		this.run(execution, WARM_UP_STEPS);
+
+		final long threadId = Thread.currentThread().getId();
+		final long before = this.threadBean.getThreadAllocatedBytes(threadId);
+		this.run(execution, MEASURED_STEPS);
+		final long after = this.threadBean.getThreadAllocatedBytes(threadId);
+
+		// Measuring itself may allocate a few bytes but even one small object per update would exceed the bound
+		assertTrue("Allocated " + (after - before) + " bytes", after - before <= MAX_MEASURING_BYTES);
+	}
+
+	@Test
+	public void shouldGiveSameCurrentStatesAfterManyUpdates() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final Execution execution = new Execution(this.automate, conf);
+		execution.start();
+		this.run(execution, 3);
+
+		assertEquals(1, execution.getCurrentStates().size());
+		assertEquals("nonPair", execution.getCurrentStates().iterator().next().getName());
+	}
+
+	private void run(final Execution execution, final int steps) {
+		for (int i = 0; i < steps; i++) {
+			execution.update(INPUTS[i & 3]);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class ExecutionBatchUpdateTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("0"), new TextInput("1"), new TextInput("0"), new TextInput("undefined"), new TextInput("1") };
+
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("pair")
+				.addState("nonPair")
+
+				.setErrorState("error")
+				.setStartState("pair")
+
+				.addTransition("pair", new TextInput("1"), "nonPair")
+				.addTransition("pair", new TextInput("0"), "pair")
+				.addTransition("nonPair", new TextInput("1"), "pair")
+				.addTransition("nonPair", new TextInput("0"), "nonPair")
+
+				.build();
+	}
+
+	@Test
+	public void shouldReturnIndexOfInputWhichEndedExecution() {
+		assertEquals(3, this.startExecution().updateUntilEnd(INPUTS, 0, INPUTS.length));
+		assertEquals(3, this.startExecution().updateUntilEnd(Arrays.asList(INPUTS), 1, 4));
+		assertEquals(3, this.startExecution().updateUntilEnd(INPUTS, 0, 3));
+	}
+
+	@Test
+	public void shouldRecordResultOfEachUpdate() {
+		final BitSet results = this.startExecution().updateWithResults(INPUTS, 1, 3, null);
+		assertEquals(2, results.cardinality());
+		assertTrue(results.get(0));
+		assertTrue(results.get(1));
+		assertFalse(results.get(2));
+
+		final List<Input> inputs = Arrays.asList(INPUTS);
+		assertEquals(this.startExecution().update(inputs), Arrays.asList(true, true, true, false, false));
+		assertEquals(3, this.startExecution().updateWithResults(inputs, 0, inputs.size(), new BitSet()).cardinality());
+	}
+
+	@Test
+	public void shouldCountUpdatesWhichDidNotEndExecution() {
+		assertEquals(3, this.startExecution().updateAndCount(INPUTS, 0, INPUTS.length));
+		assertEquals(1, this.startExecution().updateAndCount(Arrays.asList(INPUTS), 4, 1));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void shouldThrowIfSliceDoesNotFitInInputs() {
+		this.startExecution().updateAndCount(INPUTS, 3, 3);
+	}
+
+	private Execution startExecution() {
+		final Execution execution = new Execution(this.automate, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+		return execution;
+	}
+}
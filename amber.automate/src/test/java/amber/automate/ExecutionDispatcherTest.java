@@ -0,0 +1,258 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class ExecutionDispatcherTest {
+
+	private static final int MAILBOXES = 20;
+	private static final int PRODUCERS = 4;
+	private static final int INPUTS_PER_PRODUCER = 2000;
+
+	private static Automate createAutomate() {
+		// Remembers the last two letters so that final state depends on the order of inputs
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.setErrorState("error");
+
+		final String[] states = new String[] { "aa", "ab", "ba", "bb" };
+		for (final String state : states) {
+			builder.addState(state);
+		}
+
+		builder.setStartState("aa").addEndState("ab");
+		for (final String state : states) {
+			builder.addTransition(state, new TextInput("a"), state.substring(1) + "a");
+			builder.addTransition(state, new TextInput("b"), state.substring(1) + "b");
+		}
+
+		return builder.build();
+	}
+
+	@Test
+	public void shouldUpdateEachExecutionInSubmissionOrder() throws InterruptedException {
+		final CompiledAutomate compiled = CompiledAutomate.compile(createAutomate());
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		// Listener records inputs of each execution. Calls for one execution are made one at a time.
+		final List<List<Input>> updates = new ArrayList<List<Input>>();
+		final List<Execution> executions = new ArrayList<Execution>();
+		final DispatchListener listener = new DispatchListener() {
+
+			@Override
+			public void onUpdate(final Execution execution, final Input input, final boolean result) {
+				updates.get(executions.indexOf(execution)).add(input);
+			}
+
+			@Override
+			public void onFailure(final Execution execution, final Input input, final RuntimeException exception) {
+				fail(exception.toString());
+			}
+		};
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		final ExecutionDispatcher dispatcher = new ExecutionDispatcher(executor, 16, listener);
+		final List<ExecutionDispatcher.Mailbox> mailboxes = new ArrayList<ExecutionDispatcher.Mailbox>();
+
+		for (int i = 0; i < MAILBOXES; i++) {
+			final CompiledExecution execution = new CompiledExecution(compiled, conf);
+			execution.start();
+			executions.add(execution);
+			updates.add(new ArrayList<Input>());
+			mailboxes.add(dispatcher.createMailbox(execution));
+		}
+
+		// Each producer sends letters and numbered inputs of its own to every mailbox
+		final Thread[] producers = new Thread[PRODUCERS];
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+
+			producers[p] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					final Random random = new Random(producer);
+
+					for (int i = 0; i < INPUTS_PER_PRODUCER; i++) {
+						final ExecutionDispatcher.Mailbox mailbox = mailboxes.get(random.nextInt(MAILBOXES));
+						mailbox.submit(new TextInput(producer + ":" + i));
+						mailbox.submit(new TextInput(random.nextBoolean() ? "a" : "b"));
+					}
+				}
+			});
+
+			producers[p].start();
+		}
+
+		for (final Thread producer : producers) {
+			producer.join();
+		}
+
+		final long total = 2L * PRODUCERS * INPUTS_PER_PRODUCER;
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (dispatcher.getProcessedInputCount() < total && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(total, dispatcher.getProcessedInputCount());
+		assertEquals(0, dispatcher.getQueuedInputCount());
+		assertEquals(0, dispatcher.getFailedUpdateCount());
+		assertTrue(dispatcher.getMaxQueueDepth() > 0);
+
+		for (int i = 0; i < MAILBOXES; i++) {
+			final List<Input> inputs = updates.get(i);
+			assertEquals(0, mailboxes.get(i).getQueueDepth());
+
+			// Used inputs are not kept reachable by the queue
+			assertNull(mailboxes.get(i).head.input);
+
+			// Inputs of each producer are in the order they were submitted
+			final int[] lastNumbers = new int[PRODUCERS];
+			Arrays.fill(lastNumbers, -1);
+
+			for (int j = 0; j < inputs.size(); j++) {
+				final String text = ((TextInput)inputs.get(j)).getText();
+
+				if (text.indexOf(':') > 0) {
+					final int producer = Integer.parseInt(text.substring(0, text.indexOf(':')));
+					final int number = Integer.parseInt(text.substring(text.indexOf(':') + 1));
+					assertTrue(number > lastNumbers[producer]);
+					lastNumbers[producer] = number;
+				}
+			}
+
+			// Execution ended where running the recorded inputs in order ends
+			final CompiledExecution expected = new CompiledExecution(compiled, conf);
+			expected.start();
+			for (final Input input : inputs) {
+				expected.update(input);
+			}
+
+			assertEquals(expected.getCurrentStates(), executions.get(i).getCurrentStates());
+			assertEquals(expected.getEncounteredEndStates().size(), executions.get(i).getEncounteredEndStates().size());
+		}
+	}
+
+	@Test
+	public void shouldReportFailedUpdates() throws InterruptedException {
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		final List<RuntimeException> failures = new ArrayList<RuntimeException>();
+
+		final ExecutionDispatcher dispatcher = new ExecutionDispatcher(executor, 1, new DispatchListener() {
+
+			@Override
+			public void onUpdate(final Execution execution, final Input input, final boolean result) {
+			}
+
+			@Override
+			public void onFailure(final Execution execution, final Input input, final RuntimeException exception) {
+				failures.add(exception);
+			}
+		});
+
+		// Execution which wasn't started fails on every update
+		final ExecutionDispatcher.Mailbox mailbox = dispatcher.createMailbox(new Execution(createAutomate(), new ExecutionConfiguration()));
+		mailbox.submit(new TextInput("a"));
+		mailbox.submit(new TextInput("b"));
+
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (dispatcher.getProcessedInputCount() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(2, dispatcher.getFailedUpdateCount());
+		assertEquals(2, failures.size());
+		assertTrue(failures.get(0) instanceof IllegalStateException);
+	}
+
+	@Test
+	public void shouldKeepDrainingAfterListenerThrowsError() throws InterruptedException {
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		final AtomicInteger errors = new AtomicInteger();
+
+		// Catches errors so that they don't end the thread of the executor
+		final Executor executor = new Executor() {
+
+			@Override
+			public void execute(final Runnable task) {
+				executorService.execute(new Runnable() {
+
+					@Override
+					public void run() {
+
+						try {
+							task.run();
+						}
+
+						catch (final Error error) {
+							errors.incrementAndGet();
+						}
+					}
+				});
+			}
+		};
+
+		final List<Input> updated = new ArrayList<Input>();
+		final ExecutionDispatcher dispatcher = new ExecutionDispatcher(executor, 16, new DispatchListener() {
+
+			@Override
+			public void onUpdate(final Execution execution, final Input input, final boolean result) {
+
+				if (input.equals(new TextInput("b"))) {
+					throw new AssertionError("listener failed");
+				}
+
+				updated.add(input);
+			}
+
+			@Override
+			public void onFailure(final Execution execution, final Input input, final RuntimeException exception) {
+			}
+		});
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		final Execution execution = new CompiledExecution(CompiledAutomate.compile(createAutomate()), conf);
+		execution.start();
+
+		final ExecutionDispatcher.Mailbox mailbox = dispatcher.createMailbox(execution);
+		for (final String text : new String[] { "a", "b", "a", "a" }) {
+			mailbox.submit(new TextInput(text));
+		}
+
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (dispatcher.getProcessedInputCount() < 4 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(4, dispatcher.getProcessedInputCount());
+		assertEquals(0, dispatcher.getQueuedInputCount());
+		assertEquals(0, mailbox.getQueueDepth());
+		assertEquals(1, errors.get());
+		assertEquals(3, updated.size());
+	}
+}
@@ -0,0 +1,213 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class ExecutionManagerTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("a"), new TextInput("b"), new TextInput("c") };
+
+	private static final int SESSIONS = 40;
+
+	private static Automate createDeterministicAutomate() {
+		// Ends after "ab" and fails on "c"
+		return AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", new TextInput("a"), "a")
+				.addTransition("start", new TextInput("b"), "start")
+				.addTransition("a", new TextInput("a"), "a")
+				.addTransition("a", new TextInput("b"), "found")
+				.addTransition("found", new TextInput("a"), "a")
+				.build();
+	}
+
+	private static Automate createNondeterministicAutomate() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.setErrorState("error")
+				.setStartState("start");
+
+		// Uses more than 64 states so that state sets span multiple words
+		for (int i = 0; i < 70; i++) {
+			builder.addState("s" + i);
+		}
+
+		builder.addTransition("start", EpsilonInput.getEpsilonInput(), "s0");
+		for (int i = 0; i < 69; i++) {
+			builder.addTransition("s" + i, new TextInput("a"), "s" + (i + 1), "s0");
+			builder.addTransition("s" + i, new TextInput("b"), "s" + (i + 1));
+
+			if (i % 10 == 9) {
+				builder.addEndState("s" + i);
+			}
+		}
+
+		return builder.build();
+	}
+
+	private static void assertSameAsExecutions(final Automate automate, final ExecutionConfiguration conf) {
+		final CompiledAutomate compiled = CompiledAutomate.compile(automate);
+		final ExecutionManager manager = new ExecutionManager(compiled, conf);
+		final Execution[] executions = new Execution[SESSIONS];
+		final int[] sessions = new int[SESSIONS];
+		final Random random = new Random(7);
+
+		for (int i = 0; i < SESSIONS; i++) {
+			executions[i] = compiled.isDeterministic() ? new CompiledExecution(compiled, conf) : new BitSetExecution(compiled, conf);
+			executions[i].start();
+			sessions[i] = manager.createSession();
+		}
+
+		assertEquals(SESSIONS, manager.getSessionCount());
+
+		for (int round = 0; round < 4000; round++) {
+			final int i = random.nextInt(SESSIONS);
+
+			// Sometimes replace session with a new one
+			if (random.nextInt(50) == 0) {
+				manager.closeSession(sessions[i]);
+				sessions[i] = manager.createSession();
+				executions[i].reset();
+				executions[i].getEncounteredEndStates().clear();
+				executions[i].start();
+				continue;
+			}
+
+			final Input input = INPUTS[random.nextInt(INPUTS.length)];
+			assertEquals(executions[i].update(input), manager.update(sessions[i], input));
+			assertEquals(executions[i].getCurrentStates(), manager.getCurrentStates(sessions[i]));
+			assertEquals(!executions[i].getEncounteredEndStates().isEmpty(), manager.hasEncounteredEndState(sessions[i]));
+			assertEquals(executions[i].isAtEnd(), manager.isAtEnd(sessions[i]));
+
+			if (executions[i].isAtEnd()) {
+				manager.restartSession(sessions[i]);
+				executions[i].reset();
+				executions[i].getEncounteredEndStates().clear();
+				executions[i].start();
+			}
+		}
+
+		assertEquals(SESSIONS, manager.getSessionCount());
+	}
+
+	@Test
+	public void shouldBehaveLikeCompiledExecution() {
+		assertSameAsExecutions(createDeterministicAutomate(), new ExecutionConfiguration());
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		conf.setExitWhenEndStateIsEncountered(true);
+		assertSameAsExecutions(createDeterministicAutomate(), conf);
+	}
+
+	@Test
+	public void shouldBehaveLikeBitSetExecution() {
+		assertSameAsExecutions(createNondeterministicAutomate(), new ExecutionConfiguration());
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		conf.setAllowToTransitToMultipleStates(false);
+		assertSameAsExecutions(createNondeterministicAutomate(), conf);
+	}
+
+	private static void assertSameAsSingleUpdates(final Automate automate, final ExecutionConfiguration conf) {
+		final CompiledAutomate compiled = CompiledAutomate.compile(automate);
+		final ExecutionManager manager = new ExecutionManager(compiled, conf);
+		final Execution[] executions = new Execution[SESSIONS];
+		final Random random = new Random(11);
+
+		for (int i = 0; i < SESSIONS; i++) {
+			executions[i] = compiled.isDeterministic() ? new CompiledExecution(compiled, conf) : new BitSetExecution(compiled, conf);
+			executions[i].start();
+			manager.createSession();
+		}
+
+		final int[] sessions = new int[1000];
+		final int[] inputIds = new int[sessions.length];
+		for (int i = 0; i < sessions.length; i++) {
+			sessions[i] = random.nextInt(SESSIONS);
+			inputIds[i] = random.nextInt(20) == 0 ? CompiledAutomate.UNKNOWN_INPUT : compiled.getInputId(INPUTS[random.nextInt(2)]);
+		}
+
+		final boolean[] endFlags = new boolean[sessions.length];
+		final int endCount = manager.updateAll(sessions, inputIds, 5, sessions.length - 10, endFlags);
+
+		// Executions add end states to encountered end states on each update which enters them
+		int expectedEndCount = 0;
+		for (int i = 5; i < sessions.length - 5; i++) {
+			final Execution execution = executions[sessions[i]];
+			final int encountered = execution.getEncounteredEndStates().size();
+			execution.update(inputIds[i]);
+
+			assertEquals(execution.getEncounteredEndStates().size() > encountered, endFlags[i]);
+			expectedEndCount += endFlags[i] ? 1 : 0;
+		}
+
+		assertEquals(expectedEndCount, endCount);
+		assertTrue(endCount > 0);
+
+		for (int session = 0; session < SESSIONS; session++) {
+			assertEquals(executions[session].getCurrentStates(), manager.getCurrentStates(session));
+			assertEquals(executions[session].isAtEnd(), manager.isAtEnd(session));
+		}
+	}
+
+	@Test
+	public void shouldUpdateBatchLikeSingleUpdates() {
+		assertSameAsSingleUpdates(createDeterministicAutomate(), new ExecutionConfiguration());
+		assertSameAsSingleUpdates(createNondeterministicAutomate(), new ExecutionConfiguration());
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		assertSameAsSingleUpdates(createDeterministicAutomate(), conf);
+		assertSameAsSingleUpdates(createNondeterministicAutomate(), conf);
+	}
+
+	@Test
+	public void shouldRememberLastEndStateAndReuseHandles() {
+		final CompiledAutomate compiled = CompiledAutomate.compile(createDeterministicAutomate());
+		final ExecutionManager manager = new ExecutionManager(compiled, new ExecutionConfiguration());
+		final int found = compiled.getStateId(compiled.getAutomate().getEndStates().iterator().next());
+
+		final int first = manager.createSession();
+		final int second = manager.createSession();
+		assertNotEquals(first, second);
+
+		assertTrue(manager.update(first, new TextInput("a")));
+		assertEquals(ExecutionManager.NO_END_STATE, manager.getLastEndStateId(first));
+		assertTrue(manager.update(first, new TextInput("b")));
+		assertEquals(found, manager.getLastEndStateId(first));
+		assertEquals(found, manager.getCurrentStateId(first));
+		assertEquals(compiled.getStartStateId(), manager.getCurrentStateId(second));
+
+		manager.closeSession(first);
+		assertFalse(manager.isOpen(first));
+		assertEquals(first, manager.createSession());
+		assertEquals(ExecutionManager.NO_END_STATE, manager.getLastEndStateId(first));
+
+		assertFalse(manager.update(second, new TextInput("c")));
+		assertTrue(manager.isCurrentState(second, compiled.getErrorStateId()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotUpdateClosedSession() {
+		final ExecutionManager manager = new ExecutionManager(CompiledAutomate.compile(createDeterministicAutomate()), new ExecutionConfiguration());
+		final int session = manager.createSession();
+		manager.closeSession(session);
+		manager.update(session, new TextInput("a"));
+	}
+}
@@ -0,0 +1,178 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.common.Callback;
+import amber.common.Pair;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.RangeInput;
+import amber.input.TextInput;
+
+public class FrozenAutomateTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("a"), new TextInput("b"), new TextInput("x"), new TextInput("?") };
+
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.setErrorState("error")
+				.setStartState("start");
+
+		for (int i = 0; i < 20; i++) {
+			builder.addState("s" + i);
+		}
+
+		builder.addTransition("start", EpsilonInput.getEpsilonInput(), "s0");
+		for (int i = 0; i < 19; i++) {
+			builder.addTransition("s" + i, new TextInput("a"), "s" + (i + 1), "s0");
+			builder.addTransition("s" + i, RangeInput.codePointRange('b', 'z'), "s" + (i + 1));
+
+			if (i % 5 == 4) {
+				builder.addEndState("s" + i);
+				builder.addTransition("s" + i, EpsilonInput.getEpsilonInput(), "s" + (i / 2));
+			}
+		}
+
+		this.automate = builder.build();
+	}
+
+	private List<Input> createInputs(final Random random) {
+		final List<Input> inputs = new ArrayList<Input>();
+
+		for (int i = 0; i < 30; i++) {
+			inputs.add(INPUTS[random.nextInt(INPUTS.length)]);
+		}
+
+		return inputs;
+	}
+
+	private static Execution run(final Automate automate, final List<Input> inputs) {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final Execution execution = new Execution(automate, conf);
+		execution.start();
+
+		for (final Input input : inputs) {
+			execution.update(input);
+		}
+
+		return execution;
+	}
+
+	@Test
+	public void shouldRunLikeOriginalFromManyThreads() throws Exception {
+		final FrozenAutomate frozen = this.automate.freeze();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+			for (int thread = 0; thread < 8; thread++) {
+				final Random random = new Random(thread);
+
+				futures.add(executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						for (int round = 0; round < 200; round++) {
+							final List<Input> inputs = FrozenAutomateTest.this.createInputs(random);
+
+							// Original automate stores lookups so it is used by one thread at a time
+							final Execution expected;
+							synchronized (FrozenAutomateTest.this) {
+								expected = FrozenAutomateTest.run(FrozenAutomateTest.this.automate, inputs);
+							}
+
+							final Execution execution = FrozenAutomateTest.run(frozen, inputs);
+							assertEquals(expected.getCurrentStates(), execution.getCurrentStates());
+							assertEquals(expected.getEncounteredEndStates(), execution.getEncounteredEndStates());
+						}
+					}
+				}));
+			}
+
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		}
+
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldCompileLikeOriginal() {
+		final CompiledAutomate compiled = CompiledAutomate.compile(this.automate);
+		final CompiledAutomate frozenCompiled = CompiledAutomate.compile(this.automate.freeze());
+
+		assertEquals(compiled.getStateCount(), frozenCompiled.getStateCount());
+		assertEquals(compiled.getInputCount(), frozenCompiled.getInputCount());
+		assertEquals(new HashSet<State>(this.automate.getEndStates()), frozenCompiled.getAutomate().getEndStates());
+	}
+
+	@Test
+	public void shouldNotSeeChangesOfOriginal() {
+		final FrozenAutomate frozen = this.automate.freeze();
+		final State start = this.automate.getStartState();
+
+		this.automate.getTransitionTable().addTransition(new Pair<State, Input>(start, new TextInput("new")), new HashSet<State>());
+
+		assertFalse(frozen.getTransitionTable().getInputs().contains(new TextInput("new")));
+		assertTrue(this.automate.getTransitionTable().getInputs().contains(new TextInput("new")));
+		assertSame(frozen, frozen.freeze());
+	}
+
+	@Test
+	public void shouldEqualOriginalStates() {
+		final FrozenAutomate frozen = this.automate.freeze();
+
+		assertEquals(this.automate.getStartState(), frozen.getStartState());
+		assertEquals(frozen.getStartState(), this.automate.getStartState());
+		assertEquals(this.automate.getTransitionTable().getStates(), frozen.getTransitionTable().getStates());
+		assertTrue(frozen.getStartState() instanceof FrozenState);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotAddTransitions() {
+		final FrozenAutomate frozen = this.automate.freeze();
+		frozen.getTransitionTable().addTransition(new Pair<State, Input>(frozen.getStartState(), new TextInput("new")), new HashSet<State>());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotChangeStartState() {
+		this.automate.freeze().setStartState(State.createState("s3"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotChangeCallbacks() {
+		this.automate.freeze().getErrorState().setOnEntryCallback(new Callback("callback") {
+
+			@Override
+			public void run() {
+			}
+		});
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void shouldNotChangeEndStates() {
+		this.automate.freeze().getEndStateNames().add("s0");
+	}
+}
@@ -0,0 +1,175 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.common.Pair;
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class InputAlphabetTest {
+
+	/**
+	 * Number of hashCode and equals calls made on counting states and inputs.
+	 */
+	private static int hashCalls;
+
+	private static class CountingState extends State {
+
+		public CountingState(final String name) {
+			super(name, null, null, null);
+		}
+
+		@Override
+		public int hashCode() {
+			hashCalls++;
+			return super.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			hashCalls++;
+			return super.equals(obj);
+		}
+	}
+
+	private static class CountingInput extends TextInput {
+
+		private static final long serialVersionUID = 1L;
+
+		public CountingInput(final String text) {
+			super(text);
+		}
+
+		@Override
+		public int hashCode() {
+			hashCalls++;
+			return super.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			hashCalls++;
+			return super.equals(obj);
+		}
+	}
+
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("b")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("b")
+				.addTransition("start", EpsilonInput.getEpsilonInput(), "a")
+				.addTransition("start", new TextInput("x"), "a", "b")
+				.addTransition("a", new TextInput("x"), "b")
+				.addTransition("a", new TextInput("y"), "a")
+				.build();
+	}
+
+	@Test
+	public void shouldNumberInputsDenselyWithoutEpsilon() {
+		final InputAlphabet alphabet = this.automate.getTransitionTable().getAlphabet();
+
+		assertEquals(2, alphabet.size());
+		assertEquals(InputAlphabet.UNKNOWN_SYMBOL, alphabet.getSymbolId(EpsilonInput.getEpsilonInput()));
+		assertEquals(InputAlphabet.UNKNOWN_SYMBOL, alphabet.getSymbolId(new TextInput("z")));
+
+		for (int symbolId = 0; symbolId < alphabet.size(); symbolId++) {
+			assertEquals(symbolId, alphabet.getSymbolId(alphabet.getInput(symbolId)));
+		}
+	}
+
+	@Test
+	public void shouldRebuildAlphabetWhenTransitionsChange() {
+		final TransitionTable table = this.automate.getTransitionTable();
+		assertSame(table.getAlphabet(), table.getAlphabet());
+
+		final State a = new State("a", null, null, null);
+		final State b = new State("b", null, null, null);
+		table.addTransition(new Pair<State, Input>(b, new TextInput("z")), new HashSet<State>(Arrays.asList(a)));
+		assertTrue(table.getAlphabet().contains(new TextInput("z")));
+	}
+
+	@Test
+	public void shouldUpdateWithSymbolIdsLikeWithInputs() {
+		final InputAlphabet alphabet = this.automate.getTransitionTable().getAlphabet();
+		final Input[] inputs = new Input[] { new TextInput("y"), new TextInput("x"), new TextInput("z"), new TextInput("x") };
+		final int[] symbolIds = alphabet.getSymbolIds(inputs);
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final CompiledAutomate compiled = CompiledAutomate.compile(this.automate, conf, Determinizer.DEFAULT_MAX_STATES);
+		final Execution[] executions = new Execution[] { new Execution(this.automate, conf), new LazyDfaExecution(this.automate, conf), new CompiledExecution(compiled, conf) };
+
+		final Execution reference = new Execution(this.automate, conf);
+		reference.start();
+		for (final Execution execution : executions) {
+			execution.start();
+		}
+
+		for (int i = 0; i < inputs.length; i++) {
+			final boolean expected = reference.update(inputs[i]);
+
+			for (final Execution execution : executions) {
+				assertEquals(expected, execution.update(symbolIds[i]));
+			}
+		}
+
+		// Compiled execution runs on determinized automate which has states of its own
+		assertEquals(reference.getEncounteredEndStates(), executions[0].getEncounteredEndStates());
+		assertEquals(reference.getEncounteredEndStates(), executions[1].getEncounteredEndStates());
+		assertEquals(reference.getEncounteredEndStates().size(), executions[2].getEncounteredEndStates().size());
+	}
+
+	@Test
+	public void shouldNotHashStatesOrInputsOnSteadyStateUpdatesWithSymbolIds() {
+		// Nondeterministic automate without end states so that no end state sets are built
+		final Automate countingAutomate = AutomateBuilder.createAutomateBuilder()
+				.addState(new CountingState("error"))
+				.addState(new CountingState("start"))
+				.addState(new CountingState("a"))
+				.addState(new CountingState("b"))
+				.setErrorState("error")
+				.setStartState("start")
+				.addTransition("start", EpsilonInput.getEpsilonInput(), "a")
+				.addTransition("start", new CountingInput("x"), "a", "b")
+				.addTransition("a", new CountingInput("x"), "b", "start")
+				.addTransition("b", new CountingInput("y"), "a")
+				.build();
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final int[] symbolIds = countingAutomate.getTransitionTable().getAlphabet().getSymbolIds(new Input[] { new CountingInput("x"), new CountingInput("y") });
+		final Execution execution = new Execution(countingAutomate, conf);
+		final Execution reference = new Execution(countingAutomate, conf);
+		execution.start();
+		reference.start();
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(reference.update(new CountingInput(i % 3 == 0 ? "y" : "x")), execution.update(symbolIds[i % 3 == 0 ? 1 : 0]));
+			assertEquals(reference.getCurrentStates(), execution.getCurrentStates());
+		}
+
+		hashCalls = 0;
+		for (int i = 0; i < 1000; i++) {
+			execution.update(symbolIds[i % 3 == 0 ? 1 : 0]);
+		}
+
+		assertEquals(0, hashCalls);
+	}
+}
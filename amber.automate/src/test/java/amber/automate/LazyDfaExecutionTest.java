@@ -0,0 +1,79 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.EpsilonInput;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class LazyDfaExecutionTest {
+
+	private static final Input[] INPUTS = new Input[] { new TextInput("a"), new TextInput("b") };
+
+	private Automate automate;
+
+	@Before
+	public void setup() {
+		// Recognizes inputs which have "a" as third to last input
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("loop")
+				.addState("first")
+				.addState("second")
+				.addState("end")
+
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("end")
+
+				.addTransition("start", EpsilonInput.getEpsilonInput(), "loop")
+				.addTransition("loop", new TextInput("a"), "loop", "first")
+				.addTransition("loop", new TextInput("b"), "loop")
+				.addTransition("first", new TextInput("a"), "second")
+				.addTransition("first", new TextInput("b"), "second")
+				.addTransition("second", new TextInput("a"), "end")
+				.addTransition("second", new TextInput("b"), "end")
+
+				.build();
+	}
+
+	@Test
+	public void shouldBehaveLikeExecutionAndHitCache() {
+		final LazyDfaExecution lazyExecution = this.assertSameAsExecution(LazyDfaExecution.DEFAULT_MAX_CACHED_STATES);
+
+		assertEquals(0, lazyExecution.getCacheFlushes());
+		assertTrue(lazyExecution.getCacheHits() > lazyExecution.getCacheMisses());
+	}
+
+	@Test
+	public void shouldFlushCacheWhenFull() {
+		final LazyDfaExecution lazyExecution = this.assertSameAsExecution(2);
+
+		assertTrue(lazyExecution.getCacheFlushes() > 0);
+		assertTrue(lazyExecution.getCachedStateCount() <= 2);
+	}
+
+	private LazyDfaExecution assertSameAsExecution(final int maxCachedStates) {
+		final Random random = new Random(3);
+		final Execution execution = new Execution(this.automate, ExecutionConfiguration.getDefaultConfiguration());
+		final LazyDfaExecution lazyExecution = new LazyDfaExecution(this.automate, ExecutionConfiguration.getDefaultConfiguration(), maxCachedStates);
+		execution.start();
+		lazyExecution.start();
+
+		for (int i = 0; i < 500; i++) {
+			final Input input = INPUTS[random.nextInt(INPUTS.length)];
+			assertEquals(execution.update(input), lazyExecution.update(input));
+			assertEquals(execution.getCurrentStates(), lazyExecution.getCurrentStates());
+			assertEquals(execution.getEncounteredEndStates().size(), lazyExecution.getEncounteredEndStates().size());
+		}
+
+		assertFalse(lazyExecution.update(new TextInput("undefined")));
+		return lazyExecution;
+	}
+}
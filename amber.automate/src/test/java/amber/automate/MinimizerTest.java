@@ -0,0 +1,100 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import amber.common.Callback;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class MinimizerTest {
+
+	private static final Input ZERO = new TextInput("0");
+	private static final Input ONE = new TextInput("1");
+
+	@Test
+	public void shouldMergeEquivalentStates() {
+		// Parity automate where both parity states have been split in two
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("pair1")
+				.addState("pair2")
+				.addState("nonPair1")
+				.addState("nonPair2")
+
+				.setErrorState("error")
+				.setStartState("pair1")
+				.addEndState("nonPair1")
+				.addEndState("nonPair2")
+
+				.addTransition("pair1", ZERO, "pair2")
+				.addTransition("pair1", ONE, "nonPair1")
+				.addTransition("pair2", ZERO, "pair1")
+				.addTransition("pair2", ONE, "nonPair2")
+				.addTransition("nonPair1", ZERO, "nonPair2")
+				.addTransition("nonPair1", ONE, "pair2")
+				.addTransition("nonPair2", ZERO, "nonPair1")
+				.addTransition("nonPair2", ONE, "pair1")
+
+				.build();
+
+		final MinimizationResult result = automate.minimize();
+		assertEquals(5, result.getOriginalStateCount());
+		assertEquals(3, result.getStateCount());
+		assertEquals(2, result.getRemovedStateCount());
+
+		final Execution execution = new Execution(result.getAutomate(), ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+		execution.update(ONE, ZERO, ZERO, ONE, ONE);
+		assertTrue(result.getAutomate().getEndStateNames().contains(execution.getCurrentStates().iterator().next().getName()));
+	}
+
+	@Test
+	public void shouldNotMergeStatesWithDifferentCallbacks() {
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState(State.createState("a", this.createCallback("a")))
+				.addState(State.createState("b", this.createCallback("b")))
+
+				.setErrorState("error")
+				.setStartState("start")
+
+				.addTransition("start", ZERO, "a")
+				.addTransition("start", ONE, "b")
+
+				.build();
+
+		assertEquals(0, automate.minimize().getRemovedStateCount());
+	}
+
+	@Test
+	public void shouldNotMergeStatesWithDifferentMissingTransitions() {
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("b")
+
+				.setErrorState("error")
+				.setStartState("start")
+
+				.addTransition("start", ZERO, "a")
+				.addTransition("start", ONE, "b")
+				.addTransition("a", ZERO, "a")
+
+				.build();
+
+		assertEquals(0, automate.minimize().getRemovedStateCount());
+	}
+
+	private Callback createCallback(final String name) {
+		return new Callback(name) {
+
+			@Override
+			public void run() {
+			}
+		};
+	}
+}
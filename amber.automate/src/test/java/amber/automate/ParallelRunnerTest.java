@@ -0,0 +1,188 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.ByteInput;
+
+public class ParallelRunnerTest {
+
+	private static final int STATES = 12;
+	private static final int LENGTH = 5000;
+
+	private ForkJoinPool pool;
+	private CompiledAutomate compiled;
+	private CompiledAutomate startEndCompiled;
+	private byte[] bytes;
+
+	@Before
+	public void setup() {
+		this.pool = new ForkJoinPool(4);
+
+		// Random deterministic automate over bytes 0 ... 3 with some missing transitions
+		final Random random = new Random(19);
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder().addState("error");
+
+		for (int state = 0; state < STATES; state++) {
+			builder.addState("s" + state);
+		}
+
+		for (int state = 0; state < STATES; state++) {
+
+			for (int input = 0; input < 4; input++) {
+
+				if (random.nextInt(10) > 0) {
+					builder.addTransition("s" + state, new ByteInput(input), "s" + random.nextInt(STATES));
+				}
+			}
+		}
+
+		this.compiled = CompiledAutomate.compile(builder.setStartState("s0").setErrorState("error").addEndState("s5").build());
+		this.startEndCompiled = CompiledAutomate.compile(builder.addEndState("s0").build());
+
+		this.bytes = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			this.bytes[i] = (byte)random.nextInt(4);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	public void shouldGiveSameResultAsSequentialExecution() {
+		this.assertSameAsSequentialExecution(this.compiled);
+	}
+
+	@Test
+	public void shouldGiveSameResultAsSequentialExecutionWhenStartStateIsEndState() {
+		this.assertSameAsSequentialExecution(this.startEndCompiled);
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setExitWhenEndStateIsEncountered(true);
+
+		final ParallelRunner.Result result = new ParallelRunner(this.startEndCompiled, conf, this.pool, 16).run(ByteBuffer.wrap(this.bytes));
+		assertEquals("s0", result.getFinalState().getName());
+		assertEquals(ParallelRunner.BEFORE_FIRST_INPUT, result.getFirstEndPosition());
+		assertTrue(result.isAtEnd());
+	}
+
+	private void assertSameAsSequentialExecution(final CompiledAutomate compiled) {
+
+		for (int mode = 0; mode < 4; mode++) {
+			final ExecutionConfiguration conf = new ExecutionConfiguration();
+			conf.setAllowToStayInStateOnUpdate((mode & 1) != 0);
+			conf.setExitWhenEndStateIsEncountered((mode & 2) != 0);
+
+			final CompiledExecution execution = new CompiledExecution(compiled, conf);
+			final boolean started = execution.start();
+
+			// End state entered on start is before any input
+			long firstEnd = compiled.isEndState(compiled.getStartStateId()) ? ParallelRunner.BEFORE_FIRST_INPUT : -1;
+			for (int i = 0; i < LENGTH && started; i++) {
+				final int encounteredBefore = execution.getEncounteredEndStates().size();
+				final boolean running = execution.update(compiled.getInputId(new ByteInput(this.bytes[i])));
+
+				if (firstEnd == -1 && execution.getEncounteredEndStates().size() > encounteredBefore) {
+					firstEnd = i;
+				}
+
+				if (!running) {
+					break;
+				}
+			}
+
+			final ParallelRunner runner = new ParallelRunner(compiled, conf, this.pool, 16);
+			final ParallelRunner.Result result = runner.run(ByteBuffer.wrap(this.bytes));
+
+			assertEquals("mode " + mode, execution.getCurrentStateId(), result.getFinalStateId());
+			assertEquals("mode " + mode, firstEnd, result.getFirstEndPosition());
+			assertEquals("mode " + mode, execution.isAtEnd(), result.isAtEnd());
+		}
+	}
+
+	@Test
+	public void shouldRunInputIdsFromOffset() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		final int[] inputIds = new int[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			inputIds[i] = this.compiled.getInputId(new ByteInput(this.bytes[i]));
+		}
+
+		final CompiledExecution execution = new CompiledExecution(this.compiled, conf);
+		execution.start();
+		for (int i = 100; i < LENGTH; i++) {
+			execution.update(inputIds[i]);
+		}
+
+		final ParallelRunner.Result result = new ParallelRunner(this.compiled, conf, this.pool, 64).run(inputIds, 100, LENGTH - 100);
+		assertEquals(execution.getCurrentState(), result.getFinalState());
+	}
+
+	@Test
+	public void shouldRunFileLikeBuffer() throws IOException {
+		final File file = File.createTempFile("amber", ".bin");
+		file.deleteOnExit();
+
+		final FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(this.bytes);
+		}
+
+		finally {
+			output.close();
+		}
+
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		final ParallelRunner runner = new ParallelRunner(this.compiled, conf, this.pool, 16);
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+			final ByteBuffer buffer = ByteBuffer.wrap(this.bytes);
+			((Buffer)buffer).position(100);
+
+			final ParallelRunner.Result expected = runner.run(buffer);
+			final ParallelRunner.Result result = runner.run(channel, 100, LENGTH - 100);
+
+			assertEquals(expected.getFinalStateId(), result.getFinalStateId());
+			assertEquals(expected.getFirstEndPosition(), result.getFirstEndPosition());
+			assertEquals(expected.isAtEnd(), result.isAtEnd());
+		}
+
+		finally {
+			randomAccessFile.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldThrowIOExceptionOfChunks() throws IOException {
+		final File file = File.createTempFile("amber", ".bin");
+		file.deleteOnExit();
+
+		// Mapping fails in every chunk since channel is closed
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		final FileChannel channel = randomAccessFile.getChannel();
+		randomAccessFile.close();
+
+		new ParallelRunner(this.compiled, new ExecutionConfiguration(), this.pool, 16).run(channel, 0, LENGTH);
+	}
+}
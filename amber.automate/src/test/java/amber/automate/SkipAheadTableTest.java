@@ -0,0 +1,258 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import amber.input.ByteInput;
+import amber.input.RangeInput;
+import amber.input.TextInput;
+
+public class SkipAheadTableTest {
+
+	private static final byte[] SPECIAL = new byte[] { '#', '\n', '\r', ';', '"', 0 };
+
+	/**
+	 * Skips comments from # to the end of line using ranges so that every input has a transition.
+	 */
+	private static Automate createRangeAutomate() {
+		return AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("code")
+				.addState("comment")
+				.addState("line")
+				.setErrorState("error")
+				.setStartState("code")
+				.addEndState("line")
+				.addTransition("code", new ByteInput('#'), "comment")
+				.addTransition("code", RangeInput.byteRange(0, '#' - 1), "code")
+				.addTransition("code", RangeInput.byteRange('#' + 1, 255), "code")
+				.addTransition("code", new TextInput("#"), "comment")
+				.addTransition("code", RangeInput.codePointRange(0, '#' - 1), "code")
+				.addTransition("code", RangeInput.codePointRange('#' + 1, Character.MAX_VALUE), "code")
+				.addTransition("comment", new ByteInput('\n'), "line")
+				.addTransition("comment", RangeInput.byteRange(0, '\n' - 1), "comment")
+				.addTransition("comment", RangeInput.byteRange('\n' + 1, 255), "comment")
+				.addTransition("comment", new TextInput("\n"), "line")
+				.addTransition("comment", RangeInput.codePointRange(0, '\n' - 1), "comment")
+				.addTransition("comment", RangeInput.codePointRange('\n' + 1, Character.MAX_VALUE), "comment")
+				.addTransition("line", new ByteInput('#'), "comment")
+				.addTransition("line", RangeInput.byteRange(0, '#' - 1), "code")
+				.addTransition("line", RangeInput.byteRange('#' + 1, 255), "code")
+				.addTransition("line", new TextInput("#"), "comment")
+				.addTransition("line", RangeInput.codePointRange(0, '#' - 1), "code")
+				.addTransition("line", RangeInput.codePointRange('#' + 1, Character.MAX_VALUE), "code")
+				.build();
+	}
+
+	/**
+	 * Has only transitions leaving states so that execution stays in them when staying is allowed.
+	 * Code is left with five bytes and comment with two.
+	 */
+	private static Automate createStayingAutomate() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("code")
+				.addState("comment")
+				.addState("line")
+				.addState("other")
+				.setErrorState("error")
+				.setStartState("code")
+				.addEndState("line")
+				.addTransition("code", new ByteInput('#'), "comment")
+				.addTransition("code", new TextInput("#"), "comment")
+				.addTransition("comment", new ByteInput('\n'), "line")
+				.addTransition("comment", new ByteInput('\r'), "line")
+				.addTransition("comment", new TextInput("\n"), "line")
+				.addTransition("comment", new TextInput("\r"), "line")
+				.addTransition("line", new ByteInput('#'), "comment")
+				.addTransition("line", new TextInput("#"), "comment");
+
+		for (final byte value : new byte[] { ';', '"', 0, '\r' }) {
+			builder.addTransition("code", new ByteInput(value), "other");
+			builder.addTransition("code", new TextInput(String.valueOf((char)value)), "other");
+			builder.addTransition("other", new ByteInput(value), "code");
+			builder.addTransition("other", new TextInput(String.valueOf((char)value)), "code");
+		}
+
+		return builder.build();
+	}
+
+	private static byte[] createBytes(final Random random, final int length) {
+		final byte[] bytes = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bytes[i] = random.nextInt(12) == 0 ? SPECIAL[random.nextInt(SPECIAL.length)] : (byte)('a' + random.nextInt(26));
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Updates execution one byte at a time and returns index after the last byte used.
+	 */
+	private static int stepBytes(final CompiledExecution execution, final byte[] bytes, final int from, final int to) {
+		final InputAlphabet alphabet = execution.getAlphabet();
+
+		for (int i = from; i < to; i++) {
+			if (!execution.update(alphabet.getByteSymbolId(bytes[i]))) {
+				return i + 1;
+			}
+		}
+
+		return to;
+	}
+
+	private static void assertSameAsStepping(final Automate automate, final ExecutionConfiguration conf) {
+		final CompiledAutomate compiled = CompiledAutomate.compile(automate);
+		final Random random = new Random(42);
+
+		for (int round = 0; round < 200; round++) {
+			final byte[] bytes = createBytes(random, random.nextInt(100));
+			final int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+			final int to = from + random.nextInt(bytes.length - from + 1);
+
+			final CompiledExecution expected = new CompiledExecution(compiled, conf);
+			expected.start();
+			final int expectedPosition = stepBytes(expected, bytes, from, to);
+
+			// Heap and direct buffers with both byte orders
+			for (int kind = 0; kind < 4; kind++) {
+				final ByteBuffer buffer = kind < 2 ? ByteBuffer.wrap(bytes) : ByteBuffer.allocateDirect(bytes.length);
+
+				if (kind >= 2) {
+					buffer.put(bytes);
+				}
+
+				buffer.order(kind % 2 == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+				buffer.limit(to);
+				buffer.position(from);
+
+				final CompiledExecution execution = new CompiledExecution(compiled, conf);
+				execution.start();
+
+				assertEquals(!expected.isAtEnd(), execution.update(buffer));
+				assertEquals(expected.getCurrentStateId(), execution.getCurrentStateId());
+				assertEquals(expected.getEncounteredEndStates(), execution.getEncounteredEndStates());
+				assertEquals(expectedPosition, buffer.position());
+			}
+
+			// Characters from a string and from a builder
+			final String text = new String(bytes, from, to - from, StandardCharsets.ISO_8859_1);
+			for (final CharSequence sequence : new CharSequence[] { text, new StringBuilder(text) }) {
+				final CompiledExecution execution = new CompiledExecution(compiled, conf);
+				execution.start();
+
+				final int end = execution.updateUntilEnd(sequence, 0, sequence.length());
+				assertEquals(expected.getCurrentStateId(), execution.getCurrentStateId());
+				assertEquals(expected.getEncounteredEndStates(), execution.getEncounteredEndStates());
+				assertEquals(expectedPosition - from - (expected.isAtEnd() ? 1 : 0), end);
+
+				// Updating with text goes on after end is reached
+				final CompiledExecution stepped = new CompiledExecution(compiled, conf);
+				stepped.start();
+				boolean result = !stepped.isAtEnd();
+				for (int i = 0; i < sequence.length(); i++) {
+					result = stepped.update(compiled.getAlphabet().getCharSymbolId(sequence.charAt(i)));
+				}
+
+				final CompiledExecution updated = new CompiledExecution(compiled, conf);
+				updated.start();
+				assertEquals(result, updated.update(sequence, 0, sequence.length()));
+				assertEquals(stepped.getCurrentStateId(), updated.getCurrentStateId());
+				assertEquals(stepped.getEncounteredEndStates(), updated.getEncounteredEndStates());
+			}
+		}
+	}
+
+	@Test
+	public void shouldFindSkippableStates() {
+		final CompiledAutomate compiled = CompiledAutomate.compile(createRangeAutomate());
+		final SkipAheadTable table = compiled.getSkipAheadTable(false);
+
+		final int code = compiled.getStateId(compiled.getAutomate().getStartState());
+		final int line = compiled.getStateId(compiled.getAutomate().getEndStates().iterator().next());
+		final int comment = compiled.getTransition(code, compiled.getAlphabet().getByteSymbolId((byte)'#'));
+
+		assertTrue(table.canSkipBytes(code));
+		assertTrue(table.canSkipChars(comment));
+		assertFalse(table.canSkipBytes(line));
+		assertFalse(table.canSkipBytes(compiled.getErrorStateId()));
+
+		final ByteBuffer buffer = ByteBuffer.wrap("abcdefghijk\nlm".getBytes(StandardCharsets.ISO_8859_1));
+		assertEquals(11, table.skipBytes(comment, buffer, 0, buffer.limit()));
+		assertEquals(11, table.skipBytes(comment, buffer, 3, buffer.limit()));
+		assertEquals(10, table.skipBytes(comment, buffer, 3, 10));
+		assertEquals(11, table.skipChars(comment, "abcdefghijk\nlm", 2, 14));
+		assertEquals(9, table.skipChars(comment, "abcdefghijk\nlm", 2, 9));
+
+		// Without ranges missing transitions lead to error state so only staying execution can skip
+		final CompiledAutomate staying = CompiledAutomate.compile(createStayingAutomate());
+		assertFalse(staying.getSkipAheadTable(false).canSkipBytes(staying.getStartStateId()));
+		assertTrue(staying.getSkipAheadTable(true).canSkipBytes(staying.getStartStateId()));
+		assertFalse(staying.getSkipAheadTable(true).canSkipChars(staying.getStartStateId()));
+	}
+
+	@Test
+	public void shouldGiveSameResultAsSteppingWhenGoingToErrorState() {
+		assertSameAsStepping(createRangeAutomate(), new ExecutionConfiguration());
+	}
+
+	@Test
+	public void shouldGiveSameResultAsSteppingWhenStaying() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+
+		assertSameAsStepping(createStayingAutomate(), conf);
+	}
+
+	@Test
+	public void shouldGiveSameResultAsSteppingWhenExitingAtEnd() {
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToStayInStateOnUpdate(true);
+		conf.setExitWhenEndStateIsEncountered(true);
+
+		assertSameAsStepping(createStayingAutomate(), conf);
+		assertSameAsStepping(createRangeAutomate(), conf);
+	}
+
+	@Test
+	public void shouldGiveSameTableToAllThreads() throws Exception {
+		final CompiledAutomate compiled = CompiledAutomate.compile(createRangeAutomate());
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			final Future<?>[] tables = new Future<?>[8];
+			for (int i = 0; i < tables.length; i++) {
+				final boolean allowToStay = i % 2 == 0;
+
+				tables[i] = executor.submit(new Callable<SkipAheadTable>() {
+
+					@Override
+					public SkipAheadTable call() {
+						return compiled.getSkipAheadTable(allowToStay);
+					}
+				});
+			}
+
+			for (int i = 0; i < tables.length; i++) {
+				assertSame(compiled.getSkipAheadTable(i % 2 == 0), tables[i].get());
+			}
+
+			assertNotSame(compiled.getSkipAheadTable(true), compiled.getSkipAheadTable(false));
+		}
+
+		finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.ByteInput;
+import amber.input.TextInput;
+
+public class StreamFeedTest {
+
+	// Text has a supplementary code point which is a surrogate pair in UTF-16. Its characters are used one at a time.
+	private static final String CLEF = new String(Character.toChars(0x1D11E));
+	private static final String HIGH = CLEF.substring(0, 1);
+	private static final String LOW = CLEF.substring(1);
+	private static final String TEXT = "aab" + CLEF + "abbba" + CLEF + "b";
+
+	private Automate automate;
+	private ExecutionConfiguration conf;
+
+	@Before
+	public void setup() {
+		// Counts parity of b:s and ends on the second character of a clef after odd number of them
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("even")
+				.addState("odd")
+				.addState("oddHigh")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("even")
+				.addEndState("found")
+				.addTransition("even", new TextInput("a"), "even")
+				.addTransition("even", new TextInput("b"), "odd")
+				.addTransition("even", new TextInput(HIGH), "even")
+				.addTransition("even", new TextInput(LOW), "even")
+				.addTransition("odd", new TextInput("a"), "odd")
+				.addTransition("odd", new TextInput("b"), "even")
+				.addTransition("odd", new TextInput(HIGH), "oddHigh")
+				.addTransition("oddHigh", new TextInput(LOW), "found")
+				.addTransition("found", new TextInput("a"), "even")
+				.addTransition("found", new TextInput("b"), "odd")
+				.addTransition("found", new TextInput(HIGH), "even")
+				.build();
+
+		this.conf = new ExecutionConfiguration();
+	}
+
+	@Test
+	public void shouldGiveSameResultWithAnyChunkSize() throws IOException {
+		// Surrogate pairs split between chunks give the same result as updating with the whole text
+		final Execution expected = new Execution(this.automate, this.conf);
+		expected.run(TEXT);
+		assertFalse(expected.getEncounteredEndStates().isEmpty());
+
+		for (int bufferSize = 1; bufferSize <= TEXT.length() + 1; bufferSize++) {
+			final Execution execution = new Execution(this.automate, this.conf);
+			execution.start();
+
+			final StreamFeed feed = new StreamFeed(execution, bufferSize);
+			assertTrue(feed.feed(new StringReader(TEXT)));
+
+			assertEquals(TEXT.length(), feed.getPosition());
+			assertEquals(expected.getCurrentStates(), execution.getCurrentStates());
+			assertEquals(expected.getEncounteredEndStates(), execution.getEncounteredEndStates());
+		}
+	}
+
+	@Test
+	public void shouldStopAtEnd() throws IOException {
+		this.conf.setExitWhenEndStateIsEncountered(true);
+
+		final Execution execution = new Execution(this.automate, this.conf);
+		execution.start();
+
+		final StreamFeed feed = new StreamFeed(execution, 4);
+		assertFalse(feed.feed(new StringReader(TEXT)));
+		assertEquals(TEXT.indexOf(CLEF) + 2, feed.getPosition());
+		assertFalse(feed.feed(new StringReader("ab")));
+	}
+
+	@Test
+	public void shouldFeedBytesFromStreamsAndChannels() throws IOException {
+		final Automate byteAutomate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", new ByteInput(7), "found")
+				.build();
+
+		final ExecutionConfiguration byteConf = new ExecutionConfiguration();
+		byteConf.setAllowToStayInStateOnUpdate(true);
+		byteConf.setExitWhenEndStateIsEncountered(true);
+
+		final byte[] bytes = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+		final Execution streamExecution = new Execution(byteAutomate, byteConf);
+		streamExecution.start();
+		final StreamFeed streamFeed = new StreamFeed(streamExecution, 2);
+		assertFalse(streamFeed.feed(new ByteArrayInputStream(bytes)));
+		assertEquals(7, streamFeed.getPosition());
+
+		final Execution channelExecution = new Execution(byteAutomate, byteConf);
+		channelExecution.start();
+		final StreamFeed channelFeed = new StreamFeed(channelExecution, 3);
+		assertTrue(channelFeed.feed(Channels.newChannel(new ByteArrayInputStream(bytes, 0, 5))));
+		assertEquals(5, channelFeed.getPosition());
+		assertFalse(channelFeed.feed(Channels.newChannel(new ByteArrayInputStream(bytes, 5, 4))));
+		assertEquals(7, channelFeed.getPosition());
+	}
+}
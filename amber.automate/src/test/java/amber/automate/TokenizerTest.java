@@ -0,0 +1,180 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.input.RangeInput;
+import amber.input.TextInput;
+
+public class TokenizerTest {
+
+	private static final String TEXT = "if iff 12x?";
+
+	private Tokenizer tokenizer;
+
+	@Before
+	public void setup() {
+		// Identifiers, numbers, spaces and keyword if which is also an identifier
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("id")
+				.addState("i")
+				.addState("if")
+				.addState("number")
+				.addState("space")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("id")
+				.addEndState("if")
+				.addEndState("number")
+				.addEndState("space")
+				.addTransition("start", RangeInput.codePointRange('a', 'z'), "id")
+				.addTransition("id", RangeInput.codePointRange('a', 'z'), "id")
+				.addTransition("start", new TextInput("i"), "i")
+				.addTransition("i", new TextInput("f"), "if")
+				.addTransition("start", RangeInput.codePointRange('0', '9'), "number")
+				.addTransition("number", RangeInput.codePointRange('0', '9'), "number")
+				.addTransition("start", new TextInput(" "), "space")
+				.build();
+
+		this.tokenizer = Tokenizer.createTokenizer(automate);
+	}
+
+	@Test
+	public void shouldSplitTextIntoLongestTokens() {
+		final List<String> tokens = new ArrayList<String>();
+		assertEquals(TEXT.length(), this.tokenizer.tokenize(TEXT, 0, TEXT.length(), collect(this.tokenizer, TEXT, tokens)));
+
+		assertEquals("[{id,if}:if, space: , id:iff, space: , number:12, id:x, none:?]", tokens.toString());
+	}
+
+	@Test
+	public void shouldBacktrackToLastEndState() {
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("ab")
+				.addState("abc")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("a")
+				.addEndState("abc")
+				.addTransition("start", new TextInput("a"), "a")
+				.addTransition("a", new TextInput("b"), "ab")
+				.addTransition("ab", new TextInput("c"), "abc")
+				.build();
+
+		final String text = "abcaba";
+		final List<String> tokens = new ArrayList<String>();
+		final Tokenizer backtracking = new Tokenizer(CompiledAutomate.compile(automate));
+		backtracking.tokenize(text, 0, text.length(), collect(backtracking, text, tokens));
+
+		assertEquals("[abc:abc, a:a, none:b, a:a]", tokens.toString());
+	}
+
+	@Test
+	public void shouldGiveSameTokensFromReader() throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			builder.append(TEXT).append(' ');
+		}
+
+		// Token longer than the initial buffer must also fit
+		for (int i = 0; i < Tokenizer.INITIAL_BUFFER_SIZE * 2; i++) {
+			builder.append('z');
+		}
+
+		final String text = builder.toString();
+
+		final List<String> expected = new ArrayList<String>();
+		this.tokenizer.tokenize(text, 0, text.length(), collect(this.tokenizer, text, expected));
+
+		final List<String> tokens = new ArrayList<String>();
+		assertEquals(text.length(), this.tokenizer.tokenize(new StringReader(text), collect(this.tokenizer, text, tokens)));
+		assertEquals(expected, tokens);
+	}
+
+	@Test
+	public void shouldStopScanningInStatesWhichCantReachEndState() throws IOException {
+		// Complete automate where inputs which can't continue a token go to a sink state instead of the error state
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("sink")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("a")
+				.addTransition("start", new TextInput("a"), "a")
+				.addTransition("start", new TextInput("b"), "sink")
+				.addTransition("a", new TextInput("a"), "sink")
+				.addTransition("a", new TextInput("b"), "sink")
+				.addTransition("sink", new TextInput("a"), "sink")
+				.addTransition("sink", new TextInput("b"), "sink")
+				.build();
+
+		final int[] steps = new int[1];
+		final Tokenizer counting = new Tokenizer(CompiledAutomate.compile(automate)) {
+
+			@Override
+			protected int next(final int state, final int inputId) {
+				steps[0]++;
+				return super.next(state, inputId);
+			}
+		};
+
+		final StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < Tokenizer.INITIAL_BUFFER_SIZE * 4; i++) {
+			builder.append(i % 4 == 3 ? 'b' : 'a');
+		}
+
+		final String text = builder.toString();
+		final List<String> tokens = new ArrayList<String>();
+		counting.tokenize(text, 0, text.length(), collect(counting, text, tokens));
+
+		assertEquals(text.length(), tokens.size());
+		assertEquals("[a:a, a:a, a:a, none:b]", tokens.subList(0, 4).toString());
+		assertTrue(steps[0] <= 2 * text.length());
+
+		// Buffer doesn't grow with the remaining input
+		final List<String> readerTokens = new ArrayList<String>();
+		counting.tokenize(new StringReader(text), collect(counting, text, readerTokens));
+
+		assertEquals(tokens, readerTokens);
+		assertEquals(Tokenizer.INITIAL_BUFFER_SIZE, counting.buffer.length);
+	}
+
+	@Test
+	public void shouldStopWhenListenerAsks() {
+		assertEquals(2, this.tokenizer.tokenize(TEXT, 0, TEXT.length(), new TokenListener() {
+
+			@Override
+			public boolean onToken(final int tokenStateId, final long start, final long end) {
+				return false;
+			}
+		}));
+	}
+
+	private static TokenListener collect(final Tokenizer tokenizer, final String text, final List<String> tokens) {
+		final CompiledAutomate compiled = tokenizer.getCompiledAutomate();
+
+		return new TokenListener() {
+
+			@Override
+			public boolean onToken(final int tokenStateId, final long start, final long end) {
+				final String name = tokenStateId == Tokenizer.NO_TOKEN ? "none" : compiled.getState(tokenStateId).getName();
+				tokens.add(name + ":" + text.substring((int)start, (int)end));
+				return true;
+			}
+		};
+	}
+}
@@ -0,0 +1,114 @@
+package amber.automate;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.common.Pair;
+import amber.input.Input;
+import amber.input.TextInput;
+
+public class TransitionTableTest {
+
+	private State a;
+	private State b;
+	private State c;
+	private TransitionTable transitionTable;
+
+	@Before
+	public void setup() {
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("a")
+				.addState("b")
+				.addState("c")
+				.setErrorState("error")
+				.setStartState("a")
+				.addTransition("a", new TextInput("1"), "b")
+				.addTransition("a", new TextInput("2"), "b", "c")
+				.addTransition("b", new TextInput("1"), "a")
+				.build();
+
+		this.transitionTable = automate.getTransitionTable();
+		this.a = new State("a", null, null, null);
+		this.b = new State("b", null, null, null);
+		this.c = new State("c", null, null, null);
+	}
+
+	@Test
+	public void shouldReturnTransitionsOfState() {
+		final Map<Pair<State, Input>, Set<State>> transitions = this.transitionTable.getAllTransitionsForState(this.a);
+
+		assertEquals(2, transitions.size());
+		assertEquals(states(this.b, this.c), transitions.get(new Pair<State, Input>(this.a, new TextInput("2"))));
+		assertEquals(states(this.b), this.transitionTable.getTransitionsForState(this.a).get(new TextInput("1")));
+		assertTrue(this.transitionTable.getTransitionsForState(new State("undefined", null, null, null)).isEmpty());
+	}
+
+	@Test
+	public void shouldKeepIndexUpToDateWhenTransitionsChange() {
+		assertTrue(this.transitionTable.getTargetStates().contains(this.c));
+
+		this.transitionTable.updateTransition(new Pair<State, Input>(this.a, new TextInput("2")), states(this.b));
+		assertFalse(this.transitionTable.getTargetStates().contains(this.c));
+
+		this.transitionTable.deleteTransitionsForStateInputPair(new Pair<State, Input>(this.b, new TextInput("1")));
+		assertFalse(this.transitionTable.getTargetStates().contains(this.a));
+
+		this.transitionTable.addTransition(new Pair<State, Input>(this.c, new TextInput("3")), states(this.a));
+		assertTrue(this.transitionTable.getInputs().contains(new TextInput("3")));
+		assertTrue(this.transitionTable.getSourceStates().contains(this.c));
+		assertTrue(this.transitionTable.getStates().contains(this.a));
+	}
+
+	@Test
+	public void shouldRebuildIndexAfterDirectChanges() {
+		this.transitionTable.getSourceStates();
+
+		this.transitionTable.getAllTransitions().put(new Pair<State, Input>(this.c, new TextInput("4")), states(this.a));
+		this.transitionTable.transitionsChanged();
+
+		assertTrue(this.transitionTable.getInputs().contains(new TextInput("4")));
+		assertEquals(states(this.a), this.transitionTable.getTransitionsForState(this.c).get(new TextInput("4")));
+	}
+
+	@Test
+	public void shouldReturnSnapshotsWhichAllowChangingTransitionsWhileIterating() {
+		final Set<State> sourceStates = this.transitionTable.getSourceStates();
+
+		for (final State sourceState : this.transitionTable.getSourceStates()) {
+			this.transitionTable.addTransition(new Pair<State, Input>(sourceState, new TextInput("5")), states(this.c));
+		}
+
+		assertEquals(2, sourceStates.size());
+		assertEquals(states(this.c), this.transitionTable.getTransitionsForState(this.b).get(new TextInput("5")));
+	}
+
+	@Test
+	public void shouldNotChangeBuiltAutomateWhenBuilderIsChanged() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("a")
+				.addState("b")
+				.setErrorState("error")
+				.setStartState("a")
+				.addTransition("a", new TextInput("1"), "a");
+
+		final TransitionTable builtTable = builder.build().getTransitionTable();
+		builder.addTransition("a", new TextInput("1"), "b").addTransition("b", new TextInput("2"), "a");
+
+		assertEquals(states(this.a), builtTable.getTransition(this.a, new TextInput("1")));
+		assertFalse(builtTable.getSourceStates().contains(this.b));
+		assertFalse(builtTable.getInputs().contains(new TextInput("2")));
+	}
+
+	private static Set<State> states(final State... states) {
+		return new HashSet<State>(Arrays.asList(states));
+	}
+}
@@ -0,0 +1,56 @@
+package amber.common;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongIntHashMapTest {
+
+	@Test
+	public void shouldWorkLikeHashMap() {
+		final Random random = new Random(16);
+		final LongIntHashMap map = new LongIntHashMap(4, -1);
+		final Map<Long, Integer> expected = new HashMap<Long, Integer>();
+
+		for (int i = 0; i < 10000; i++) {
+			final long key = LongIntHashMap.pack(random.nextInt(300), random.nextInt(300));
+			final int value = random.nextInt(1000);
+
+			final Integer previous = expected.put(key, value);
+			assertEquals(previous == null ? -1 : previous.intValue(), map.put(key, value));
+		}
+
+		assertEquals(expected.size(), map.size());
+		for (final Map.Entry<Long, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+		}
+
+		assertEquals(-1, map.get(LongIntHashMap.pack(300, 0)));
+	}
+
+	@Test
+	public void shouldStoreZeroKey() {
+		final LongIntHashMap map = new LongIntHashMap(0, -1);
+		assertFalse(map.containsKey(0));
+
+		map.put(LongIntHashMap.pack(0, 0), 5);
+		map.put(LongIntHashMap.pack(-1, -1), 6);
+
+		assertEquals(5, map.get(0));
+		assertEquals(6, map.get(-1L));
+		assertEquals(2, map.size());
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertEquals(-1, map.get(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotStoreMissingValue() {
+		new LongIntHashMap(1, -1).put(1, -1);
+	}
+}
@@ -0,0 +1,124 @@
+package amber.inputs;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.automate.Automate;
+import amber.automate.AutomateBuilder;
+import amber.automate.CompiledAutomate;
+import amber.automate.CompiledExecution;
+import amber.automate.Execution;
+import amber.automate.ExecutionConfiguration;
+import amber.input.ByteInput;
+
+public class ByteInputTest {
+
+	private static final byte[] BYTES = new byte[] { 'x', 0, 'x', (byte)0xFF, 0, (byte)0xFF, 'x', 0 };
+
+	private Automate automate;
+	private ExecutionConfiguration conf;
+
+	@Before
+	public void setup() {
+		// Finds byte 0 followed by byte 255
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("zero")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", new ByteInput(0), "zero")
+				.addTransition("zero", new ByteInput(255), "found")
+				.addTransition("zero", new ByteInput(0), "zero")
+				.build();
+
+		this.conf = new ExecutionConfiguration();
+		this.conf.setAllowToStayInStateOnUpdate(true);
+		this.conf.setExitWhenEndStateIsEncountered(true);
+	}
+
+	@Test
+	public void shouldUpdateLikeWithByteInputs() {
+		final Execution execution = new Execution(this.automate, this.conf);
+		execution.start();
+
+		boolean running = true;
+		int index = 0;
+		while (running) {
+			running = execution.update(new ByteInput(BYTES[index++]));
+		}
+
+		final Execution bufferExecution = new Execution(this.automate, this.conf);
+		bufferExecution.start();
+
+		final ByteBuffer buffer = ByteBuffer.wrap(BYTES);
+		assertFalse(bufferExecution.update(buffer));
+		assertEquals(index, buffer.position());
+		assertEquals(execution.getCurrentStates(), bufferExecution.getCurrentStates());
+		assertEquals(execution.getEncounteredEndStates(), bufferExecution.getEncounteredEndStates());
+	}
+
+	@Test
+	public void shouldRunCompiledAutomateOverDirectBuffer() {
+		final CompiledExecution execution = new CompiledExecution(CompiledAutomate.compile(this.automate), this.conf);
+		execution.start();
+
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BYTES.length);
+		buffer.put(BYTES);
+		buffer.flip();
+		buffer.limit(3);
+
+		assertTrue(execution.update(buffer));
+		assertEquals(3, buffer.position());
+		assertEquals("zero", execution.getCurrentState().getName());
+
+		buffer.limit(BYTES.length);
+		assertFalse(execution.update(buffer));
+		assertEquals(4, buffer.position());
+		assertEquals("found", execution.getCurrentState().getName());
+		assertEquals(1, execution.getEncounteredEndStates().size());
+	}
+
+	@Test
+	public void shouldRunOverMappedFile() throws IOException {
+		final File file = File.createTempFile("amber", ".bin");
+		file.deleteOnExit();
+
+		final FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(BYTES);
+		}
+
+		finally {
+			output.close();
+		}
+
+		final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = randomAccessFile.getChannel();
+
+			final Execution execution = new Execution(this.automate, this.conf);
+			execution.start();
+			assertEquals(4, execution.updateFromFile(channel, 0, channel.size()));
+
+			final Execution notFinding = new Execution(this.automate, this.conf);
+			notFinding.start();
+			assertEquals(channel.size(), notFinding.updateFromFile(channel, 6, channel.size() - 6));
+		}
+
+		finally {
+			randomAccessFile.close();
+		}
+	}
+}
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,8 +17,11 @@ import amber.automate.AutomateBuilder;
 import amber.automate.Execution;
 import amber.automate.ExecutionConfiguration;
 import amber.automate.State;
+import amber.automate.TransitionTable;
 import amber.common.Callback;
+import amber.common.Pair;
 import amber.input.EpsilonInput;
+import amber.input.Input;
 import amber.input.TextInput;
 
 public class EpsilonInputTest {
@@ -185,4 +189,52 @@ public class EpsilonInputTest {
 		assertTrue("All calbacks weren't called correctly", callbackResults.get("B") != null && callbackResults.get("A") != null && callbackResults.get("start") != null);
 		assertTrue("All callback didn't return correct values", callbackResults.get("B") && callbackResults.get("A"));
 	}
+	
+	@Test
+	public void shouldNotModifyTransitionTableWhenFollowingEpsilonTransitions() {
+		final State start = State.createState("start");
+		final State a = State.createState("A");
+		final State b = State.createState("B");
+		
+		this.builder
+		.addState(start)
+		.addState(this.errorState)
+		.addState(a)
+		.addState(b)
+		
+		.setStartState(start)
+		.setErrorState(this.errorState)
+		
+		.addTransition(start, new TextInput("1"), a)
+		.addTransition(a, EpsilonInput.getEpsilonInput(), b);
+		
+		final TransitionTable transitionTable = this.builder.build().getTransitionTable();
+		
+		assertEquals(new HashSet<State>(Arrays.asList(a, b)), transitionTable.getTransitionWithEpsilon(start, new TextInput("1")));
+		assertEquals(new HashSet<State>(Arrays.asList(a)), transitionTable.getTransition(start, new TextInput("1")));
+	}
+	
+	@Test
+	public void shouldRecomputeEpsilonClosureWhenTransitionIsAdded() {
+		final State start = State.createState("start");
+		final State a = State.createState("A");
+		final State b = State.createState("B");
+		
+		this.builder
+		.addState(start)
+		.addState(this.errorState)
+		.addState(a)
+		.addState(b)
+		
+		.setStartState(start)
+		.setErrorState(this.errorState)
+		
+		.addTransition(start, EpsilonInput.getEpsilonInput(), a);
+		
+		final TransitionTable transitionTable = this.builder.build().getTransitionTable();
+		assertEquals(new HashSet<State>(Arrays.asList(start, a)), transitionTable.getEpsilonClosure(start));
+		
+		transitionTable.addTransition(new Pair<State, Input>(a, EpsilonInput.getEpsilonInput()), new HashSet<State>(Arrays.asList(b)));
+		assertEquals(new HashSet<State>(Arrays.asList(start, a, b)), transitionTable.getEpsilonClosure(start));
+	}
 }
@@ -0,0 +1,145 @@
+package amber.inputs;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.automate.Automate;
+import amber.automate.AutomateBuilder;
+import amber.automate.CompiledAutomate;
+import amber.automate.Determinizer;
+import amber.automate.Execution;
+import amber.automate.ExecutionConfiguration;
+import amber.automate.LazyDfaExecution;
+import amber.automate.State;
+import amber.input.EventInput;
+import amber.input.PredicateInput;
+
+public class PredicateInputTest {
+
+	private static final PredicateInput[] PREDICATES = new PredicateInput[] {
+		PredicateInput.greaterThan("amount", 1000),
+		PredicateInput.lessOrEqual("amount", 1000),
+		PredicateInput.greaterOrEqual("amount", 5000),
+		PredicateInput.lessThan("amount", 0),
+		PredicateInput.in("status", "A", "B"),
+		PredicateInput.in("status", "B", "C")
+	};
+
+	private Automate automate;
+	private ExecutionConfiguration conf;
+
+	@Before
+	public void setup() {
+		final AutomateBuilder builder = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.setErrorState("error")
+				.setStartState("start");
+
+		for (int i = 0; i < PREDICATES.length; i++) {
+			builder.addState("target" + i).addTransition("start", PREDICATES[i], "target" + i);
+		}
+
+		this.automate = builder.build();
+
+		this.conf = new ExecutionConfiguration();
+		this.conf.setAllowToTransitToMultipleStates(true);
+	}
+
+	@Test
+	public void shouldTransitWithMatchingPredicates() {
+		assertEquals(names(0, 2, 4, 5), this.targets(new EventInput().setAttribute("amount", 5000).setAttribute("status", "B")));
+		assertEquals(names(1), this.targets(new EventInput().setAttribute("amount", 1000.0)));
+		assertEquals(names(1, 3), this.targets(new EventInput().setAttribute("amount", -1L)));
+		assertEquals(names(5), this.targets(new EventInput().setAttribute("status", "C")));
+		assertEquals(names(), this.targets(new EventInput().setAttribute("status", "D").setAttribute("amount", "text")));
+	}
+
+	@Test
+	public void shouldDispatchLikeEvaluatingEachPredicate() {
+		final Random random = new Random(48);
+		final String[] statuses = new String[] { "A", "B", "C", "D" };
+
+		for (int i = 0; i < 500; i++) {
+			final EventInput event = new EventInput()
+					.setAttribute("amount", random.nextInt(7000) - 1000)
+					.setAttribute("status", statuses[random.nextInt(statuses.length)]);
+
+			final List<String> expected = new ArrayList<String>();
+			for (int predicate = 0; predicate < PREDICATES.length; predicate++) {
+
+				if (PREDICATES[predicate].matches(event)) {
+					expected.add("target" + predicate);
+				}
+			}
+
+			assertEquals(event.toString(), expected, this.targets(event));
+		}
+	}
+
+	@Test
+	public void shouldGoToErrorWhenNoPredicateMatches() {
+		final Execution execution = new Execution(this.automate, ExecutionConfiguration.getDefaultConfiguration());
+		execution.start();
+
+		assertFalse(execution.update(new EventInput().setAttribute("other", 1)));
+		assertEquals("error", execution.getCurrentStates().iterator().next().getName());
+	}
+
+	@Test
+	public void shouldNotCacheEventsInLazyExecution() {
+		final LazyDfaExecution execution = new LazyDfaExecution(this.automate, this.conf);
+		execution.start();
+		execution.update(new EventInput().setAttribute("amount", 1));
+		assertEquals(names(1), sortedNames(execution));
+
+		execution.reset();
+		execution.start();
+		execution.update(new EventInput().setAttribute("amount", 2000));
+		assertEquals(names(0), sortedNames(execution));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotCompileAutomateWithPredicates() {
+		assertFalse(Determinizer.isDeterministic(this.automate));
+		CompiledAutomate.compile(this.automate);
+	}
+
+	private List<String> targets(final EventInput event) {
+		final Execution execution = new Execution(this.automate, this.conf);
+		execution.start();
+		execution.update(event);
+
+		if (execution.getCurrentStates().iterator().next().getName().equals("error")) {
+			return names();
+		}
+
+		return sortedNames(execution);
+	}
+
+	private static List<String> sortedNames(final Execution execution) {
+		final List<String> names = new ArrayList<String>();
+		for (final State state : execution.getCurrentStates()) {
+			names.add(state.getName());
+		}
+
+		Collections.sort(names);
+		return names;
+	}
+
+	private static List<String> names(final int... targets) {
+		final List<String> names = new ArrayList<String>();
+		for (final int target : targets) {
+			names.add("target" + target);
+		}
+
+		return names;
+	}
+}
@@ -0,0 +1,190 @@
+package amber.inputs;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import amber.automate.Automate;
+import amber.automate.AutomateBuilder;
+import amber.automate.CompiledAutomate;
+import amber.automate.CompiledExecution;
+import amber.automate.Determinizer;
+import amber.automate.Execution;
+import amber.automate.ExecutionConfiguration;
+import amber.automate.InputAlphabet;
+import amber.automate.LazyDfaExecution;
+import amber.automate.State;
+import amber.input.ByteInput;
+import amber.input.RangeInput;
+import amber.input.TextInput;
+
+public class RangeInputTest {
+
+	private static final String[] TEXTS = new String[] { "abc", "ab1", "x1", "xxx", "1", "", "Z", "xZ" };
+
+	private Automate automate;
+	private ExecutionConfiguration conf;
+
+	@Before
+	public void setup() {
+		// Identifiers which start with a letter and words starting with x which end to a digit
+		this.automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("word")
+				.addState("x")
+				.addState("xDigit")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("word")
+				.addEndState("xDigit")
+				.addTransition("start", RangeInput.codePointRange('a', 'z'), "word")
+				.addTransition("start", new TextInput("x"), "x")
+				.addTransition("word", RangeInput.codePointRange('a', 'z'), "word")
+				.addTransition("word", RangeInput.codePointRange('0', '9'), "word")
+				.addTransition("x", RangeInput.codePointRange('0', '9'), "xDigit")
+				.build();
+
+		this.conf = new ExecutionConfiguration();
+		this.conf.setAllowToTransitToMultipleStates(true);
+	}
+
+	@Test
+	public void shouldCompressRangesIntoClasses() {
+		final InputAlphabet alphabet = this.automate.getTransitionTable().getAlphabet();
+
+		// Letters other than x, x and digits
+		assertEquals(3, alphabet.size());
+		assertTrue(alphabet.hasRanges());
+		assertEquals(alphabet.getSymbolId(new TextInput("a")), alphabet.getCharSymbolId('q'));
+		assertEquals(alphabet.getCharSymbolId('0'), alphabet.getCodePointSymbolId('9'));
+		assertNotEquals(alphabet.getCharSymbolId('a'), alphabet.getCharSymbolId('x'));
+		assertEquals(InputAlphabet.UNKNOWN_SYMBOL, alphabet.getCharSymbolId('Z'));
+		assertEquals(2, alphabet.getCoveredSymbolIds(RangeInput.codePointRange('a', 'z')).length);
+	}
+
+	@Test
+	public void shouldMatchOverlappingInputsNondeterministically() {
+		assertFalse(Determinizer.isDeterministic(this.automate));
+
+		final Execution execution = new Execution(this.automate, this.conf);
+		execution.start();
+		execution.update(new TextInput("x"));
+		assertEquals(2, execution.getCurrentStates().size());
+
+		execution.update(new TextInput("1"));
+		assertEquals(2, execution.getCurrentStates().size());
+		assertEquals(2, execution.getEncounteredEndStates().get(1).size());
+	}
+
+	@Test
+	public void shouldRunSameWithAllExecutions() {
+		final CompiledAutomate compiled = CompiledAutomate.compile(this.automate, this.conf, Determinizer.DEFAULT_MAX_STATES);
+
+		for (final String text : TEXTS) {
+			final Execution execution = new Execution(this.automate, this.conf);
+			execution.run(text);
+
+			final LazyDfaExecution lazyExecution = new LazyDfaExecution(this.automate, this.conf);
+			lazyExecution.run(text);
+
+			final CompiledExecution compiledExecution = new CompiledExecution(compiled, this.conf);
+			compiledExecution.run(text);
+
+			assertEquals(text, execution.getCurrentStates(), lazyExecution.getCurrentStates());
+			assertEquals(text, execution.getEncounteredEndStates(), lazyExecution.getEncounteredEndStates());
+			assertEquals(text, execution.getEncounteredEndStates().size(), compiledExecution.getEncounteredEndStates().size());
+			assertEquals(text, execution.isAtEnd(), compiledExecution.isAtEnd());
+		}
+	}
+
+	@Test
+	public void shouldRunSameWhenExecutionsShareAutomateInThreads() throws InterruptedException {
+		final List<Set<State>> expectedStates = new ArrayList<Set<State>>();
+		for (final String text : TEXTS) {
+			final Execution execution = new Execution(this.automate, this.conf);
+			execution.run(text);
+			expectedStates.add(execution.getCurrentStates());
+		}
+
+		// Clear lookups computed when automate was built so that threads compute them while running
+		this.automate.getTransitionTable().transitionsChanged();
+
+		final AtomicInteger mismatches = new AtomicInteger();
+		final Thread[] threads = new Thread[4];
+
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					for (int i = 0; i < 2000; i++) {
+						final Execution execution = new Execution(RangeInputTest.this.automate, RangeInputTest.this.conf);
+						execution.run(TEXTS[i % TEXTS.length]);
+
+						if (!expectedStates.get(i % TEXTS.length).equals(execution.getCurrentStates())) {
+							mismatches.incrementAndGet();
+						}
+					}
+				}
+			});
+
+			threads[t].start();
+		}
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, mismatches.get());
+	}
+
+	@Test
+	public void shouldMatchByteRanges() {
+		// Finds a byte from upper half followed by a zero byte
+		final Automate byteAutomate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("high")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", RangeInput.byteRange(0x80, 0xFF), "high")
+				.addTransition("high", RangeInput.byteRange(0x80, 0xFF), "high")
+				.addTransition("high", new ByteInput(0), "found")
+				.build();
+
+		final ExecutionConfiguration byteConf = new ExecutionConfiguration();
+		byteConf.setAllowToStayInStateOnUpdate(true);
+		byteConf.setExitWhenEndStateIsEncountered(true);
+
+		final byte[] bytes = new byte[] { 0, 0x7F, (byte)0x80, 1, (byte)0xC0, (byte)0xFF, 0, 5 };
+
+		final Execution execution = new Execution(byteAutomate, byteConf);
+		execution.start();
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		assertFalse(execution.update(buffer));
+		assertEquals(7, buffer.position());
+
+		final CompiledExecution compiledExecution = new CompiledExecution(CompiledAutomate.compile(byteAutomate), byteConf);
+		compiledExecution.start();
+		final ByteBuffer compiledBuffer = ByteBuffer.wrap(bytes);
+		assertFalse(compiledExecution.update(compiledBuffer));
+		assertEquals(7, compiledBuffer.position());
+		assertEquals("found", compiledExecution.getCurrentState().getName());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldNotCreateInvalidByteRange() {
+		RangeInput.byteRange(0, 256);
+	}
+}
@@ -2,8 +2,10 @@ package amber.inputs;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -92,4 +94,44 @@ public class TextInputTest {
 		customeExe.update(new TextInput("undefined"));
 		assertEquals(new HashSet<State>(Arrays.asList(this.start)), customeExe.getCurrentStates());
 	}
+	
+	@Test
+	public void shouldRunOverTextLikeWithSingleCharacterInputs() {
+		final Automate textAutomate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("a")
+				.addState("found")
+				.setErrorState("error")
+				.setStartState("start")
+				.addEndState("found")
+				.addTransition("start", new TextInput("a"), "start", "a")
+				.addTransition("start", new TextInput("\u00e4"), "start")
+				.addTransition("start", new TextInput("\u03bb"), "start")
+				.addTransition("a", new TextInput("\u03bb"), "found")
+				.build();
+		
+		final String text = "a\u00e4a\u03bbxa";
+		
+		final Execution charExe = new Execution(textAutomate, ExecutionConfiguration.getDefaultConfiguration());
+		charExe.start();
+		final List<Boolean> results = new ArrayList<Boolean>();
+		for (int i = 0; i < text.length(); i++) {
+			results.add(charExe.update(new TextInput(String.valueOf(text.charAt(i)))));
+		}
+		
+		final Execution textExe = new Execution(textAutomate, ExecutionConfiguration.getDefaultConfiguration());
+		assertEquals(results.get(3), textExe.run(text.subSequence(0, 4)));
+		assertEquals(results.get(5), textExe.update(text, 4, text.length()));
+		
+		assertEquals(charExe.getCurrentStates(), textExe.getCurrentStates());
+		assertEquals(charExe.getEncounteredEndStates(), textExe.getEncounteredEndStates());
+		assertEquals(1, textExe.getEncounteredEndStates().size());
+	}
+	
+	@Test
+	public void shouldReturnIndexWhereExecutionEndedInText() {
+		this.exe.start();
+		assertEquals(2, this.exe.updateUntilEnd("12x2", 0, 4));
+	}
 }
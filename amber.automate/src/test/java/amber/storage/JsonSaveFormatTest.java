@@ -3,6 +3,9 @@ package amber.storage;
 import static org.junit.Assert.*;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -11,6 +14,9 @@ import amber.automate.AutomateBuilder;
 import amber.automate.Execution;
 import amber.automate.State;
 import amber.common.Callback;
+import amber.input.EventInput;
+import amber.input.Input;
+import amber.input.PredicateInput;
 import amber.input.TextInput;
 import amber.automate.ExecutionConfiguration;
 
@@ -56,4 +62,46 @@ public class JsonSaveFormatTest {
 		execution.update(new TextInput("1"), new TextInput("0"), new TextInput("0"));
 		assertEquals(execution.getCurrentStates().iterator().next().getName(), "nonPair");
 	}
+	
+	@Test
+	public void shouldSaveAutomateWithPredicateInputsThenLoadAndRunCorrectly() throws ClassNotFoundException, NoSuchMethodException, SecurityException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		final Automate automate = AutomateBuilder.createAutomateBuilder()
+				.addState("error")
+				.addState("start")
+				.addState("large")
+				.addState("known")
+				
+				.setErrorState("error")
+				.setStartState("start")
+				
+				.addTransition("start", PredicateInput.greaterThan("amount", 1000), "large")
+				.addTransition("start", PredicateInput.in("status", "A", "B"), "known")
+				
+				.build();
+		
+		final Automate loadedAutomate = Storage.loadAutomate(Storage.automateToJson(automate));
+		assertEquals(automate.getTransitionTable().getInputs(), loadedAutomate.getTransitionTable().getInputs());
+		
+		final ExecutionConfiguration conf = new ExecutionConfiguration();
+		conf.setAllowToTransitToMultipleStates(true);
+		
+		final Execution execution = new Execution(loadedAutomate, conf);
+		execution.start();
+		execution.update(new EventInput().setAttribute("amount", 2000).setAttribute("status", "B"));
+		
+		final Set<String> names = new HashSet<String>();
+		for (final State state : execution.getCurrentStates()) {
+			names.add(state.getName());
+		}
+		
+		assertEquals(new HashSet<String>(Arrays.asList("large", "known")), names);
+	}
+	
+	@Test
+	public void shouldSaveAndLoadEventInput() {
+		final EventInput event = new EventInput().setAttribute("amount", 2000.0).setAttribute("status", "B");
+		final Input loadedEvent = InputJsonFormat.loadInput(InputJsonFormat.inputToJsonFormat(event));
+		
+		assertEquals(event, loadedEvent);
+	}
 }